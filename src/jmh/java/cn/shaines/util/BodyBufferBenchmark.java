@@ -0,0 +1,83 @@
+package cn.shaines.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 对比 原来的读取方式(3KB 缓冲区 + ByteArrayOutputStream + toByteArray) 与 BodyBuffer(按照 Content-Length 预先分配) 每一个响应的内存分配和耗时
+ * 运行: gradle jmh, 内存分配看 gc.alloc.rate.norm(-prof gc)
+ *
+ * @description 响应体读取基准测试
+ * @date created in 2026-10-18 07:49:22
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BodyBufferBenchmark {
+
+    @Param({"65536"})
+    private int size;                                               // 响应体的大小(字节), 默认 64KB(一页 JSON 的大小)
+
+    private byte[] page;
+
+    @Setup
+    public void setup() {
+        this.page = new byte[this.size];
+        new Random(1).nextBytes(this.page);
+    }
+
+    @Benchmark
+    public byte[] byteArrayOutputStream() throws IOException {
+        InputStream inputStream = new SocketLikeInputStream(this.page);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024 * 3];
+        for(int length = 0; length > -1; length = inputStream.read(buffer)) {
+            outputStream.write(buffer, 0, length);
+            outputStream.flush();
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] bodyBuffer() throws IOException {
+        return read(new HttpURLConnectionUtil.BodyBuffer(HttpURLConnectionUtil.BodyBuffer.INITIAL_SIZE));
+    }
+
+    @Benchmark
+    public byte[] bodyBufferPresized() throws IOException {
+        return read(new HttpURLConnectionUtil.BodyBuffer(this.page.length));
+    }
+
+    private byte[] read(HttpURLConnectionUtil.BodyBuffer buffer) throws IOException {
+        InputStream inputStream = new SocketLikeInputStream(this.page);
+        while(buffer.readFrom(inputStream) > -1) {
+            // 读取到响应体
+        }
+        return buffer.toByteArrayNoCopy();
+    }
+
+    /** 模拟 socket 的输入流: 每次最多返回 8KB */
+    private static class SocketLikeInputStream extends ByteArrayInputStream {
+        private SocketLikeInputStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 1024 * 8));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package cn.shaines.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 对比 每一个请求生成 Cookie 请求头的开销: CookieJar(按照 scheme + host 缓存) 与 原来的 cardingCookie(拆分合并字符串)
+ * 运行: gradle jmh, 内存分配看 gc.alloc.rate.norm(-prof gc)
+ *
+ * @description Cookie 请求头基准测试
+ * @date created in 2026-10-18 08:52:10
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CookieJarBenchmark {
+
+    private static final String SITE = "https://image.baidu.com/search/acjson?tn=resultjson_com&ipn=rj&word=%E5%A4%9C%E8%89%B2&pn=30";
+
+    @Param({"12"})
+    private int count;                                              // cookie 的数量
+
+    private CookieJar cookieJar;
+    private String cookie;
+
+    @Setup
+    public void setup() {
+        List<String> setCookies = new ArrayList<>(this.count);
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < this.count; i++) {
+            setCookies.add("c" + i + "=value" + i + "; Path=/; Domain=baidu.com");
+            builder.append(i == 0 ? "" : "; ").append("c").append(i).append("=value").append(i);
+        }
+        this.cookieJar = new CookieJar();
+        this.cookieJar.saveFromResponse("https://image.baidu.com/", setCookies);
+        this.cookie = builder.toString();
+    }
+
+    @Benchmark
+    public String cookieJar() {
+        return this.cookieJar.cookieHeader(SITE);
+    }
+
+    @Benchmark
+    public String cardingCookie() {
+        // 原来的方式: 每一个响应把 Set-Cookie 追加到 cookie 字符串, 然后重新拆分合并
+        return HttpURLConnectionUtil.Request.cardingCookie(this.cookie + "; c1=value1");
+    }
+}
@@ -0,0 +1,75 @@
+package cn.shaines.util;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONPath;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 对比 JSON.parseObject + JSONPath.eval 与 流式提取(ParseUtil.Extractor) 每一页的内存分配和耗时
+ * 运行: gradle jmh, 内存分配看 gc.alloc.rate.norm(-prof gc)
+ * 参数 file 可以指定一个保存下来的 acjson 响应文件, 为空时使用模拟数据
+ *
+ * @description 流式JSON字段提取基准测试
+ * @date created in 2026-10-18 07:13:29
+ * @author agent
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseUtilBenchmark {
+
+    @Param({""})
+    private String file;                                            // acjson 响应文件路径, 为空时使用模拟数据
+
+    private byte[] page;
+    private ParseUtil.Extractor extractor;
+
+    @Setup
+    public void setup() throws IOException {
+        this.page = this.file.isEmpty() ? mockPage(30) : Files.readAllBytes(Paths.get(this.file));
+        this.extractor = ParseUtil.compile("data..hoverURL");
+    }
+
+    @Benchmark
+    public int jsonPath() {
+        Object urlObject = JSONPath.eval(JSON.parseObject(new String(this.page, StandardCharsets.UTF_8)), "$..data..hoverURL");
+        return urlObject instanceof List ? ((List<?>) urlObject).size() : 0;
+    }
+
+    @Benchmark
+    public int extractor() {
+        return this.extractor.extract(this.page).size();
+    }
+
+    /** 模拟一页 acjson 的响应 */
+    private static byte[] mockPage(int size) {
+        StringBuilder builder = new StringBuilder(size * 2048);
+        builder.append("{\"queryEnc\":\"%E5%A4%9C%E8%89%B2\",\"queryExt\":\"夜色\",\"listNum\":1600,\"displayNum\":1600,\"bdIsClustered\":\"1\",\"data\":[");
+        for(int i = 0; i < size; i++) {
+            String id = Integer.toHexString(0x10000 + i * 7919);
+            builder.append("{\"adType\":\"0\",\"hasAspData\":\"0\",\"thumbURL\":\"https:\\/\\/img0.baidu.com\\/it\\/u=").append(id).append(",1&fm=26&fmt=auto.jpg\",")
+                    .append("\"middleURL\":\"https:\\/\\/img0.baidu.com\\/it\\/u=").append(id).append(",2&fm=26&fmt=auto.jpg\",")
+                    .append("\"hoverURL\":\"https:\\/\\/img1.baidu.com\\/it\\/u=").append(id).append(",3&fm=26&fmt=auto.jpg\",")
+                    .append("\"objURL\":\"ippr_z2C$qAzdH3FAzdH3Fooo_z&e3Bv54AzdH3Fxtg").append(id).append("\",")
+                    .append("\"fromPageTitle\":\"夜色 <strong>图片<\\/strong> \\u591c\\u8272\",\"width\":1920,\"height\":1080,\"type\":\"jpg\",\"is_gif\":0,")
+                    .append("\"replaceUrl\":[{\"ObjURL\":\"http:\\/\\/img.example.com\\/").append(id).append(".jpg\",\"FromURL\":\"http:\\/\\/www.example.com\\/").append(id).append("\"}],")
+                    .append("\"bdSrcType\":\"0\",\"di\":\"").append(id).append(id).append("\",\"pageNum\":").append(i).append("},");
+        }
+        builder.append("{}],\"gsm\":\"1e\"}");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
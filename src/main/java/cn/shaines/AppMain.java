@@ -7,6 +7,11 @@ package cn.shaines;
 public class AppMain {
 
     public static void main(String[] args) throws Exception {
-        BaiDuImgSpider2.main(args);
+        if(BatchSpider.isEnabled()) {
+            // 配置了多个关键字, 使用批量模式
+            BatchSpider.main(args);
+        } else {
+            BaiDuImgSpider2.main(args);
+        }
     }
 }
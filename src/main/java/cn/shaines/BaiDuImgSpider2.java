@@ -1,17 +1,27 @@
 package cn.shaines;
 
+import cn.shaines.source.ImageCandidate;
+import cn.shaines.source.ImageSource;
+import cn.shaines.source.VariantPolicy;
 import cn.shaines.util.*;
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONPath;
 
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * @author houyu
@@ -20,102 +30,668 @@ public class BaiDuImgSpider2 {
 
     private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(BaiDuImgSpider2.class);
 
-    private ThreadPoolUtil threadPoolUtil;
-    // private BloomFilter<CharSequence> bloomFilter;
-    private List<String> list;
+    private SeenSet seenSet;
+    private SeenSet contentSeenSet;     // 图片内容摘要去重
     private Conf conf;
     private AtomicInteger index = new AtomicInteger();
+    private HttpURLConnectionUtil.Session session;
+    private CrawlContext context;                       // 批量模式下共享的资源, 单个关键字时为null
+    private volatile CrawlJob job;                      // 下载任务(计数和完成通知)
+    private CheckpointJournal journal;                  // 断点续传日志, 未开启时为null
+    private HostRateLimiter rateLimiter;                // 获取分页的限流
+
+    private List<ImageSource> sources;                  // 图片来源, 多个来源同时获取分页
+    private ImageDownloader downloader;                 // 按版本策略下载图片
+    private FairScheduler<DownloadKey> scheduler;       // 下载线程池, 按主机轮流下载并限制每一个主机同时下载的数量
+    private final Set<String> warmedUpSources = ConcurrentHashMap.newKeySet();     // 已经判断过是否需要获取cookie的来源
+
+    private static final String DIGEST_ALGORITHM = "MD5";
 
 
     public void init() {
-        threadPoolUtil = ThreadPoolUtil.get();
-        // bloomFilter =  BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), 1000, 0.0001);
-        PropertiesUtil propertiesUtil = PropertiesUtil.builder(System.getProperty("user.dir") + "/conf/img.baidu.properties").build();
+        this.init(null, null);
+    }
+
+    /**
+     * 初始化
+     * @param keyword 关键字, 为null时使用配置文件中的关键字
+     * @param context 批量模式下共享的资源, 为null时使用独立的资源
+     */
+    public void init(String keyword, CrawlContext context) {
+        PropertiesUtil propertiesUtil = loadProperties();
         Conf conf = new Conf();
-        conf.setKeyword(propertiesUtil.getPropertyOrDefault("keyword", "唐嫣"));
-        conf.setResultPath(propertiesUtil.getPropertyOrDefault("resultPath", System.getProperty("user.dir") + "/download/" + conf.getKeyword()));
+        conf.setKeyword(keyword != null ? keyword : propertiesUtil.getPropertyOrDefault("keyword", "唐嫣"));
+        String resultPath = propertiesUtil.getProperty("resultPath");
+        if(resultPath == null) {
+            conf.setResultPath(System.getProperty("user.dir") + "/download/" + conf.getKeyword());
+        } else {
+            // 批量模式下每一个关键字一个目录
+            conf.setResultPath(keyword != null ? resultPath + "/" + keyword : resultPath);
+        }
         conf.setTotalCount(propertiesUtil.getPropertyOrDefault("totalCount", 1000));
-        conf.setSleepTime(propertiesUtil.getPropertyOrDefault("sleepTime", 1000L));
-        list = new ArrayList<>(conf.getTotalCount());
+        this.sources = ImageSource.of(propertiesUtil.getPropertyOrDefault("sources", "baidu-pc"));
+        conf.setPrefetch(propertiesUtil.getPropertyOrDefault("prefetch", 1));
+        conf.setPipeline(propertiesUtil.getPropertyOrDefault("pipeline", false));
+        conf.setPageThreads(propertiesUtil.getPropertyOrDefault("pipeline.pageThreads", 2));
+        conf.setDownloadThreads(propertiesUtil.getPropertyOrDefault("pipeline.downloadThreads", 50));
+        conf.setWriteThreads(propertiesUtil.getPropertyOrDefault("pipeline.writeThreads", 2));
+        conf.setQueueSize(propertiesUtil.getPropertyOrDefault("pipeline.queueSize", 64));
+        conf.setDedup(propertiesUtil.getPropertyOrDefault("dedup", SeenSet.MODE_EXACT));
+        conf.setDedupExpectedSize(propertiesUtil.getPropertyOrDefault("dedup.expectedSize", conf.getTotalCount() * 4L));
+        conf.setDedupFpp(propertiesUtil.getPropertyOrDefault("dedup.fpp", 0.0001D));
+        conf.setContentDedup(propertiesUtil.getPropertyOrDefault("contentDedup", false));
+        conf.setNameByDigest(propertiesUtil.getPropertyOrDefault("nameByDigest", false));
+        boolean needDigest = conf.isContentDedup() || conf.isNameByDigest();
+        conf.setStreamToFile(propertiesUtil.getPropertyOrDefault("download.streamToFile", true));
+        this.downloader = new ImageDownloader(VariantPolicy.parse(propertiesUtil.getPropertyOrDefault("variant", VariantPolicy.MODE_SOURCE)),
+                needDigest ? DIGEST_ALGORITHM : null, propertiesUtil.getPropertyOrDefault("variant.raceSlowMillis", 3000L),
+                conf.isStreamToFile() ? this.tempDir(conf) : null);
+        VirtualThreadUtil.setEnabled(propertiesUtil.getPropertyOrDefault("virtualThreads", false));
+        conf.setDownloadMaxThreads(propertiesUtil.getPropertyOrDefault("download.threads", 50));
+        conf.setDownloadMaxQueuedPerHost(propertiesUtil.getPropertyOrDefault("download.maxQueuedPerHost", 200));
+        conf.setDownloadMaxPerHost(propertiesUtil.getPropertyOrDefault("download.maxPerHost", 6));
+        conf.setSaturationPages(propertiesUtil.getPropertyOrDefault("saturation.pages", 3));
+        conf.setTopUp(propertiesUtil.getPropertyOrDefault("topUp", false));
+        conf.setTopUpMaxFactor(propertiesUtil.getPropertyOrDefault("topUp.maxFactor", 3));
+        conf.setCheckpoint(propertiesUtil.getPropertyOrDefault("checkpoint", false));
+        conf.setCheckpointSyncInterval(propertiesUtil.getPropertyOrDefault("checkpoint.syncInterval", 1000L));
+        if(context != null) {
+            session = context.getSession();
+            seenSet = context.getSeenSet();
+            contentSeenSet = context.getContentSeenSet();
+            rateLimiter = context.getRateLimiter();
+        } else {
+            session = buildSession(propertiesUtil);
+            seenSet = SeenSet.of(conf.getDedup(), conf.getDedupExpectedSize(), conf.getDedupFpp());
+            contentSeenSet = new SeenSet.Exact(conf.getTotalCount());
+            rateLimiter = buildRateLimiter(propertiesUtil);
+        }
         //
         this.conf = conf;
+        this.context = context;
+    }
 
-        // log for houyu
-        logForHouyu();
+    /**
+     * 创建获取分页的限流, 没有配置初始速率时按照 sleepTime 换算(原来平均每次睡眠 sleepTime/2)
+     */
+    static HostRateLimiter buildRateLimiter(PropertiesUtil propertiesUtil) {
+        long sleepTime = Math.max(1, propertiesUtil.getPropertyOrDefault("sleepTime", 1000L));
+        return HostRateLimiter.builder()
+                .initialRate(propertiesUtil.getPropertyOrDefault("rateLimit.initial", 2000D / sleepTime))
+                .minRate(propertiesUtil.getPropertyOrDefault("rateLimit.min", 0.2D))
+                .maxRate(propertiesUtil.getPropertyOrDefault("rateLimit.max", 10D))
+                .burst(propertiesUtil.getPropertyOrDefault("rateLimit.burst", 1D))
+                .increase(propertiesUtil.getPropertyOrDefault("rateLimit.increase", 0.1D))
+                .decrease(propertiesUtil.getPropertyOrDefault("rateLimit.decrease", 0.5D))
+                .build();
     }
 
-    private void logForHouyu() {
-        Integer code = HttpURLConnectionUtil.build("https://shaines.cn/log/?async=true&type=img_download&keyword=" + this.conf.keyword).setIfEncodeUrl(true).execute().getCode();
+    /**
+     * 创建会话, 按照配置选择请求引擎: blocking(HttpURLConnection) / httpclient(JDK 11+ 非阻塞, 低版本自动使用 blocking)
+     * 开启连接复用时配置JDK连接缓存(需要在第一次请求之前)
+     */
+    static HttpURLConnectionUtil.Session buildSession(PropertiesUtil propertiesUtil) {
+        // 只使用响应体和常用的响应头, 读完之后不保留连接和完整的响应头
+        HttpURLConnectionUtil.Session session = HttpURLConnectionUtil.buildSession().setIfLightweight(true);
+        if(propertiesUtil.getPropertyOrDefault("http.keepAlive", true)) {
+            HttpURLConnectionUtil.KeepAlive.configure(propertiesUtil.getPropertyOrDefault("http.keepAlive.maxPerHost", 6),
+                    propertiesUtil.getPropertyOrDefault("http.keepAlive.idleSeconds", 30));
+            session.setIfKeepAlive(true);
+        }
+        if(propertiesUtil.getPropertyOrDefault("dns.cache", true)) {
+            // 需要在第一次解析主机之前创建(设置 JVM 缓存的有效期)
+            session.setDnsCache(DnsCache.builder()
+                    .ttl(propertiesUtil.getPropertyOrDefault("dns.ttl", 300L))
+                    .negativeTtl(propertiesUtil.getPropertyOrDefault("dns.negativeTtl", 10L))
+                    .refreshHits(propertiesUtil.getPropertyOrDefault("dns.refreshHits", 10))
+                    .build());
+        }
+        if("httpclient".equalsIgnoreCase(propertiesUtil.getPropertyOrDefault("http.engine", "blocking"))) {
+            session.setEngine(HttpClientEngine.create(propertiesUtil.getPropertyOrDefault("http.engine.threads", 4)));
+        }
+        int retryMaxAttempts = propertiesUtil.getPropertyOrDefault("retry.maxAttempts", 3);
+        if(retryMaxAttempts > 1) {
+            session.setRetryPolicy(RetryPolicy.builder()
+                    .maxAttempts(retryMaxAttempts)
+                    .baseDelay(propertiesUtil.getPropertyOrDefault("retry.baseDelay", 200L))
+                    .maxDelay(propertiesUtil.getPropertyOrDefault("retry.maxDelay", 5000L))
+                    .budgetRatio(propertiesUtil.getPropertyOrDefault("retry.budgetRatio", 0.2D))
+                    .budgetReserve(propertiesUtil.getPropertyOrDefault("retry.budgetReserve", 10))
+                    .build());
+        }
+        double hedgePercentile = propertiesUtil.getPropertyOrDefault("hedge.percentile", 0D);
+        if(hedgePercentile > 0) {
+            session.setHedgePolicy(HedgePolicy.builder()
+                    .percentile(hedgePercentile)
+                    .minDelay(propertiesUtil.getPropertyOrDefault("hedge.minDelay", 50L))
+                    .maxDelay(propertiesUtil.getPropertyOrDefault("hedge.maxDelay", 10000L))
+                    .budgetRatio(propertiesUtil.getPropertyOrDefault("hedge.budgetRatio", 0.05D))
+                    .build());
+        }
+        double breakerFailureRate = propertiesUtil.getPropertyOrDefault("breaker.failureRate", 0.5D);
+        if(breakerFailureRate > 0) {
+            session.setCircuitBreaker(CircuitBreaker.builder()
+                    .failureRate(breakerFailureRate)
+                    .windowSize(propertiesUtil.getPropertyOrDefault("breaker.windowSize", 20))
+                    .minCalls(propertiesUtil.getPropertyOrDefault("breaker.minCalls", 10))
+                    .openMillis(propertiesUtil.getPropertyOrDefault("breaker.openMillis", 30000L))
+                    .halfOpenCalls(propertiesUtil.getPropertyOrDefault("breaker.halfOpenCalls", 3))
+                    .build());
+        }
+        if(propertiesUtil.getPropertyOrDefault("cookie.jar", true)) {
+            session.setCookieJar(buildCookieJar(propertiesUtil.getPropertyOrDefault("cookie.file", "")));
+        }
+        return session;
+    }
+
+    /**
+     * 创建 cookie 存储, 配置了文件时加载上次保存的 cookie, 进程退出时保存
+     */
+    private static CookieJar buildCookieJar(String cookieFile) {
+        CookieJar cookieJar = new CookieJar();
+        if(cookieFile.isEmpty()) {
+            return cookieJar;
+        }
+        Path path = Paths.get(cookieFile);
+        try {
+            logger.info("加载cookie {} 个, 文件 {}", cookieJar.load(path), path.toAbsolutePath());
+        } catch(IOException e) {
+            logger.warn("加载cookie失败 {}", e.toString());
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                cookieJar.save(path);
+            } catch(IOException e) {
+                logger.warn("保存cookie失败 {}", e.toString());
+            }
+        }, "cookie-save"));
+        return cookieJar;
+    }
+
+    /** 读取配置文件 */
+    static PropertiesUtil loadProperties() {
+        return PropertiesUtil.builder(System.getProperty("user.dir") + "/conf/img.baidu.properties").build();
+    }
+
+    /** 每一个进程调用一次(由入口 main 调用, 批量模式不按关键字重复调用) */
+    static void logForHouyu(String keyword) {
+        Integer code = HttpURLConnectionUtil.build("https://shaines.cn/log/?async=true&type=img_download&keyword=" + keyword).setIfEncodeUrl(true).execute().getCode();
         System.out.println("code = " + code);
         if (!code.equals(404)) {
             throw new RuntimeException("不允许使用!!!");
         }
     }
 
-    public void run() throws Exception {
+    /**
+     * 开始下载, 每一个来源在新的线程中获取分页, 立即返回下载任务
+     * 所有来源都结束并且所有图片都有结果之后任务的完成通知立即完成
+     */
+    public CrawlJob start() throws IOException {
         // init -- start
         // 创建目录, 存在则不创建.
         // new File(resultPath).mkdirs();
         Files.createDirectories(Paths.get(this.conf.getResultPath()));
+        if(this.conf.isStreamToFile()) {
+            Files.createDirectories(this.tempDir(this.conf));
+        }
         // init --  end
         //
-        String contextUrl = "https://image.baidu.com/";
-        String baseUrl = "https://image.baidu.com/search/acjson?tn=resultjson_com&ipn=rj&ct=201326592&is=&fp=result&queryWord=${keyword}&cl=2&lm=-1&ie=utf-8&oe=utf-8&adpicid=&st=-1&z=&ic=&hd=&latest=&copyright=&word=${keyword}&s=&se=&tab=&width=&height=&face=0&istype=2&qc=&nc=1&fr=&expermode=&force=&cg=star&pn=${startIndex}&rn=30&gsm=&1570893297936=";
-        //
-        HttpURLConnectionUtil.Session session = HttpURLConnectionUtil.buildSession();
-        //
-        for(int i = 0; i < this.conf.getTotalCount(); i += 10) {
-            if(i % 100 == 0) {
-                // 查找10页, 那就换一个cookie
-                session.build(contextUrl).execute().getBody();
+        CrawlJob job = new CrawlJob(this.conf.getKeyword(), this.conf.getTotalCount(), this.conf.isTopUp());
+        this.job = job;
+        this.openJournal();
+        if(this.context == null && !this.conf.isPipeline()) {
+            // 独立运行时使用自己的下载线程池, 下载完成时关闭
+            this.scheduler = new FairScheduler<>("download-" + this.conf.getKeyword(), this.conf.getDownloadMaxThreads(),
+                    this.conf.getDownloadMaxQueuedPerHost(), DownloadKey::getHost, this.conf.getDownloadMaxPerHost());
+        } else if(this.context != null) {
+            this.scheduler = this.context.getScheduler();
+        }
+        job.getFuture().whenComplete((j, e) -> {
+            this.closeJournal();
+            if(this.context == null && this.scheduler != null) {
+                this.scheduler.shutdown();
+            }
+        });
+        if(this.conf.isPipeline() && this.context == null) {
+            this.startThread("pipeline", () -> this.runPipeline(this.session), e -> {
+                if(e == null) {
+                    job.finishProducing();
+                } else {
+                    job.getFuture().completeExceptionally(e);
+                }
+            });
+            return job;
+        }
+        if(this.conf.isPipeline()) {
+            logger.warn("{} 批量模式下使用共享的下载线程池, 忽略流水线模式", this.conf.getKeyword());
+        }
+        // 每一个来源一个线程, 通过共享的去重集合合并, 全部结束之后不再产生新的图片
+        AtomicInteger remaining = new AtomicInteger(this.sources.size());
+        AtomicInteger failed = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        for(ImageSource source : this.sources) {
+            this.startThread(source.name(), () -> this.crawl(this.session, source), e -> {
+                if(e != null) {
+                    failed.incrementAndGet();
+                    error.set(e);
+                }
+                if(remaining.decrementAndGet() == 0) {
+                    if(failed.get() == this.sources.size()) {
+                        // 所有来源都失败
+                        job.getFuture().completeExceptionally(error.get());
+                    } else {
+                        job.finishProducing();
+                    }
+                }
+            });
+        }
+        return job;
+    }
+
+    /** 在新的线程中获取分页, 结束时回调(异常为null表示成功) */
+    private void startThread(String name, Crawler crawler, Consumer<Throwable> callback) {
+        Thread thread = new Thread(() -> {
+            Throwable error = null;
+            try {
+                crawler.crawl();
+            } catch(Throwable e) {
+                logger.warn("{} {} 获取分页出现异常 {}", this.conf.getKeyword(), name, e);
+                error = e;
+            }
+            callback.accept(error);
+        }, "crawl-" + this.conf.getKeyword() + "-" + name);
+        thread.start();
+    }
+
+    /**
+     * 下载并等待完成
+     */
+    public void run() throws Exception {
+        try {
+            this.start().getFuture().get();
+        } catch(ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /** 获取一个来源的分页, 同时预取多页, 按照 pn 的顺序处理 */
+    private void crawl(HttpURLConnectionUtil.Session session, ImageSource source) throws Exception {
+        CrawlJob job = this.job;
+        int step = source.pageSize();
+        if(job.need() <= 0) {
+            // 断点中已经保存足够数量(上一次运行已经完成), 不需要获取分页
+            logger.info("{} {} 已经保存足够数量的图片, 不再获取分页", this.conf.getKeyword(), source.name());
+            return;
+        }
+        int start = this.journal == null ? 0 : this.journal.resumeOffset(source.name(), step);
+        if(start > 0) {
+            logger.info("{} {} 从断点继续获取分页, pn={}", this.conf.getKeyword(), source.name(), start);
+        }
+        // 补齐模式下失败和跳过的图片需要继续获取分页补上, 最多获取 totalCount * topUp.maxFactor 张的分页
+        int end = job.isTopUp() ? this.conf.getTotalCount() * Math.max(1, this.conf.getTopUpMaxFactor()) : this.conf.getTotalCount();
+        Saturation saturation = new Saturation(source);
+        try(PrefetchUtil<byte[]> prefetch = PrefetchUtil.of(start, end, step, this.conf.getPrefetch(), i -> fetchPage(session, source, i))) {
+            for(int i = start; prefetch.hasNext(); i += step) {
+                // 边解析边提交下载, 该页所有图片处理完成后记录到断点续传日志
+                Page page = new Page(source, i);
+                byte[] body = prefetch.next();
+                source.extractCandidates(body, candidate -> {
+                    page.found++;
+                    if(job.need() <= 0) {
+                        // 数量已经足够, 该页剩下的图片不处理
+                        page.partial = true;
+                    } else if(this.journal != null && this.journal.isHandled(candidate.getKey())) {
+                        // 上一次运行已经处理过, 对于饱和判断也算是有效的结果
+                        page.fresh++;
+                    } else if(isNewUrl(candidate.getKey())) {
+                        page.fresh++;
+                        page.begin();
+                        saveToFile(session, this.conf.getResultPath(), candidate, page);
+                    }
+                });
+                page.finish(!page.partial);
+                this.onPageParsed(source, page.found);
+                if(saturation.update(i, page.partial ? -1 : page.fresh, source.totalResults(body))) {
+                    // 结果已经获取完, 不再发起新的分页, 多个来源时由其他来源继续
+                    prefetch.stop();
+                }
+                if(job.need() <= 0 && job.isTopUp()) {
+                    // 补齐模式: 等待已经加入下载的图片都有结果, 再判断是否足够
+                    job.awaitSettled(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+                }
+                if(job.need() <= 0) {
+                    // 已经足够数量的链接, 不再发起新的分页
+                    prefetch.stop();
+                }
+            }
+        }
+        if(job.isTopUp() && job.need() > 0) {
+            logger.warn("{} {} 分页已经获取完, 仍然缺少 {} 张图片", this.conf.getKeyword(), source.name(), job.need());
+        }
+    }
+
+    /** 下载的临时目录(在结果目录中, 移动到结果目录时不需要复制) */
+    private Path tempDir(Conf conf) {
+        return Paths.get(conf.getResultPath(), ".download");
+    }
+
+    /**
+     * 打开断点续传日志, 恢复已保存的数量
+     */
+    private void openJournal() throws IOException {
+        if(!this.conf.isCheckpoint()) {
+            return;
+        }
+        this.journal = CheckpointJournal.open(Paths.get(this.conf.getResultPath(), ".checkpoint"), this.conf.getCheckpointSyncInterval());
+        long savedCount = this.journal.getSavedCount();
+        if(savedCount > 0) {
+            this.job.restore(savedCount);
+            this.index.set((int) savedCount);
+            logger.info("{} 从断点继续下载, 已保存:{}", this.conf.getKeyword(), savedCount);
+        }
+    }
+
+    private void closeJournal() {
+        if(this.journal != null) {
+            try {
+                this.journal.close();
+            } catch(IOException e) {
+                logger.warn("关闭断点续传日志失败", e);
             }
-            // 随机睡眠0 ~ 指定的睡眠时间之内的时间
-            Thread.sleep(ThreadLocalRandom.current().nextLong(this.conf.getSleepTime()));
-            //
-            String url = baseUrl.replace("${keyword}", this.conf.getKeyword()).replace("${startIndex}", String.valueOf(i));
-            String bodyString = session.build(url).setIfEncodeUrl(true).execute().getBodyString();
-            Object urlObject = JSONPath.eval(JSON.parseObject(bodyString), "$..data..hoverURL");
-            if(urlObject instanceof List) {
-                for(String imgUrl : (List<String>) urlObject) {
-                    // if(bloomFilter.mightContain(imgUrl)) {
-                    if(list.contains(imgUrl)) {
-                        continue;
+        }
+    }
+
+    /**
+     * 流水线模式: 获取页面 -> 解析链接 -> 去重 -> 下载 -> 写文件
+     * 每个阶段独立的线程数, 阶段之间使用有界队列, 下载饱和时页面获取会自动放慢
+     * 多个来源的分页交替放入流水线
+     */
+    private void runPipeline(HttpURLConnectionUtil.Session session) throws InterruptedException {
+        CrawlJob job = this.job;
+        if(job.isTopUp()) {
+            logger.warn("{} 流水线模式不支持补齐模式", this.conf.getKeyword());
+        }
+        int queueSize = this.conf.getQueueSize();
+        Map<ImageSource, Saturation> saturationMap = new HashMap<>(8);
+        this.sources.forEach(source -> saturationMap.put(source, new Saturation(source)));
+        PipelineUtil<PageTask> pipeline = PipelineUtil.<PageTask>builder(BaiDuImgSpider2.class.getSimpleName())
+                .stage("page", this.conf.getPageThreads(), queueSize, (PageTask task, Consumer<PageTask> out) -> {
+                    task.body = fetchPage(session, task.source, task.offset);
+                    out.accept(task);
+                })
+                .stage("extract", this.conf.getPageThreads(), queueSize, (PageTask task, Consumer<PageItem> out) -> {
+                    // 该页所有图片都处理成功后记录到断点续传日志(和 crawl 一样)
+                    Page page = new Page(task.source, task.offset);
+                    task.source.extractCandidates(task.body, candidate -> {
+                        page.found++;
+                        page.begin();
+                        out.accept(new PageItem(page, candidate));
+                    });
+                    page.finish(true);
+                    this.onPageParsed(task.source, page.found);
+                    // 流水线中去重在后面的阶段, 这里只根据空页和结果总数判断
+                    saturationMap.get(task.source).update(task.offset, page.found, task.source.totalResults(task.body));
+                })
+                .stage("dedup", this.conf.getPageThreads(), queueSize, (PageItem item, Consumer<PageItem> out) -> {
+                    if(job.need() <= 0) {
+                        // 数量已经足够, 该页没有全部处理, 续传时需要重新获取
+                        item.page.finish(false);
+                    } else if(this.journal != null && this.journal.isHandled(item.candidate.getKey())) {
+                        // 上一次运行已经处理过
+                        item.page.finish(true);
+                    } else if(isNewUrl(item.candidate.getKey())) {
+                        out.accept(item);
+                    } else {
+                        item.page.finish(true);
+                    }
+                })
+                .stage("download", this.conf.getDownloadThreads(), queueSize, (PageItem item, Consumer<PageItem> out) -> {
+                    job.onStart();
+                    try {
+                        item.result = this.downloader.download(session, item.candidate);
+                    } catch(RuntimeException e) {
+                        job.onFailed();
+                        item.page.finish(false);
+                        throw e;
                     }
-                    saveToFile(session, this.conf.getResultPath(), imgUrl);
-                    // bloomFilter.put(imgUrl);
-                    list.add(imgUrl);
+                    out.accept(item);
+                })
+                .sink("write", this.conf.getWriteThreads(), queueSize, item -> {
+                    boolean handled = write(this.conf.getResultPath(), item.result);
+                    if(!handled) {
+                        job.onFailed();
+                    }
+                    item.page.finish(handled);
+                });
+        int[] offsets = new int[this.sources.size()];
+        for(int k = 0; k < offsets.length; k++) {
+            ImageSource source = this.sources.get(k);
+            offsets[k] = this.journal == null ? 0 : this.journal.resumeOffset(source.name(), source.pageSize());
+        }
+        // 每一轮都判断数量是否已经足够(断点中已经保存足够数量时不需要获取分页), 去重阶段不再接收链接之后不再获取分页
+        for(boolean more = true; more && job.need() > 0; ) {
+            more = false;
+            for(int k = 0; k < offsets.length && job.need() > 0; k++) {
+                if(offsets[k] < this.conf.getTotalCount() && !saturationMap.get(this.sources.get(k)).exhausted) {
+                    // 队列满时阻塞, 即背压
+                    pipeline.put(new PageTask(this.sources.get(k), offsets[k]));
+                    offsets[k] += this.sources.get(k).pageSize();
+                    more = true;
                 }
             }
         }
+        pipeline.close();
+        pipeline.await();
+        logger.info("流水线执行完成 {}", pipeline);
+    }
+
+    /** 获取一页搜索结果, 按主机自适应限流 */
+    private byte[] fetchPage(HttpURLConnectionUtil.Session session, ImageSource source, int i) {
+        String warmUpUrl = source.warmUpUrl();
+        if(warmUpUrl != null && (i / source.pageSize()) % source.warmUpEvery() == 0 && this.needWarmUp(session, source, warmUpUrl)) {
+            // 查找一定页数之后, 那就换一个cookie
+            session.build(warmUpUrl).setRateLimiter(this.rateLimiter).execute().getBody();
+        }
+        return session.build(source.pageUrl(this.conf.getKeyword(), i)).setIfEncodeUrl(true).setRateLimiter(this.rateLimiter).execute().getBody();
     }
 
+    /** 是否需要获取cookie: 第一次获取时 cookie 存储中已经有该链接的 cookie(上次运行保存的)则跳过, 之后按照间隔重新获取 */
+    private boolean needWarmUp(HttpURLConnectionUtil.Session session, ImageSource source, String warmUpUrl) {
+        if(this.warmedUpSources.add(source.name()) && session.getCookieJar() != null && session.getCookieJar().hasCookies(warmUpUrl)) {
+            logger.info("{} 使用已保存的cookie, 跳过获取cookie", source.name());
+            return false;
+        }
+        return true;
+    }
 
-    private void saveToFile(HttpURLConnectionUtil.Session session, String resultPath, String imgUrl) {
-        threadPoolUtil.submit(() -> {
-            byte[] body = session.build(imgUrl).execute().getBody();
-            String fileType = FileUtil.getVagueImgFileType(FileUtil.getFileType(imgUrl));
-            fileType = fileType == null ? "png" : fileType;
+    /** 分页解析完成, 没有任何图片时认为被限制了 */
+    private void onPageParsed(ImageSource source, int found) {
+        if(found == 0) {
+            this.rateLimiter.backoff(source.host());
+        }
+    }
+
+    /** 判断是否是新的链接, 是则记录下来(线程安全), 上一次运行已经处理过的链接不是新的链接 */
+    private boolean isNewUrl(String imgUrl) {
+        if(imgUrl == null || (this.journal != null && this.journal.isHandled(imgUrl))) {
+            return false;
+        }
+        if(seenSet.add(imgUrl)) {
+            this.job.onQueued();
+            return true;
+        }
+        return false;
+    }
+
+    private void saveToFile(HttpURLConnectionUtil.Session session, String resultPath, ImageCandidate candidate, Page page) {
+        CrawlJob job = this.job;
+        Runnable task = () -> {
+            job.onStart();
+            boolean handled = false;
             try {
+                // 按照版本策略下载, 失败时自动使用下一个版本(每一个版本按照重试策略重试)
+                handled = write(resultPath, this.downloader.download(session, candidate));
+            } catch(RuntimeException e) {
+                logger.warn("{} 下载图片失败 {}", candidate.getKey(), e.toString());
+            } finally {
+                if(!handled) {
+                    job.onFailed();
+                }
+                page.finish(handled);
+            }
+        };
+        try {
+            // 按关键字和图片所在的主机轮流下载, 每一个主机同时下载的数量有上限, 该主机排队已满时阻塞
+            this.scheduler.submit(new DownloadKey(this.conf.getKeyword(), this.downloader.primaryHost(candidate)), task);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** 设置图片来源, 在 start 之前调用 */
+    public void setSources(List<ImageSource> sources) {
+        this.sources = sources;
+    }
+
+    /** 获取关键字 */
+    public String getKeyword() {
+        return this.conf.getKeyword();
+    }
+
+    /** 获取下载任务, 开始之前为null */
+    public CrawlJob getJob() {
+        return this.job;
+    }
+
+    /** 获取进度: 关键字, 排队/下载中/已保存/失败/跳过数量, 每秒保存数量 */
+    public String getProgress() {
+        CrawlJob job = this.job;
+        return job == null ? this.conf.getKeyword() + "{}" : job.toString();
+    }
+
+    /** 获取每一个主机的下载情况: 主机 => [排队数量, 下载中数量], 还没有开始下载时为空 */
+    public Map<String, long[]> getHostStats() {
+        FairScheduler<DownloadKey> scheduler = this.scheduler;
+        return scheduler == null ? new HashMap<>(0) : scheduler.getGroupStats();
+    }
+
+    /** 格式化每一个主机的下载情况: 主机(下载中/排队) */
+    static String formatHostStats(FairScheduler<DownloadKey> scheduler) {
+        StringBuilder builder = new StringBuilder("{");
+        scheduler.getGroupStats().forEach((host, stat) -> builder.append(host).append('(').append(stat[1]).append('/').append(stat[0]).append("), "));
+        if(builder.length() > 1) {
+            builder.setLength(builder.length() - 2);
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * 保存图片
+     * @return 已保存或者不需要保存时返回 true, 保存失败返回 false
+     */
+    private boolean write(String resultPath, ImageDownloader.Result imgData) {
+        if(imgData.getDigest() != null && this.conf.isContentDedup() && !contentSeenSet.add(imgData.getDigest())) {
+            // 同一张图片使用了不同的链接, 内容完全一样则不再保存
+            logger.debug("{} 图片内容重复, 跳过保存", imgData.getUrl());
+            imgData.discard();
+            this.onSkipped(imgData.getKey());
+            return true;
+        }
+        String fileType = FileUtil.getVagueImgFileType(FileUtil.getFileType(imgData.getUrl()));
+        fileType = fileType == null ? "png" : fileType;
+        try {
+            // 使用摘要作为文件名, 重复运行时已经存在的图片不会重复保存
+            boolean createNew = this.conf.isNameByDigest() && imgData.getDigest() != null;
+            Path target;
+            if(createNew) {
+                target = Paths.get(resultPath + "/" + imgData.getDigest() + "." + fileType);
+            } else {
                 String format = "%0"+ String.valueOf(this.conf.getTotalCount()).length() +"d";
                 String prefix = String.format(format, index.incrementAndGet());
-                Files.write(Paths.get(resultPath + "/" + prefix + "_" + UUID.randomUUID().toString().replace("-", "") + "." + fileType), body);
-            } catch(IOException e) {
-                logger.warn("保存图片失败", e);
+                target = Paths.get(resultPath + "/" + prefix + "_" + UUID.randomUUID().toString().replace("-", "") + "." + fileType);
             }
-        });
+            if(imgData.getFile() != null) {
+                // 已经写入临时文件(同一个磁盘), 直接移动, 目标已经存在时抛出 FileAlreadyExistsException
+                Files.move(imgData.getFile(), target);
+            } else if(createNew) {
+                Files.write(target, imgData.getBody(), StandardOpenOption.CREATE_NEW);
+            } else {
+                Files.write(target, imgData.getBody());
+            }
+            this.job.onSaved();
+            if(this.journal != null) {
+                this.journal.saved(imgData.getKey());
+            }
+            return true;
+        } catch(FileAlreadyExistsException e) {
+            logger.debug("{} 图片已经存在, 跳过保存", imgData.getUrl());
+            imgData.discard();
+            this.onSkipped(imgData.getKey());
+            return true;
+        } catch(IOException e) {
+            logger.warn("保存图片失败", e);
+            imgData.discard();
+            return false;
+        }
+    }
+
+    private void onSkipped(String imgUrl) {
+        this.job.onSkipped();
+        if(this.journal != null) {
+            this.journal.skipped(imgUrl);
+        }
     }
 
     public static void main(String[] args) throws Exception {
         BaiDuImgSpider2 baiDuImgSpider = new BaiDuImgSpider2();
         baiDuImgSpider.init();
+        // log for houyu
+        logForHouyu(baiDuImgSpider.getKeyword());
         baiDuImgSpider.run();
+        logger.info("下载完成 {}", baiDuImgSpider.getProgress());
+        if(baiDuImgSpider.scheduler != null) {
+            logger.info("主机 {}", formatHostStats(baiDuImgSpider.scheduler));
+        }
+        logger.info("连接复用 {}", HttpURLConnectionUtil.KeepAlive.stats());
+        if(baiDuImgSpider.session.getDnsCache() != null) {
+            logger.info("DNS {}", baiDuImgSpider.session.getDnsCache());
+        }
+        if(baiDuImgSpider.session.getRetryPolicy() != null) {
+            logger.info("重试 {}", baiDuImgSpider.session.getRetryPolicy());
+        }
+        if(baiDuImgSpider.session.getHedgePolicy() != null) {
+            logger.info("对冲 {}", baiDuImgSpider.session.getHedgePolicy());
+        }
+        if(baiDuImgSpider.session.getCircuitBreaker() != null) {
+            logger.info("熔断 {}", baiDuImgSpider.session.getCircuitBreaker());
+        }
     }
 
     private class Conf {
         String keyword;
         int totalCount;
         String resultPath;
-        Long sleepTime;
+        String dedup;           // 去重模式 exact / bloom
+        boolean contentDedup;   // 是否按图片内容去重
+        boolean nameByDigest;   // 是否使用内容摘要作为文件名
+        boolean streamToFile;   // 是否直接写入临时文件(不在内存中保存图片)
+        long dedupExpectedSize; // 布隆过滤器预计元素数量
+        double dedupFpp;        // 布隆过滤器误判率
+        int prefetch;           // 同时预取的分页数量
+        boolean pipeline;       // 是否使用流水线模式
+        int pageThreads;        // 流水线: 获取页面的线程数
+        int downloadThreads;    // 流水线: 下载图片的线程数
+        int writeThreads;       // 流水线: 写文件的线程数
+        int queueSize;          // 流水线: 阶段之间的队列大小
+        int downloadMaxThreads;         // 下载线程数
+        int downloadMaxQueuedPerHost;   // 每一个主机最多排队等待下载的图片数量
+        int downloadMaxPerHost;         // 每一个主机最多同时下载的数量
+        int saturationPages;    // 连续多少页没有新的图片时停止获取分页, 0表示不判断
+        boolean topUp;          // 是否补齐模式(失败和跳过的图片继续获取分页补上)
+        int topUpMaxFactor;     // 补齐模式: 最多获取 totalCount 的多少倍的分页
+        boolean checkpoint;     // 是否开启断点续传
+        long checkpointSyncInterval; // 断点续传日志写入磁盘的间隔(毫秒)
 
         public Conf() {
         }
@@ -144,12 +720,265 @@ public class BaiDuImgSpider2 {
             this.resultPath = resultPath;
         }
 
-        public Long getSleepTime() {
-            return sleepTime;
+        public boolean isContentDedup() {
+            return contentDedup;
+        }
+
+        public void setContentDedup(boolean contentDedup) {
+            this.contentDedup = contentDedup;
+        }
+
+        public boolean isNameByDigest() {
+            return nameByDigest;
+        }
+
+        public void setNameByDigest(boolean nameByDigest) {
+            this.nameByDigest = nameByDigest;
+        }
+
+        public boolean isStreamToFile() {
+            return streamToFile;
+        }
+
+        public void setStreamToFile(boolean streamToFile) {
+            this.streamToFile = streamToFile;
+        }
+
+        public String getDedup() {
+            return dedup;
+        }
+
+        public void setDedup(String dedup) {
+            this.dedup = dedup;
+        }
+
+        public long getDedupExpectedSize() {
+            return dedupExpectedSize;
+        }
+
+        public void setDedupExpectedSize(long dedupExpectedSize) {
+            this.dedupExpectedSize = dedupExpectedSize;
+        }
+
+        public double getDedupFpp() {
+            return dedupFpp;
+        }
+
+        public void setDedupFpp(double dedupFpp) {
+            this.dedupFpp = dedupFpp;
+        }
+
+        public int getPrefetch() {
+            return prefetch;
+        }
+
+        public void setPrefetch(int prefetch) {
+            this.prefetch = prefetch;
+        }
+
+        public boolean isPipeline() {
+            return pipeline;
+        }
+
+        public void setPipeline(boolean pipeline) {
+            this.pipeline = pipeline;
+        }
+
+        public int getPageThreads() {
+            return pageThreads;
+        }
+
+        public void setPageThreads(int pageThreads) {
+            this.pageThreads = pageThreads;
+        }
+
+        public int getDownloadThreads() {
+            return downloadThreads;
+        }
+
+        public void setDownloadThreads(int downloadThreads) {
+            this.downloadThreads = downloadThreads;
+        }
+
+        public int getWriteThreads() {
+            return writeThreads;
+        }
+
+        public void setWriteThreads(int writeThreads) {
+            this.writeThreads = writeThreads;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        public void setQueueSize(int queueSize) {
+            this.queueSize = queueSize;
+        }
+
+        public int getDownloadMaxThreads() {
+            return downloadMaxThreads;
+        }
+
+        public void setDownloadMaxThreads(int downloadMaxThreads) {
+            this.downloadMaxThreads = downloadMaxThreads;
         }
 
-        public void setSleepTime(Long sleepTime) {
-            this.sleepTime = sleepTime;
+        public int getDownloadMaxQueuedPerHost() {
+            return downloadMaxQueuedPerHost;
+        }
+
+        public void setDownloadMaxQueuedPerHost(int downloadMaxQueuedPerHost) {
+            this.downloadMaxQueuedPerHost = downloadMaxQueuedPerHost;
+        }
+
+        public int getDownloadMaxPerHost() {
+            return downloadMaxPerHost;
+        }
+
+        public void setDownloadMaxPerHost(int downloadMaxPerHost) {
+            this.downloadMaxPerHost = downloadMaxPerHost;
+        }
+
+        public int getSaturationPages() {
+            return saturationPages;
+        }
+
+        public void setSaturationPages(int saturationPages) {
+            this.saturationPages = saturationPages;
+        }
+
+        public boolean isTopUp() {
+            return topUp;
+        }
+
+        public void setTopUp(boolean topUp) {
+            this.topUp = topUp;
+        }
+
+        public int getTopUpMaxFactor() {
+            return topUpMaxFactor;
+        }
+
+        public void setTopUpMaxFactor(int topUpMaxFactor) {
+            this.topUpMaxFactor = topUpMaxFactor;
+        }
+
+        public boolean isCheckpoint() {
+            return checkpoint;
+        }
+
+        public void setCheckpoint(boolean checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+
+        public long getCheckpointSyncInterval() {
+            return checkpointSyncInterval;
+        }
+
+        public void setCheckpointSyncInterval(long checkpointSyncInterval) {
+            this.checkpointSyncInterval = checkpointSyncInterval;
+        }
+    }
+
+    /**
+     * 一页搜索结果的处理进度, 该页所有图片都处理成功后记录到断点续传日志
+     * 初始计数1代表解析本身, 解析结束时 finish(true), crawl 和 流水线模式都使用
+     */
+    private class Page {
+        private final ImageSource source;
+        private final int offset;
+        private int found;                                          // 解析到的图片数量(包括重复), 只在解析线程中访问
+        private int fresh;                                          // 新的图片数量, 只在解析线程中访问
+        private boolean partial;                                    // 数量足够之后剩下的图片没有处理, 只在解析线程中访问
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private volatile boolean failed = false;
+
+        private Page(ImageSource source, int offset) {
+            this.source = source;
+            this.offset = offset;
+        }
+
+        private void begin() {
+            this.pending.incrementAndGet();
+        }
+
+        private void finish(boolean success) {
+            if(!success) {
+                // 有图片失败, 续传时需要重新获取该页
+                this.failed = true;
+            }
+            if(this.pending.decrementAndGet() == 0 && !this.failed && journal != null) {
+                journal.pageDone(this.source.name(), this.offset);
+            }
+        }
+    }
+
+    /**
+     * 一个来源的结果是否已经获取完: 连续 saturation.pages 页没有新的图片, 或者已经超过接口返回的结果总数
+     */
+    private class Saturation {
+        private final ImageSource source;
+        private int emptyPages;                                     // 连续没有新图片的页数
+        private volatile boolean exhausted;                         // 是否已经获取完
+
+        private Saturation(ImageSource source) {
+            this.source = source;
+        }
+
+        /**
+         * 一页解析完成之后更新
+         * @param fresh 新的图片数量, 数量已经足够没有全部处理时为-1(不参与判断)
+         * @param total 接口返回的结果总数, 未知为-1
+         * @return 是否已经获取完
+         */
+        private synchronized boolean update(int offset, int fresh, int total) {
+            if(fresh == 0) {
+                this.emptyPages++;
+            } else if(fresh > 0) {
+                this.emptyPages = 0;
+            }
+            int limit = conf.getSaturationPages();
+            if(!this.exhausted && limit > 0 && this.emptyPages >= limit) {
+                this.exhausted = true;
+                logger.info("{} {} 连续 {} 页没有新的图片, 停止获取分页, pn={}", conf.getKeyword(), this.source.name(), this.emptyPages, offset);
+            }
+            if(!this.exhausted && total >= 0 && offset + this.source.pageSize() >= total) {
+                this.exhausted = true;
+                logger.info("{} {} 结果总数 {} 已经获取完, 停止获取分页, pn={}", conf.getKeyword(), this.source.name(), total, offset);
+            }
+            return this.exhausted;
+        }
+    }
+
+    /** 获取分页 */
+    @FunctionalInterface
+    private interface Crawler {
+        void crawl() throws Exception;
+    }
+
+    /** 流水线中的一张图片 */
+    private static class PageItem {
+        private final Page page;                                    // 所在的分页
+        private final ImageCandidate candidate;
+        private ImageDownloader.Result result;                      // 下载结果, 下载阶段之后不为null
+
+        private PageItem(Page page, ImageCandidate candidate) {
+            this.page = page;
+            this.candidate = candidate;
         }
     }
+
+    /** 流水线中的一页 */
+    private static class PageTask {
+        private final ImageSource source;
+        private final int offset;
+        private byte[] body;
+
+        private PageTask(ImageSource source, int offset) {
+            this.source = source;
+            this.offset = offset;
+        }
+    }
+
 }
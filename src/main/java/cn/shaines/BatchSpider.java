@@ -0,0 +1,163 @@
+package cn.shaines;
+
+import cn.shaines.util.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量模式: 一个进程同时下载多个关键字
+ *
+ * 所有关键字共享会话, 下载线程池和去重集合, 下载线程池按关键字公平调度,
+ * 避免某一个关键字的图片占满所有下载线程.
+ *
+ * 配置(conf/img.baidu.properties):
+ * keywords=唐嫣,夜色
+ * keywordFile=conf/keywords.txt
+ *
+ * @description 批量下载多个关键字
+ * @date created in 2026-10-18 07:17:37
+ * @author agent
+ */
+public class BatchSpider {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(BatchSpider.class);
+
+    private List<String> keywordList;
+    private int concurrency;                // 同时下载的关键字数量
+    private int reportInterval;             // 打印进度的间隔(秒)
+    private CrawlContext context;
+
+    /**
+     * 是否配置了批量关键字
+     */
+    public static boolean isEnabled() {
+        PropertiesUtil propertiesUtil = BaiDuImgSpider2.loadProperties();
+        return PublicUtil.isNotEmpty(propertiesUtil.getProperty("keywords")) || PublicUtil.isNotEmpty(propertiesUtil.getProperty("keywordFile"));
+    }
+
+    public void init() throws IOException {
+        PropertiesUtil propertiesUtil = BaiDuImgSpider2.loadProperties();
+        this.keywordList = readKeywords(propertiesUtil.getProperty("keywords"), propertiesUtil.getProperty("keywordFile"));
+        this.concurrency = propertiesUtil.getPropertyOrDefault("batch.concurrency", 4);
+        this.reportInterval = propertiesUtil.getPropertyOrDefault("batch.reportInterval", 10);
+        // 在创建下载线程池之前决定是否使用虚拟线程
+        VirtualThreadUtil.setEnabled(propertiesUtil.getPropertyOrDefault("virtualThreads", false));
+        int downloadThreads = propertiesUtil.getPropertyOrDefault("batch.downloadThreads", 50);
+        int maxQueuedPerKeyword = propertiesUtil.getPropertyOrDefault("batch.maxQueuedPerKeyword", 200);
+        int maxPerHost = propertiesUtil.getPropertyOrDefault("download.maxPerHost", 6);
+        int totalCount = propertiesUtil.getPropertyOrDefault("totalCount", 1000);
+        long expectedSize = propertiesUtil.getPropertyOrDefault("dedup.expectedSize", totalCount * 4L) * this.keywordList.size();
+        SeenSet seenSet = SeenSet.of(propertiesUtil.getPropertyOrDefault("dedup", SeenSet.MODE_EXACT), expectedSize, propertiesUtil.getPropertyOrDefault("dedup.fpp", 0.0001D));
+        SeenSet contentSeenSet = new SeenSet.Exact(totalCount * this.keywordList.size());
+        // 先按关键字轮流, 再按关键字内的主机轮流下载, 图片分布在很多主机上的关键字也只占一份;
+        // 每一个关键字排队的数量有上限, 每一个主机同时下载的数量有上限, 一个主机很慢时不会占满所有下载线程
+        FairScheduler<DownloadKey> scheduler = new FairScheduler<>("download", downloadThreads, maxQueuedPerKeyword, DownloadKey::getKeyword, DownloadKey::getHost, maxPerHost);
+        HostRateLimiter rateLimiter = BaiDuImgSpider2.buildRateLimiter(propertiesUtil);
+        this.context = new CrawlContext(BaiDuImgSpider2.buildSession(propertiesUtil), scheduler, seenSet, contentSeenSet, rateLimiter);
+        logger.info("批量模式, 关键字数量:{}, 同时下载关键字数量:{}, 下载线程数量:{}, 每一个主机同时下载数量:{}", this.keywordList.size(), this.concurrency, downloadThreads, maxPerHost);
+    }
+
+    public void run() throws Exception {
+        List<BaiDuImgSpider2> spiderList = new ArrayList<>(this.keywordList.size());
+        for(String keyword : this.keywordList) {
+            BaiDuImgSpider2 spider = new BaiDuImgSpider2();
+            spider.init(keyword, this.context);
+            spiderList.add(spider);
+        }
+        ScheduledExecutorService reportPool = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "batch-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reportPool.scheduleAtFixedRate(() -> this.report(spiderList), this.reportInterval, this.reportInterval, TimeUnit.SECONDS);
+        //
+        long start = System.currentTimeMillis();
+        ExecutorService keywordPool = Executors.newFixedThreadPool(Math.max(1, this.concurrency));
+        for(BaiDuImgSpider2 spider : spiderList) {
+            keywordPool.submit(() -> {
+                try {
+                    spider.run();
+                } catch(Exception e) {
+                    logger.warn("{} 下载出现异常 {}", spider.getKeyword(), e);
+                }
+            });
+        }
+        keywordPool.shutdown();
+        keywordPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        // 所有分页都已处理, 等待下载完成
+        this.context.getScheduler().awaitIdle(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        this.context.getScheduler().shutdown();
+        reportPool.shutdown();
+        this.report(spiderList);
+        logger.info("批量下载完成, 耗时:{}秒", (System.currentTimeMillis() - start) / 1000);
+    }
+
+    /** 打印每一个关键字的进度 */
+    private void report(List<BaiDuImgSpider2> spiderList) {
+        Map<String, Long> queuedMap = new HashMap<>(spiderList.size());
+        this.context.getScheduler().getStats().forEach((key, stat) -> queuedMap.merge(key.getKeyword(), stat[0], Long::sum));
+        for(BaiDuImgSpider2 spider : spiderList) {
+            logger.info("进度 {} 排队:{}", spider.getProgress(), queuedMap.getOrDefault(spider.getKeyword(), 0L));
+        }
+        logger.info("主机 {}", BaiDuImgSpider2.formatHostStats(this.context.getScheduler()));
+        logger.info("限流 {}", this.context.getRateLimiter());
+        logger.info("连接复用 {}", HttpURLConnectionUtil.KeepAlive.stats());
+        if(this.context.getSession().getDnsCache() != null) {
+            logger.info("DNS {}", this.context.getSession().getDnsCache());
+        }
+        if(this.context.getSession().getRetryPolicy() != null) {
+            logger.info("重试 {}", this.context.getSession().getRetryPolicy());
+        }
+        if(this.context.getSession().getHedgePolicy() != null) {
+            logger.info("对冲 {}", this.context.getSession().getHedgePolicy());
+        }
+        if(this.context.getSession().getCircuitBreaker() != null) {
+            logger.info("熔断 {}", this.context.getSession().getCircuitBreaker());
+        }
+    }
+
+    /** 读取关键字, 支持逗号分隔和文件(一行一个, #开头为注释) */
+    private static List<String> readKeywords(String keywords, String keywordFile) throws IOException {
+        Set<String> keywordSet = new LinkedHashSet<>(16);
+        if(PublicUtil.isNotEmpty(keywords)) {
+            for(String keyword : keywords.split("[,，]")) {
+                if(!keyword.trim().isEmpty()) {
+                    keywordSet.add(keyword.trim());
+                }
+            }
+        }
+        if(PublicUtil.isNotEmpty(keywordFile)) {
+            Path path = Paths.get(keywordFile);
+            path = path.isAbsolute() ? path : Paths.get(System.getProperty("user.dir")).resolve(path);
+            for(String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if(!line.trim().isEmpty() && !line.trim().startsWith("#")) {
+                    keywordSet.add(line.trim());
+                }
+            }
+        }
+        return new ArrayList<>(keywordSet);
+    }
+
+    public static void main(String[] args) throws Exception {
+        BatchSpider batchSpider = new BatchSpider();
+        batchSpider.init();
+        // log for houyu, 所有关键字只调用一次
+        BaiDuImgSpider2.logForHouyu(String.join(",", batchSpider.keywordList));
+        batchSpider.run();
+    }
+}
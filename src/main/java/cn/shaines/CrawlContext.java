@@ -0,0 +1,50 @@
+package cn.shaines;
+
+import cn.shaines.util.FairScheduler;
+import cn.shaines.util.HostRateLimiter;
+import cn.shaines.util.HttpURLConnectionUtil;
+import cn.shaines.util.SeenSet;
+
+/**
+ * 多个关键字同时下载时共享的资源: 会话, 下载线程池, 去重集合, 限流
+ *
+ * @description 共享的下载资源
+ * @date created in 2026-10-18 07:17:37
+ * @author agent
+ */
+public class CrawlContext {
+
+    private final HttpURLConnectionUtil.Session session;        // 共享会话
+    private final FairScheduler<DownloadKey> scheduler;         // 共享下载线程池(先按关键字, 再按主机公平调度)
+    private final SeenSet seenSet;                              // 共享链接去重
+    private final SeenSet contentSeenSet;                       // 共享图片内容去重
+    private final HostRateLimiter rateLimiter;                  // 共享获取分页的限流(同一个主机)
+
+    public CrawlContext(HttpURLConnectionUtil.Session session, FairScheduler<DownloadKey> scheduler, SeenSet seenSet, SeenSet contentSeenSet, HostRateLimiter rateLimiter) {
+        this.session = session;
+        this.scheduler = scheduler;
+        this.seenSet = seenSet;
+        this.contentSeenSet = contentSeenSet;
+        this.rateLimiter = rateLimiter;
+    }
+
+    public HttpURLConnectionUtil.Session getSession() {
+        return session;
+    }
+
+    public FairScheduler<DownloadKey> getScheduler() {
+        return scheduler;
+    }
+
+    public SeenSet getSeenSet() {
+        return seenSet;
+    }
+
+    public SeenSet getContentSeenSet() {
+        return contentSeenSet;
+    }
+
+    public HostRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+}
@@ -0,0 +1,189 @@
+package cn.shaines;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一个关键字的下载任务: 计数和完成通知
+ *
+ * 每一张图片的状态: 排队(queued) -> 下载中(inFlight) -> 已保存(saved) / 失败(failed) / 跳过(skipped)
+ * 不再产生新图片(finishProducing)并且所有图片都有结果时, 完成通知(getFuture)立即完成.
+ *
+ * 补齐模式(topUp): 失败和跳过的图片不算数, 继续获取分页直到正好保存 totalCount 张.
+ *
+ * @description 关键字下载任务
+ * @date created in 2026-10-18 07:22:44
+ * @author agent
+ */
+public class CrawlJob {
+
+    private final String keyword;
+    private final int totalCount;                           // 需要保存的数量
+    private final boolean topUp;                            // 是否补齐模式
+    private final CompletableFuture<CrawlJob> future = new CompletableFuture<>();
+    private final long startTime = System.currentTimeMillis();
+    private long queued;                                    // 已加入下载的数量
+    private long started;                                   // 已开始下载的数量
+    private long saved;                                     // 已保存的数量
+    private long failed;                                    // 失败的数量
+    private long skipped;                                   // 跳过的数量(内容重复, 文件已存在)
+    private boolean producing = true;                       // 是否还会产生新的图片
+
+    public CrawlJob(String keyword, int totalCount, boolean topUp) {
+        this.keyword = keyword;
+        this.totalCount = totalCount;
+        this.topUp = topUp;
+    }
+
+    /** 从断点续传恢复已保存的数量 */
+    public synchronized void restore(long saved) {
+        this.queued += saved;
+        this.started += saved;
+        this.saved += saved;
+    }
+
+    /**
+     * 还需要加入下载的数量
+     * 普通模式: totalCount - 已加入下载的数量
+     * 补齐模式: totalCount - 已保存的数量 - 还没有结果的数量, 即失败和跳过的图片需要补上
+     */
+    public synchronized long need() {
+        long counted = this.topUp ? this.saved + this.outstanding() : this.queued;
+        return this.totalCount - counted;
+    }
+
+    public synchronized void onQueued() {
+        this.queued++;
+    }
+
+    public synchronized void onStart() {
+        this.started++;
+    }
+
+    public void onSaved() {
+        boolean done;
+        synchronized(this) {
+            this.saved++;
+            done = this.settle();
+        }
+        this.complete(done);
+    }
+
+    public void onFailed() {
+        boolean done;
+        synchronized(this) {
+            this.failed++;
+            done = this.settle();
+        }
+        this.complete(done);
+    }
+
+    public void onSkipped() {
+        boolean done;
+        synchronized(this) {
+            this.skipped++;
+            done = this.settle();
+        }
+        this.complete(done);
+    }
+
+    /** 不再产生新的图片, 所有图片有结果之后任务完成 */
+    public void finishProducing() {
+        boolean done;
+        synchronized(this) {
+            this.producing = false;
+            done = this.settle();
+        }
+        this.complete(done);
+    }
+
+    /**
+     * 等待所有已加入下载的图片都有结果(补齐模式下判断是否需要继续获取分页)
+     * @return 超时返回 false
+     */
+    public synchronized boolean awaitSettled(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        while(this.outstanding() > 0) {
+            long wait = deadline - System.currentTimeMillis();
+            if(wait <= 0) {
+                return false;
+            }
+            this.wait(wait);
+        }
+        return true;
+    }
+
+    /** 还没有结果的数量(排队 + 下载中) */
+    private long outstanding() {
+        return this.queued - this.saved - this.failed - this.skipped;
+    }
+
+    /**
+     * 所有图片都有结果时唤醒 awaitSettled(需要持有锁)
+     * @return 是否可以完成通知(不再产生新的图片)
+     */
+    private boolean settle() {
+        if(this.outstanding() == 0) {
+            this.notifyAll();
+            return !this.producing;
+        }
+        return false;
+    }
+
+    /** 完成通知在锁外面执行(回调可能耗时或者访问其他任务的锁) */
+    private void complete(boolean done) {
+        if(done) {
+            this.future.complete(this);
+        }
+    }
+
+    /** 完成通知 */
+    public CompletableFuture<CrawlJob> getFuture() {
+        return this.future;
+    }
+
+    public boolean isDone() {
+        return this.future.isDone();
+    }
+
+    public String getKeyword() {
+        return this.keyword;
+    }
+
+    public int getTotalCount() {
+        return this.totalCount;
+    }
+
+    public boolean isTopUp() {
+        return this.topUp;
+    }
+
+    public synchronized long getQueued() {
+        return this.queued;
+    }
+
+    /** 下载中的数量 */
+    public synchronized long getInFlight() {
+        return this.started - this.saved - this.failed - this.skipped;
+    }
+
+    public synchronized long getSaved() {
+        return this.saved;
+    }
+
+    public synchronized long getFailed() {
+        return this.failed;
+    }
+
+    public synchronized long getSkipped() {
+        return this.skipped;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long seconds = Math.max(1, (System.currentTimeMillis() - this.startTime) / 1000);
+        return this.keyword + "{queued=" + this.queued + ", inFlight=" + this.getInFlight() + ", saved=" + this.saved + "/" + this.totalCount
+                + ", failed=" + this.failed + ", skipped=" + this.skipped + ", speed=" + String.format("%.2f", this.saved / (double) seconds) + "/s"
+                + (this.isDone() ? ", done" : "") + "}";
+    }
+}
@@ -0,0 +1,53 @@
+package cn.shaines;
+
+import java.util.Objects;
+
+/**
+ * 下载任务的调度key: 关键字 + 图片所在的主机
+ *
+ * 下载线程池先在关键字之间轮流, 再在关键字内的主机之间轮流执行, 按照主机分组限制同时下载的数量
+ *
+ * @description 下载任务的调度key
+ * @date created in 2026-10-18 07:30:45
+ * @author agent
+ */
+public class DownloadKey {
+
+    private final String keyword;
+    private final String host;
+
+    public DownloadKey(String keyword, String host) {
+        this.keyword = keyword;
+        this.host = host;
+    }
+
+    public String getKeyword() {
+        return keyword;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof DownloadKey)) {
+            return false;
+        }
+        DownloadKey that = (DownloadKey) o;
+        return this.keyword.equals(that.keyword) && this.host.equals(that.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.keyword, this.host);
+    }
+
+    @Override
+    public String toString() {
+        return this.keyword + "@" + this.host;
+    }
+}
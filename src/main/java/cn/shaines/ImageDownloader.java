@@ -0,0 +1,273 @@
+package cn.shaines;
+
+import cn.shaines.source.ImageCandidate;
+import cn.shaines.source.VariantPolicy;
+import cn.shaines.util.CircuitBreaker;
+import cn.shaines.util.HostRateLimiter;
+import cn.shaines.util.HttpURLConnectionUtil;
+import cn.shaines.util.LoggerFactory;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 下载一张图片: 按照版本策略依次尝试, 失败(异常, 非2xx, 防盗链返回的网页)时自动使用下一个版本
+ *
+ * 第一个版本所在的主机平均耗时超过 raceSlowMillis 时, 同时下载前两个版本, 使用先成功的那一个
+ *
+ * 会话设置了按主机熔断时, 熔断的主机直接失败(不连接), 立即使用下一个版本
+ *
+ * 设置了临时目录时图片直接写入临时文件(不在内存中保存), 由调用方移动到结果目录, 失败或者不需要时删除
+ *
+ * @description 图片下载
+ * @date created in 2026-10-18 07:27:18
+ * @author agent
+ */
+public class ImageDownloader {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(ImageDownloader.class);
+
+    private static final double ALPHA = 0.3;                       // 平均耗时的平滑系数
+
+    private final VariantPolicy policy;
+    private final String digestAlgorithm;                          // 摘要算法, 不需要时为null
+    private final long raceSlowMillis;                             // 主机平均耗时超过该值时同时下载两个版本, 0表示不同时下载
+    private final Path tempDir;                                    // 临时目录, 为null时图片保存在内存
+    private final Map<String, Double> latencyMap = new ConcurrentHashMap<>(16);    // 每一个主机的平均耗时(毫秒)
+
+    public ImageDownloader(VariantPolicy policy, String digestAlgorithm, long raceSlowMillis) {
+        this(policy, digestAlgorithm, raceSlowMillis, null);
+    }
+
+    /**
+     * @param tempDir 临时目录(需要已经存在, 和结果目录在同一个磁盘, 移动时不需要复制), 为null时图片保存在内存
+     */
+    public ImageDownloader(VariantPolicy policy, String digestAlgorithm, long raceSlowMillis, Path tempDir) {
+        this.policy = policy;
+        this.digestAlgorithm = digestAlgorithm;
+        this.raceSlowMillis = raceSlowMillis;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * 下载图片, 所有版本都失败时抛出最后一个异常
+     * 通过域对象的只读视图下载: 使用分页请求得到的 cookie 等状态, 但是不写回(大量下载时不修改共享的域对象)
+     */
+    public Result download(HttpURLConnectionUtil.Session session, ImageCandidate candidate) {
+        session = session.readOnly();
+        List<ImageCandidate.Variant> chain = this.policy.order(candidate);
+        int next = 0;
+        if(chain.size() > 1 && this.shouldRace(chain.get(0), chain.get(1))) {
+            Result result = this.race(session, candidate, chain.get(0), chain.get(1));
+            if(result != null) {
+                return result;
+            }
+            next = 2;
+        }
+        RuntimeException last = null;
+        for(; next < chain.size(); next++) {
+            try {
+                return this.fetch(session, candidate, chain.get(next));
+            } catch(RuntimeException e) {
+                logger.debug("{} 下载 {} 失败, 尝试下一个版本 {}", candidate.getKey(), chain.get(next), e.getMessage());
+                last = e;
+            }
+        }
+        throw last != null ? last : new RuntimeException(candidate.getKey() + " 所有版本都下载失败");
+    }
+
+    /** 下载一个版本, 非2xx或者返回网页(防盗链)时认为失败, 在当前线程执行(阻塞引擎不需要额外的线程) */
+    private Result fetch(HttpURLConnectionUtil.Session session, ImageCandidate candidate, ImageCandidate.Variant variant) {
+        HttpURLConnectionUtil.Request request = this.newRequest(session, variant);
+        Path file = this.newTempFile();
+        long start = System.currentTimeMillis();
+        HttpURLConnectionUtil.Response response;
+        try {
+            response = request.execute(file == null ? null : HttpURLConnectionUtil.BodySink.ofPath(file));
+        } catch(RuntimeException e) {
+            this.updateLatency(request, variant, start, e);
+            throw e;
+        }
+        this.updateLatency(request, variant, start, null);
+        return toResult(candidate, variant, file, response);
+    }
+
+    /** 异步下载一个版本, 由会话的请求引擎决定使用的线程 */
+    private CompletableFuture<Result> fetchAsync(HttpURLConnectionUtil.Request request, ImageCandidate candidate, ImageCandidate.Variant variant) {
+        Path file = this.newTempFile();
+        long start = System.currentTimeMillis();
+        return request.executeAsync(file == null ? null : HttpURLConnectionUtil.BodySink.ofPath(file))
+                .whenComplete((response, e) -> this.updateLatency(request, variant, start, e))
+                .thenApply(response -> toResult(candidate, variant, file, response));
+    }
+
+    /** 图片已经压缩过, 不声明接受压缩, 避免无意义的压缩和解压 */
+    private HttpURLConnectionUtil.Request newRequest(HttpURLConnectionUtil.Session session, ImageCandidate.Variant variant) {
+        return session.build(variant.getUrl()).setIfAcceptEncoding(false).setDigestAlgorithm(this.digestAlgorithm);
+    }
+
+    /** 临时文件, 没有临时目录时为null(图片保存在内存) */
+    private Path newTempFile() {
+        return this.tempDir == null ? null : this.tempDir.resolve(UUID.randomUUID().toString().replace("-", ""));
+    }
+
+    /** 更新主机的平均耗时, 主机熔断(没有连接)和被中止的请求不计入 */
+    private void updateLatency(HttpURLConnectionUtil.Request request, ImageCandidate.Variant variant, long start, Throwable e) {
+        if(request.isAborted()) {
+            return;
+        }
+        if(e != null && (e instanceof CircuitBreaker.CircuitOpenException || e.getCause() instanceof CircuitBreaker.CircuitOpenException)) {
+            return;
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        this.latencyMap.merge(hostOf(variant.getUrl()), (double) elapsed, (old, now) -> old * (1 - ALPHA) + now * ALPHA);
+    }
+
+    /** 检查响应, 非2xx或者不是图片时删除临时文件并且抛出异常 */
+    private static Result toResult(ImageCandidate candidate, ImageCandidate.Variant variant, Path file, HttpURLConnectionUtil.Response response) {
+        int code = response.getCode();
+        String contentType = response.getContentType();
+        if(code < 200 || code >= 300) {
+            deleteQuietly(file);
+            throw new RuntimeException(variant.getUrl() + " 响应状态码 " + code);
+        }
+        if(response.getBodyLength() == 0 || (contentType != null && contentType.startsWith("text/"))) {
+            deleteQuietly(file);
+            throw new RuntimeException(variant.getUrl() + " 不是图片(可能被防盗链拦截) " + contentType);
+        }
+        return new Result(candidate.getKey(), variant.getUrl(), variant.getName(), file == null ? response.getBody() : null, file, response.getDigest());
+    }
+
+    /** 图片第一个版本所在的主机(下载调度按照该主机限制并发) */
+    public String primaryHost(ImageCandidate candidate) {
+        List<ImageCandidate.Variant> chain = this.policy.order(candidate);
+        return chain.isEmpty() ? candidate.getKey() : hostOf(chain.get(0).getUrl());
+    }
+
+    /** 第一个版本的主机比较慢, 并且第二个版本在另一个主机 */
+    private boolean shouldRace(ImageCandidate.Variant first, ImageCandidate.Variant second) {
+        if(this.raceSlowMillis <= 0) {
+            return false;
+        }
+        String host = hostOf(first.getUrl());
+        Double latency = this.latencyMap.get(host);
+        return latency != null && latency > this.raceSlowMillis && !host.equals(hostOf(second.getUrl()));
+    }
+
+    /** 同时下载两个版本, 返回先成功的(中止另一个), 都失败返回null */
+    private Result race(HttpURLConnectionUtil.Session session, ImageCandidate candidate, ImageCandidate.Variant first, ImageCandidate.Variant second) {
+        CompletableFuture<Result> winner = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        ImageCandidate.Variant[] variants = {first, second};
+        HttpURLConnectionUtil.Request[] requests = {this.newRequest(session, first), this.newRequest(session, second)};
+        for(int i = 0; i < variants.length; i++) {
+            HttpURLConnectionUtil.Request other = requests[1 - i];
+            this.fetchAsync(requests[i], candidate, variants[i]).whenComplete((result, e) -> {
+                if(e == null) {
+                    if(winner.complete(result)) {
+                        // 中止另一个版本(断开连接, 不再继续读取)
+                        other.abort();
+                    } else {
+                        // 另一个版本已经先完成
+                        result.discard();
+                    }
+                } else if(failures.incrementAndGet() == 2) {
+                    winner.completeExceptionally(e);
+                }
+            });
+        }
+        try {
+            Result result = winner.get();
+            logger.debug("{} 同时下载 {} 和 {}, 使用 {}", candidate.getKey(), first, second, result.variant);
+            return result;
+        } catch(ExecutionException e) {
+            return null;
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** 获取每一个主机的平均耗时(毫秒) */
+    public Map<String, Double> getLatencies() {
+        return this.latencyMap;
+    }
+
+    private static void deleteQuietly(Path file) {
+        if(file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch(IOException e) {
+                logger.warn("删除临时文件 {} 失败", file);
+            }
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            return HostRateLimiter.hostOf(new URL(url));
+        } catch(MalformedURLException e) {
+            return url;
+        }
+    }
+
+    /**
+     * 下载完成的图片
+     */
+    public static class Result {
+        private final String key;               // 去重标识
+        private final String url;               // 实际下载的链接
+        private final String variant;           // 实际下载的版本
+        private final byte[] body;              // 图片内容, 写入临时文件时为null
+        private final Path file;                // 临时文件, 保存在内存时为null
+        private final String digest;            // 内容摘要, 不需要时为null
+
+        private Result(String key, String url, String variant, byte[] body, Path file, String digest) {
+            this.key = key;
+            this.url = url;
+            this.variant = variant;
+            this.body = body;
+            this.file = file;
+            this.digest = digest;
+        }
+
+        /** 不需要保存时删除临时文件 */
+        public void discard() {
+            deleteQuietly(this.file);
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getVariant() {
+            return variant;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+    }
+}
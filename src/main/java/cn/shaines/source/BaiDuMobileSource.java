@@ -0,0 +1,66 @@
+package cn.shaines.source;
+
+import cn.shaines.util.ParseUtil;
+
+import java.util.function.Consumer;
+
+/**
+ * 百度图片手机接口 m.baidu.com/sf/vsearch/image/search/wisesearchresult
+ *
+ * @description 百度图片手机接口
+ * @date created in 2026-10-18 07:24:32
+ * @author agent
+ */
+public class BaiDuMobileSource implements ImageSource {
+
+    private static final String CONTEXT_URL = "https://image.baidu.com/";
+    /*
+    使用手机模式
+    tn: wisejsonala
+    ie: utf-8
+    fromsf: 1
+    word: 唐嫣
+    pn: 20 开始位置
+    rn: 10 大小
+    gsm: 0
+    searchtype: 1
+    prefresh: undefined
+    from: link
+    type: 1
+    tagname: 推荐
+     */
+    /** 图片链接的字段路径, 流式解析, 不构建整个JSON对象 */
+    private static final ParseUtil.Extractor EXTRACTOR = ParseUtil.compile("linkData..thumbnailUrl");
+    private static final String BASE_URL = "http://m.baidu.com/sf/vsearch/image/search/wisesearchresult?tn=wisejsonala&ie=utf-8&fromsf=1&word=${keyword}&pn=${startIndex}&rn=10&gsm=&searchtype=1&prefresh=undefined&from=link&type=1&tagname=%E6%8E%A8%E8%8D%90";
+
+    @Override
+    public String name() {
+        return "baidu-mobile";
+    }
+
+    @Override
+    public String pageUrl(String keyword, int offset) {
+        return BASE_URL.replace("${keyword}", keyword).replace("${startIndex}", String.valueOf(offset));
+    }
+
+    @Override
+    public void extract(byte[] body, Consumer<String> consumer) {
+        EXTRACTOR.extract(body, consumer);
+    }
+
+    @Override
+    public String warmUpUrl() {
+        return CONTEXT_URL;
+    }
+
+    @Override
+    public int pageSize() {
+        // rn=10
+        return 10;
+    }
+
+    @Override
+    public String toString() {
+        return this.name();
+    }
+}
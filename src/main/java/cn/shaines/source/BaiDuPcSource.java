@@ -0,0 +1,157 @@
+package cn.shaines.source;
+
+import cn.shaines.util.ParseUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 百度图片PC接口 image.baidu.com/search/acjson
+ *
+ * @description 百度图片PC接口
+ * @date created in 2026-10-18 07:24:32
+ * @author agent
+ */
+public class BaiDuPcSource implements ImageSource {
+
+    private static final String CONTEXT_URL = "https://image.baidu.com/";
+    /** 图片链接的字段路径, 流式解析, 不构建整个JSON对象 */
+    private static final ParseUtil.Extractor EXTRACTOR = ParseUtil.compile("data..hoverURL");
+    /** 同一张图片的所有版本, 按 data 数组的每一个元素分组 */
+    private static final String THUMB = "data..thumbURL";
+    private static final String MIDDLE = "data..middleURL";
+    private static final String HOVER = "data..hoverURL";
+    private static final String OBJ = "data..objURL";               // 原图(加密)
+    private static final String REPLACE_OBJ = "data..ObjURL";       // replaceUrl 中的原图(不加密)
+    private static final String WIDTH = "data..width";
+    private static final String HEIGHT = "data..height";
+    /** 结果总数, displayNum 是可以翻页获取到的数量 */
+    private static final String DISPLAY_NUM = "displayNum";
+    private static final String LIST_NUM = "listNum";
+    private static final ParseUtil.Extractor TOTAL_EXTRACTOR = ParseUtil.compile(DISPLAY_NUM, LIST_NUM);
+    private static final ParseUtil.Extractor GROUP_EXTRACTOR = ParseUtil.compileGroup("data", THUMB, MIDDLE, HOVER, OBJ, REPLACE_OBJ, WIDTH, HEIGHT);
+    /** 缩略图长边的近似像素(百度缩略图按比例缩放, 这里只用于排序), 不会超过原图 */
+    private static final int THUMB_SIZE = 200;
+    private static final int MIDDLE_SIZE = 300;
+    private static final int HOVER_SIZE = 500;
+    /** objURL 解密: 先替换多字符的片段, 然后逐个字符映射 */
+    private static final String[][] OBJ_URL_SEGMENTS = {{"_z2C$q", ":"}, {"_z&e3B", "."}, {"AzdH3F", "/"}};
+    private static final char[] OBJ_URL_CHARS = new char[128];
+
+    static {
+        String from = "wkv1ju2it3hs4g5rq6fp7eo8dn9cm0bla";
+        String to = "abcdefghijklmnopqrstuvw1234567890";
+        for(int i = 0; i < OBJ_URL_CHARS.length; i++) {
+            OBJ_URL_CHARS[i] = (char) i;
+        }
+        for(int i = 0; i < from.length(); i++) {
+            OBJ_URL_CHARS[from.charAt(i)] = to.charAt(i);
+        }
+    }
+    private static final String BASE_URL = "https://image.baidu.com/search/acjson?tn=resultjson_com&ipn=rj&ct=201326592&is=&fp=result&queryWord=${keyword}&cl=2&lm=-1&ie=utf-8&oe=utf-8&adpicid=&st=-1&z=&ic=&hd=&latest=&copyright=&word=${keyword}&s=&se=&tab=&width=&height=&face=0&istype=2&qc=&nc=1&fr=&expermode=&force=&cg=star&pn=${startIndex}&rn=30&gsm=&1570893297936=";
+
+    @Override
+    public String name() {
+        return "baidu-pc";
+    }
+
+    @Override
+    public String pageUrl(String keyword, int offset) {
+        return BASE_URL.replace("${keyword}", keyword).replace("${startIndex}", String.valueOf(offset));
+    }
+
+    @Override
+    public void extract(byte[] body, Consumer<String> consumer) {
+        EXTRACTOR.extract(body, consumer);
+    }
+
+    /**
+     * 每一张图片: hoverURL, middleURL, thumbURL, 原图(objURL 解密 / replaceUrl)
+     * 使用 hoverURL 作为去重标识, 和只使用 hoverURL 时一致
+     */
+    @Override
+    public void extractCandidates(byte[] body, Consumer<ImageCandidate> consumer) {
+        GROUP_EXTRACTOR.extractGroups(body, group -> {
+            int original = Math.max(parseInt(group.get(WIDTH)), parseInt(group.get(HEIGHT)));
+            List<ImageCandidate.Variant> variants = new ArrayList<>(5);
+            addVariant(variants, "hoverURL", group.get(HOVER), scaled(HOVER_SIZE, original));
+            addVariant(variants, "middleURL", group.get(MIDDLE), scaled(MIDDLE_SIZE, original));
+            addVariant(variants, "thumbURL", group.get(THUMB), scaled(THUMB_SIZE, original));
+            addVariant(variants, "objURL", decodeObjUrl(group.get(OBJ)), original);
+            addVariant(variants, "replaceUrl", group.get(REPLACE_OBJ), original);
+            if(!variants.isEmpty()) {
+                consumer.accept(new ImageCandidate(variants.get(0).getUrl(), variants));
+            }
+        });
+    }
+
+    @Override
+    public int totalResults(byte[] body) {
+        int[] total = {-1, -1};
+        TOTAL_EXTRACTOR.extract(body, (path, value) -> {
+            int index = DISPLAY_NUM.equals(path) ? 0 : 1;
+            if(total[index] < 0) {
+                total[index] = parseInt(value);
+            }
+        });
+        return total[0] > 0 ? total[0] : total[1];
+    }
+
+    private static void addVariant(List<ImageCandidate.Variant> variants, String name, String url, int size) {
+        if(url == null || !url.startsWith("http")) {
+            return;
+        }
+        for(ImageCandidate.Variant variant : variants) {
+            if(variant.getUrl().equals(url)) {
+                return;
+            }
+        }
+        variants.add(new ImageCandidate.Variant(name, url, size));
+    }
+
+    private static int scaled(int size, int original) {
+        return original > 0 ? Math.min(size, original) : size;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return value == null ? 0 : Integer.parseInt(value.trim());
+        } catch(NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** objURL 解密, 例如 ippr_z2C$qAzdH3FAzdH3F... => http://... */
+    static String decodeObjUrl(String objUrl) {
+        if(objUrl == null || objUrl.startsWith("http")) {
+            return objUrl;
+        }
+        for(String[] segment : OBJ_URL_SEGMENTS) {
+            objUrl = objUrl.replace(segment[0], segment[1]);
+        }
+        char[] chars = objUrl.toCharArray();
+        for(int i = 0; i < chars.length; i++) {
+            if(chars[i] < OBJ_URL_CHARS.length) {
+                chars[i] = OBJ_URL_CHARS[chars[i]];
+            }
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String warmUpUrl() {
+        return CONTEXT_URL;
+    }
+
+    @Override
+    public int pageSize() {
+        // rn=30
+        return 30;
+    }
+
+    @Override
+    public String toString() {
+        return this.name();
+    }
+}
@@ -0,0 +1,74 @@
+package cn.shaines.source;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一张图片的所有可以下载的版本(缩略图, 中图, 原图...)
+ *
+ * key 用于去重和断点续传, 同一张图片的不同版本使用同一个 key
+ *
+ * @description 图片的候选版本
+ * @date created in 2026-10-18 07:27:18
+ * @author agent
+ */
+public class ImageCandidate {
+
+    private final String key;                       // 去重使用的标识
+    private final List<Variant> variants;           // 按来源给出的顺序
+
+    public ImageCandidate(String key, List<Variant> variants) {
+        this.key = key;
+        this.variants = Collections.unmodifiableList(variants);
+    }
+
+    /** 只有一个版本 */
+    public static ImageCandidate of(String url) {
+        return new ImageCandidate(url, Collections.singletonList(new Variant("default", url, 0)));
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public List<Variant> getVariants() {
+        return variants;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageCandidate{key='" + key + "', variants=" + variants + "}";
+    }
+
+    /**
+     * 图片的一个版本
+     */
+    public static class Variant {
+        private final String name;                  // 版本名称(thumbURL, objURL...)
+        private final String url;
+        private final int size;                     // 长边的像素(近似值), 未知为0
+
+        public Variant(String name, String url, int size) {
+            this.name = name;
+            this.url = url;
+            this.size = size;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + size + "px)";
+        }
+    }
+}
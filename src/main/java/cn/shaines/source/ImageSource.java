@@ -0,0 +1,117 @@
+package cn.shaines.source;
+
+import cn.shaines.util.HostRateLimiter;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 图片来源(搜索接口)
+ *
+ * 不同的搜索接口只有分页链接, 结果解析, 获取cookie的链接和分页大小不一样,
+ * 下载, 去重, 保存都是一样的, 因此新的来源只需要实现这个接口.
+ *
+ * 内置来源: baidu-pc(image.baidu.com acjson), baidu-mobile(m.baidu.com wisesearch)
+ * 其他来源通过 ServiceLoader 加载(META-INF/services/cn.shaines.source.ImageSource)
+ *
+ * 使用方式:
+ * List<ImageSource> sources = ImageSource.of("baidu-pc,baidu-mobile");
+ *
+ * @description 图片来源
+ * @date created in 2026-10-18 07:24:32
+ * @author agent
+ */
+public interface ImageSource {
+
+    /**
+     * 名称, 配置中使用(sources=baidu-pc,baidu-mobile), 也用于区分断点续传日志中的分页
+     */
+    String name();
+
+    /**
+     * 分页链接
+     * @param keyword 关键字
+     * @param offset 开始位置(pn)
+     */
+    String pageUrl(String keyword, int offset);
+
+    /**
+     * 解析一页结果中的图片链接
+     */
+    void extract(byte[] body, Consumer<String> consumer);
+
+    /**
+     * 解析一页结果中的图片, 每一张图片包含所有可以下载的版本
+     * 默认每一个链接是只有一个版本的图片
+     */
+    default void extractCandidates(byte[] body, Consumer<ImageCandidate> consumer) {
+        this.extract(body, url -> consumer.accept(ImageCandidate.of(url)));
+    }
+
+    /**
+     * 接口返回的结果总数(用于判断分页是否已经获取完), 不支持时返回-1
+     */
+    default int totalResults(byte[] body) {
+        return -1;
+    }
+
+    /**
+     * 获取cookie的链接, 不需要时返回null
+     */
+    String warmUpUrl();
+
+    /**
+     * 每一页的数量(pn 的步长)
+     */
+    int pageSize();
+
+    /**
+     * 每获取多少页重新获取一次cookie
+     */
+    default int warmUpEvery() {
+        return 10;
+    }
+
+    /**
+     * 分页所在的主机(限流使用)
+     */
+    default String host() {
+        try {
+            return HostRateLimiter.hostOf(new URL(this.pageUrl("", 0)));
+        } catch(MalformedURLException e) {
+            return this.name();
+        }
+    }
+
+    /**
+     * 根据名称获取来源, 多个名称使用逗号分隔
+     */
+    static List<ImageSource> of(String names) {
+        Map<String, ImageSource> sourceMap = new LinkedHashMap<>(8);
+        for(ImageSource source : Arrays.asList(new BaiDuPcSource(), new BaiDuMobileSource())) {
+            sourceMap.put(source.name(), source);
+        }
+        for(ImageSource source : ServiceLoader.load(ImageSource.class)) {
+            sourceMap.putIfAbsent(source.name(), source);
+        }
+        List<ImageSource> sourceList = new ArrayList<>(4);
+        for(String name : names.split("[,，]")) {
+            if(name.trim().isEmpty()) {
+                continue;
+            }
+            ImageSource source = sourceMap.get(name.trim());
+            if(source == null) {
+                throw new IllegalArgumentException("不存在的图片来源 " + name.trim() + ", 可以使用: " + sourceMap.keySet());
+            }
+            if(!sourceList.contains(source)) {
+                sourceList.add(source);
+            }
+        }
+        if(sourceList.isEmpty()) {
+            throw new IllegalArgumentException("没有配置图片来源, 可以使用: " + sourceMap.keySet());
+        }
+        return sourceList;
+    }
+}
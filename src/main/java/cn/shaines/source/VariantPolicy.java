@@ -0,0 +1,82 @@
+package cn.shaines.source;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 图片版本的选择策略, 返回下载时尝试的顺序(第一个失败时依次尝试下一个)
+ *
+ * source          来源给出的顺序
+ * smallest        最小的优先
+ * largest         最大的优先
+ * largest:1024    不超过1024像素中最大的优先, 然后是尺寸未知的, 最后是超过1024像素中最小的
+ * 在后面加上 !only 表示只下载第一个, 不尝试其他版本, 例如 smallest!only
+ *
+ * @description 图片版本选择策略
+ * @date created in 2026-10-18 07:27:18
+ * @author agent
+ */
+public class VariantPolicy {
+
+    public static final String MODE_SOURCE = "source";
+    public static final String MODE_SMALLEST = "smallest";
+    public static final String MODE_LARGEST = "largest";
+
+    private final String mode;
+    private final int maxSize;                      // largest 模式的像素上限, 0表示不限制
+    private final boolean only;                     // 是否只下载第一个
+
+    private VariantPolicy(String mode, int maxSize, boolean only) {
+        this.mode = mode;
+        this.maxSize = maxSize;
+        this.only = only;
+    }
+
+    /**
+     * 解析配置, 例如 largest:1024, smallest!only
+     */
+    public static VariantPolicy parse(String text) {
+        String value = text == null ? MODE_SOURCE : text.trim().toLowerCase();
+        boolean only = value.endsWith("!only");
+        value = only ? value.substring(0, value.length() - 5) : value;
+        String[] split = value.split(":", 2);
+        String mode = split[0].trim();
+        if(!MODE_SOURCE.equals(mode) && !MODE_SMALLEST.equals(mode) && !MODE_LARGEST.equals(mode)) {
+            throw new IllegalArgumentException("不支持的图片版本策略 " + text + ", 可以使用: source, smallest, largest, largest:1024");
+        }
+        int maxSize = split.length > 1 ? Integer.parseInt(split[1].trim()) : 0;
+        return new VariantPolicy(mode, maxSize, only);
+    }
+
+    /**
+     * 下载时尝试的顺序
+     */
+    public List<ImageCandidate.Variant> order(ImageCandidate candidate) {
+        List<ImageCandidate.Variant> variants = new ArrayList<>(candidate.getVariants());
+        if(MODE_SMALLEST.equals(this.mode)) {
+            // 尺寸未知的排在最后(稳定排序, 相同的保持来源顺序)
+            variants.sort(Comparator.comparingInt(v -> v.getSize() == 0 ? Integer.MAX_VALUE : v.getSize()));
+        } else if(MODE_LARGEST.equals(this.mode)) {
+            variants.sort(Comparator.comparingLong(this::largestRank));
+        }
+        return this.only && variants.size() > 1 ? variants.subList(0, 1) : variants;
+    }
+
+    /** largest 模式的排序值: 不超过上限的从大到小, 然后是未知的, 最后是超过上限的从小到大 */
+    private long largestRank(ImageCandidate.Variant variant) {
+        int size = variant.getSize();
+        if(size == 0) {
+            return 0;
+        }
+        if(this.maxSize == 0 || size <= this.maxSize) {
+            return -size;
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return this.mode + (this.maxSize > 0 ? ":" + this.maxSize : "") + (this.only ? "!only" : "");
+    }
+}
@@ -0,0 +1,305 @@
+package cn.shaines.util;
+
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 断点续传日志(只追加)
+ *
+ * 文件格式: 4字节魔数 + 若干条9字节的记录(1字节类型 + 8字节数据)
+ * 已完成的分页记录来源名称的哈希(高32位)和分页偏移量(低32位), 已处理的图片记录链接的64位哈希, 一百万条记录约9MB.
+ * 写入先进入内存缓冲区, 由后台线程按间隔批量写入并 fsync, 缓冲区满时立即写入,
+ * 崩溃时最多丢失最后一个间隔内的记录(这些图片会在续传时重新下载).
+ * 末尾不完整的记录(写入时崩溃)在重放时丢弃.
+ *
+ * 使用方式:
+ * CheckpointJournal journal = CheckpointJournal.open(Paths.get(resultPath, ".checkpoint"), 1000);
+ * int start = journal.resumeOffset("baidu-pc", 30);
+ * if(!journal.isHandled(url)) { ... journal.saved(url); }
+ * journal.pageDone("baidu-pc", pn);
+ * journal.close();
+ *
+ * @description 断点续传日志
+ * @date created in 2026-10-18 07:19:19
+ * @author agent
+ */
+public class CheckpointJournal implements AutoCloseable {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(CheckpointJournal.class);
+
+    private static final byte[] MAGIC = {'I', 'M', 'G', '1'};
+    private static final int RECORD_SIZE = 9;
+    private static final int BUFFER_RECORDS = 4096;                 // 缓冲区可以容纳的记录数量, 满了立即写入
+    private static final byte TYPE_PAGE = 'P';                      // 分页已完成
+    private static final byte TYPE_SAVED = 'S';                     // 图片已保存
+    private static final byte TYPE_SKIPPED = 'K';                   // 图片已处理但没有保存(内容重复, 文件已存在)
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * BUFFER_RECORDS);
+    private final LongSet pageSet;                                  // 已完成的分页
+    private final LongSet urlSet;                                   // 已处理的链接哈希
+    private final long savedCount;                                  // 重放得到的已保存数量
+    private final ScheduledExecutorService syncPool;
+    private final Thread shutdownHook;
+    private boolean closed = false;
+
+    private CheckpointJournal(Path path, long syncInterval) throws IOException {
+        this.path = path;
+        this.pageSet = new LongSet(64);
+        this.urlSet = new LongSet(1024);
+        boolean exists = Files.exists(path) && Files.size(path) >= MAGIC.length;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long start = System.currentTimeMillis();
+        this.savedCount = exists ? this.replay() : this.writeMagic();
+        logger.info("断点续传日志 {} 重放完成, 已完成分页:{}, 已处理图片:{}, 耗时:{}ms", path, this.pageSet.size(), this.urlSet.size(), System.currentTimeMillis() - start);
+        //
+        this.syncPool = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "checkpoint-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.syncPool.scheduleWithFixedDelay(this::syncQuietly, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        // 进程正常退出时写入剩余的记录
+        this.shutdownHook = new Thread(this::syncQuietly, "checkpoint-shutdown");
+        Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+    }
+
+    /**
+     * 打开日志, 不存在则创建, 存在则重放
+     * @param path 日志文件
+     * @param syncInterval 批量写入并 fsync 的间隔(毫秒)
+     */
+    public static CheckpointJournal open(Path path, long syncInterval) throws IOException {
+        return new CheckpointJournal(path, Math.max(10, syncInterval));
+    }
+
+    /**
+     * 可以继续的分页偏移量: 从0开始连续完成的分页之后的第一页
+     * @param source 来源名称
+     * @param step 分页步长
+     */
+    public int resumeOffset(String source, int step) {
+        int offset = 0;
+        synchronized(this) {
+            while(this.pageSet.contains(pageKey(source, offset))) {
+                offset += step;
+            }
+        }
+        return offset;
+    }
+
+    /** 重放得到的已保存图片数量 */
+    public long getSavedCount() {
+        return this.savedCount;
+    }
+
+    /** 链接是否已经处理过(保存或者跳过) */
+    public synchronized boolean isHandled(String url) {
+        return this.urlSet.contains(hash(url));
+    }
+
+    /** 记录分页已完成 */
+    public void pageDone(String source, int offset) {
+        this.append(TYPE_PAGE, pageKey(source, offset));
+    }
+
+    /** 记录图片已保存 */
+    public void saved(String url) {
+        this.append(TYPE_SAVED, hash(url));
+    }
+
+    /** 记录图片已处理但没有保存 */
+    public void skipped(String url) {
+        this.append(TYPE_SKIPPED, hash(url));
+    }
+
+    private synchronized void append(byte type, long value) {
+        if(this.closed) {
+            return;
+        }
+        (type == TYPE_PAGE ? this.pageSet : this.urlSet).add(value);
+        this.buffer.put(type).putLong(value);
+        if(!this.buffer.hasRemaining()) {
+            this.syncQuietly();
+        }
+    }
+
+    /**
+     * 把缓冲区的记录写入文件并 fsync
+     */
+    public synchronized void sync() throws IOException {
+        if(this.closed || this.buffer.position() == 0) {
+            return;
+        }
+        this.buffer.flip();
+        while(this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+        this.channel.force(false);
+    }
+
+    private void syncQuietly() {
+        try {
+            this.sync();
+        } catch(IOException e) {
+            logger.warn("写入断点续传日志失败 {}", this.path, e);
+        }
+    }
+
+    /** 读取整个文件, 解析所有记录 */
+    private long replay() throws IOException {
+        ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+        this.channel.read(magic, 0);
+        if(!new String(magic.array(), StandardCharsets.ISO_8859_1).equals(new String(MAGIC, StandardCharsets.ISO_8859_1))) {
+            throw new IOException(this.path + " 不是断点续传日志");
+        }
+        long saved = 0;
+        long position = MAGIC.length;                              // 已解析的位置
+        long readPosition = MAGIC.length;                          // 已读取的位置
+        ByteBuffer readBuffer = ByteBuffer.allocateDirect(RECORD_SIZE * 64 * 1024);
+        for(int read; (read = this.channel.read(readBuffer, readPosition)) > 0; ) {
+            readPosition += read;
+            readBuffer.flip();
+            int records = readBuffer.remaining() / RECORD_SIZE;
+            for(int i = 0; i < records; i++) {
+                byte type = readBuffer.get();
+                long value = readBuffer.getLong();
+                if(type == TYPE_PAGE) {
+                    this.pageSet.add(value);
+                } else {
+                    this.urlSet.add(value);
+                    saved += type == TYPE_SAVED ? 1 : 0;
+                }
+            }
+            position += (long) records * RECORD_SIZE;
+            // 不足一条的数据留到下一次读取
+            readBuffer.compact();
+        }
+        if(position < this.channel.size()) {
+            // 写入时崩溃留下的不完整记录
+            logger.warn("{} 末尾有不完整的记录, 已丢弃", this.path);
+            this.channel.truncate(position);
+        }
+        this.channel.position(position);
+        return saved;
+    }
+
+    private long writeMagic() throws IOException {
+        this.channel.truncate(0);
+        this.channel.write(ByteBuffer.wrap(MAGIC), 0);
+        this.channel.position(MAGIC.length);
+        this.channel.force(false);
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized(this) {
+            this.sync();
+            this.closed = true;
+            this.channel.close();
+        }
+        this.syncPool.shutdown();
+        try {
+            Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+        } catch(IllegalStateException e) {
+            // 正在关闭进程
+        }
+    }
+
+    private static long pageKey(String source, int offset) {
+        return ((long) source.hashCode() << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static long hash(String url) {
+        return Hashing.murmur3_128().hashString(url, StandardCharsets.UTF_8).asLong();
+    }
+
+    /**
+     * 基本类型 long 的哈希集合(开放寻址), 重放百万条记录时不产生装箱对象
+     */
+    private static class LongSet {
+        private static final long EMPTY = 0L;
+        private long[] table;
+        private int size;
+        private boolean hasZero;                                    // 0 作为空位标记, 单独记录
+
+        private LongSet(int expectedSize) {
+            int capacity = 16;
+            while(capacity < expectedSize * 2) {
+                capacity <<= 1;
+            }
+            this.table = new long[capacity];
+        }
+
+        private boolean add(long value) {
+            if(value == EMPTY) {
+                boolean added = !this.hasZero;
+                this.hasZero = true;
+                return added;
+            }
+            if((this.size + 1) * 2 > this.table.length) {
+                this.resize();
+            }
+            int mask = this.table.length - 1;
+            for(int i = mix(value) & mask; ; i = (i + 1) & mask) {
+                if(this.table[i] == EMPTY) {
+                    this.table[i] = value;
+                    this.size++;
+                    return true;
+                }
+                if(this.table[i] == value) {
+                    return false;
+                }
+            }
+        }
+
+        private boolean contains(long value) {
+            if(value == EMPTY) {
+                return this.hasZero;
+            }
+            int mask = this.table.length - 1;
+            for(int i = mix(value) & mask; ; i = (i + 1) & mask) {
+                if(this.table[i] == EMPTY) {
+                    return false;
+                }
+                if(this.table[i] == value) {
+                    return true;
+                }
+            }
+        }
+
+        private int size() {
+            return this.size + (this.hasZero ? 1 : 0);
+        }
+
+        private void resize() {
+            long[] old = this.table;
+            this.table = new long[old.length << 1];
+            this.size = 0;
+            for(long value : old) {
+                if(value != EMPTY) {
+                    this.add(value);
+                }
+            }
+        }
+
+        private static int mix(long value) {
+            long h = value * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+}
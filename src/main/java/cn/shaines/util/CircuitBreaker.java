@@ -0,0 +1,330 @@
+package cn.shaines.util;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按主机熔断
+ *
+ * 每一个主机一个熔断器, 有三个状态:
+ * CLOSED(关闭): 正常请求, 记录最近 windowSize 个请求的结果, 至少 minCalls 个请求并且失败率达到 failureRate 时打开;
+ * OPEN(打开): 该主机的请求直接失败(抛出 CircuitOpenException, 不连接, 不等待超时), openMillis 之后半开;
+ * HALF_OPEN(半开): 只放行 halfOpenCalls 个探测请求, 都成功时关闭, 任意一个失败时重新打开(探测请求 openMillis 之内没有结果时再放行一批).
+ * 失败: 连接异常/超时/响应不完整(异常链中有 IOException)或者响应状态码 5xx; 其他状态码(如 404)说明主机可用, 记为成功;
+ * 被中止的请求(对冲请求的另一个请求先完成), 重定向的中间请求和发送之前的异常不记录, 只释放许可(release, 半开时归还探测请求的名额).
+ * 状态变化打印日志并且计数(打开/半开/关闭的次数, 直接失败的请求数量), 通过 toString 输出当前不是关闭状态的主机.
+ *
+ * 使用方式:
+ * CircuitBreaker circuitBreaker = CircuitBreaker.builder().windowSize(20).minCalls(10).failureRate(0.5).openMillis(30000).build();
+ * session.setCircuitBreaker(circuitBreaker);
+ * logger.info("熔断 {}", circuitBreaker);
+ *
+ * @description 按主机熔断
+ * @date created in 2026-10-18 08:25:03
+ * @author agent
+ */
+public class CircuitBreaker {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /** 熔断器状态 */
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final int windowSize;                                   // 统计失败率的请求数量(最近的请求)
+    private final int minCalls;                                     // 至少多少个请求才计算失败率
+    private final double failureRate;                               // 失败率达到该值时打开
+    private final long openMillis;                                  // 打开之后多久半开(毫秒)
+    private final int halfOpenCalls;                                // 半开时放行的探测请求数量
+    private final Map<String, HostCircuit> circuitMap = new ConcurrentHashMap<>(64);   // 主机 => 熔断器
+    private final LongAdder opened = new LongAdder();               // 打开的次数
+    private final LongAdder halfOpened = new LongAdder();           // 半开的次数
+    private final LongAdder closed = new LongAdder();               // 探测成功之后关闭的次数
+    private final LongAdder rejected = new LongAdder();             // 直接失败的请求数量
+
+    private CircuitBreaker(Builder builder) {
+        this.windowSize = Math.max(1, builder.windowSize);
+        this.minCalls = Math.max(1, Math.min(this.windowSize, builder.minCalls));
+        this.failureRate = Math.min(1D, Math.max(0D, builder.failureRate));
+        this.openMillis = Math.max(0, builder.openMillis);
+        this.halfOpenCalls = Math.max(1, builder.halfOpenCalls);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 请求之前: 主机的熔断器打开(或者半开并且探测请求已满)时抛出 CircuitOpenException
+     * @param host 主机(HostRateLimiter.hostOf)
+     */
+    public void acquire(String host) throws CircuitOpenException {
+        HostCircuit circuit = this.circuitMap.computeIfAbsent(host, k -> new HostCircuit(this.windowSize));
+        long now = System.currentTimeMillis();
+        long waitMillis;
+        synchronized(circuit) {
+            if(circuit.state == State.CLOSED) {
+                return;
+            }
+            if(circuit.state == State.OPEN && now - circuit.changedAt >= this.openMillis) {
+                circuit.halfOpen(now);
+                this.halfOpened.increment();
+                logger.info("{} 熔断半开, 放行 {} 个探测请求", host, this.halfOpenCalls);
+            }
+            if(circuit.state == State.HALF_OPEN) {
+                if(circuit.probes >= this.halfOpenCalls && now - circuit.changedAt >= this.openMillis) {
+                    // 探测请求没有结果(比如被中止), 再放行一批
+                    circuit.halfOpen(now);
+                }
+                if(circuit.probes < this.halfOpenCalls) {
+                    circuit.probes++;
+                    return;
+                }
+            }
+            waitMillis = Math.max(0, circuit.changedAt + this.openMillis - now);
+        }
+        this.rejected.increment();
+        throw new CircuitOpenException(host, waitMillis);
+    }
+
+    /**
+     * 请求之后记录结果
+     * @param host 主机(HostRateLimiter.hostOf)
+     * @param success 是否成功(见 isFailure)
+     */
+    public void record(String host, boolean success) {
+        HostCircuit circuit = this.circuitMap.get(host);
+        if(circuit == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized(circuit) {
+            if(circuit.state == State.CLOSED) {
+                circuit.add(success);
+                if(circuit.calls >= this.minCalls && circuit.failures > 0 && circuit.failures >= this.failureRate * circuit.calls) {
+                    logger.warn("{} 熔断打开, 最近 {} 个请求失败 {} 个, {}ms 之后半开", host, circuit.calls, circuit.failures, this.openMillis);
+                    circuit.open(now);
+                    this.opened.increment();
+                }
+            } else if(circuit.state == State.HALF_OPEN) {
+                if(!success) {
+                    logger.warn("{} 探测请求失败, 熔断重新打开, {}ms 之后半开", host, this.openMillis);
+                    circuit.open(now);
+                    this.opened.increment();
+                } else if(++circuit.successes >= this.halfOpenCalls) {
+                    logger.info("{} 探测请求都成功, 熔断关闭", host);
+                    circuit.close(now);
+                    this.closed.increment();
+                }
+            }
+            // 打开时的结果来自打开之前发送的请求, 不记录
+        }
+    }
+
+    /**
+     * 获取许可之后没有结果时释放许可: 半开时归还探测请求的名额, 其他状态不需要处理
+     * @param host 主机(HostRateLimiter.hostOf)
+     */
+    public void release(String host) {
+        HostCircuit circuit = this.circuitMap.get(host);
+        if(circuit == null) {
+            return;
+        }
+        synchronized(circuit) {
+            if(circuit.state == State.HALF_OPEN && circuit.probes > 0) {
+                circuit.probes--;
+            }
+        }
+    }
+
+    /** 响应状态码是否算作主机失败(5xx) */
+    public static boolean isFailure(int code) {
+        return code >= 500;
+    }
+
+    /** 异常是否算作主机失败(异常链中有 IOException, 不包括直接失败和被中止) */
+    public static boolean isFailure(Throwable error) {
+        for(Throwable cause = error; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if(cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 网址的主机(与 HostRateLimiter 相同), 无法解析时返回null */
+    static String hostOf(String site) {
+        try {
+            return HostRateLimiter.hostOf(new URL(site));
+        } catch(MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /** 获取 主机的熔断器状态 */
+    public State getState(String host) {
+        HostCircuit circuit = this.circuitMap.get(host);
+        if(circuit == null) {
+            return State.CLOSED;
+        }
+        synchronized(circuit) {
+            return circuit.state;
+        }
+    }
+
+    /** 获取 不是关闭状态的主机 */
+    public Map<String, State> getStates() {
+        Map<String, State> stateMap = new TreeMap<>();
+        this.circuitMap.forEach((host, circuit) -> {
+            synchronized(circuit) {
+                if(circuit.state != State.CLOSED) {
+                    stateMap.put(host, circuit.state);
+                }
+            }
+        });
+        return stateMap;
+    }
+
+    /** 获取 统计 [打开的次数, 半开的次数, 关闭的次数, 直接失败的请求数量] */
+    public long[] getStats() {
+        return new long[] {this.opened.sum(), this.halfOpened.sum(), this.closed.sum(), this.rejected.sum()};
+    }
+
+    @Override
+    public String toString() {
+        List<String> open = new ArrayList<>();
+        List<String> halfOpen = new ArrayList<>();
+        this.getStates().forEach((host, state) -> (state == State.OPEN ? open : halfOpen).add(host));
+        return String.format("CircuitBreaker{hosts=%d, open=%s, halfOpen=%s, opened=%d, halfOpened=%d, closed=%d, rejected=%d}",
+                this.circuitMap.size(), open, halfOpen, this.opened.sum(), this.halfOpened.sum(), this.closed.sum(), this.rejected.sum());
+    }
+
+    /**
+     * 一个主机的熔断器(通过 synchronized 访问)
+     */
+    private static final class HostCircuit {
+        private final boolean[] outcomes;                               // 最近的请求是否失败(环形数组)
+        private int index;                                              // 下一个结果的位置
+        private int calls;                                              // 窗口中的请求数量
+        private int failures;                                           // 窗口中的失败数量
+        private State state = State.CLOSED;
+        private long changedAt;                                         // 进入当前状态的时间
+        private int probes;                                             // 半开时已经放行的探测请求数量
+        private int successes;                                          // 半开时成功的探测请求数量
+
+        private HostCircuit(int windowSize) {
+            this.outcomes = new boolean[windowSize];
+        }
+
+        private void add(boolean success) {
+            if(this.calls == this.outcomes.length) {
+                // 窗口已满, 移除最早的结果
+                if(this.outcomes[this.index]) {
+                    this.failures--;
+                }
+            } else {
+                this.calls++;
+            }
+            this.outcomes[this.index] = !success;
+            if(!success) {
+                this.failures++;
+            }
+            this.index = (this.index + 1) % this.outcomes.length;
+        }
+
+        private void open(long now) {
+            this.state = State.OPEN;
+            this.changedAt = now;
+        }
+
+        private void halfOpen(long now) {
+            this.state = State.HALF_OPEN;
+            this.changedAt = now;
+            this.probes = 0;
+            this.successes = 0;
+        }
+
+        private void close(long now) {
+            this.state = State.CLOSED;
+            this.changedAt = now;
+            this.index = 0;
+            this.calls = 0;
+            this.failures = 0;
+        }
+    }
+
+    /**
+     * 熔断器打开时请求直接失败(不连接)
+     * 不记录堆栈(主机不可用时大量请求直接失败, 堆栈没有意义)
+     */
+    public static class CircuitOpenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final String host;
+        private final long waitMillis;
+
+        public CircuitOpenException(String host, long waitMillis) {
+            super(host + " 熔断中, " + waitMillis + "ms 之后半开", null, false, false);
+            this.host = host;
+            this.waitMillis = waitMillis;
+        }
+
+        /** 获取 熔断的主机 */
+        public String getHost() {
+            return host;
+        }
+
+        /** 获取 距离半开的时间(毫秒), 半开时为0 */
+        public long getWaitMillis() {
+            return waitMillis;
+        }
+    }
+
+    public static class Builder {
+        private int windowSize = 20;
+        private int minCalls = 10;
+        private double failureRate = 0.5;
+        private long openMillis = 30000;
+        private int halfOpenCalls = 3;
+
+        /** 统计失败率的请求数量(每一个主机最近的请求) */
+        public Builder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /** 窗口中至少多少个请求才计算失败率 */
+        public Builder minCalls(int minCalls) {
+            this.minCalls = minCalls;
+            return this;
+        }
+
+        /** 失败率达到该值时打开(0.5 即 50%) */
+        public Builder failureRate(double failureRate) {
+            this.failureRate = failureRate;
+            return this;
+        }
+
+        /** 打开之后多久半开(毫秒) */
+        public Builder openMillis(long openMillis) {
+            this.openMillis = openMillis;
+            return this;
+        }
+
+        /** 半开时放行的探测请求数量, 都成功时关闭 */
+        public Builder halfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+
+}
@@ -0,0 +1,288 @@
+package cn.shaines.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * 响应体解码(Content-Encoding)
+ *
+ * 按照响应头的 Content-Encoding 选择解码器, 默认支持 gzip / deflate / identity, 可以注册其他的解码器.
+ * gzip 和 deflate 使用池中的 Inflater(关闭解码后的输入流时归还), 不需要每一个响应创建新的 Inflater(占用本地内存, 依赖 finalize 回收).
+ * 请求头 Accept-Encoding 按照已注册的解码器生成.
+ *
+ * 使用方式:
+ * InputStream inputStream = ContentDecoder.decode(response.getHeaderField("Content-Encoding"), http.getInputStream());
+ * ContentDecoder.register("br", in -> new BrotliInputStream(in));
+ *
+ * @description 响应体解码
+ * @date created in 2026-10-18 07:51:59
+ * @author agent
+ */
+public final class ContentDecoder {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(ContentDecoder.class);
+
+    public static final String IDENTITY = "identity";
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    /** 解码器 */
+    public interface Decoder {
+        /** 包装输入流, 返回解码之后的输入流(关闭时需要关闭原来的输入流) */
+        InputStream decode(InputStream inputStream) throws IOException;
+    }
+
+    private static final int POOL_SIZE = 64;                                         // 每一种 Inflater 最多缓存的数量
+    private static final InflaterPool RAW_POOL = new InflaterPool(true);            // 没有 zlib 头的 Inflater(gzip, 原始 deflate)
+    private static final InflaterPool ZLIB_POOL = new InflaterPool(false);          // 有 zlib 头的 Inflater(deflate)
+    private static volatile Map<String, Decoder> decoderMap;                        // 编码 => 解码器(写时复制)
+    private static volatile String acceptEncoding;                                  // 请求头 Accept-Encoding
+
+    static {
+        Map<String, Decoder> map = new LinkedHashMap<>(8);
+        map.put(GZIP, ContentDecoder::gzip);
+        map.put(DEFLATE, ContentDecoder::deflate);
+        map.put(IDENTITY, inputStream -> inputStream);
+        decoderMap = map;
+        acceptEncoding = buildAcceptEncoding(map);
+    }
+
+    private ContentDecoder() {}
+
+    /**
+     * 注册解码器, 之后的请求在 Accept-Encoding 中声明该编码
+     * @param encoding 编码名称(忽略大小写)
+     */
+    public static synchronized void register(String encoding, Decoder decoder) {
+        Map<String, Decoder> map = new LinkedHashMap<>(decoderMap);
+        map.put(encoding.toLowerCase(Locale.ROOT), decoder);
+        decoderMap = map;
+        acceptEncoding = buildAcceptEncoding(map);
+    }
+
+    /** 获取 编码对应的解码器, 不支持时返回null */
+    public static Decoder get(String encoding) {
+        return encoding == null ? null : decoderMap.get(encoding.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /** 是否不需要解码 */
+    public static boolean isIdentity(String encoding) {
+        return encoding == null || encoding.trim().isEmpty() || IDENTITY.equalsIgnoreCase(encoding.trim());
+    }
+
+    /**
+     * 按照 Content-Encoding 解码, 多个编码(逗号分隔)时按照相反的顺序解码, 不支持的编码原样返回
+     */
+    public static InputStream decode(String contentEncoding, InputStream inputStream) throws IOException {
+        if(isIdentity(contentEncoding)) {
+            return inputStream;
+        }
+        // 没有响应体时(比如 304)不需要解码
+        PushbackInputStream pushback = new PushbackInputStream(inputStream, 1);
+        int first = pushback.read();
+        if(first < 0) {
+            return pushback;
+        }
+        pushback.unread(first);
+        inputStream = pushback;
+        String[] encodings = contentEncoding.split(",");
+        for(int i = encodings.length - 1; i >= 0; i--) {
+            Decoder decoder = get(encodings[i]);
+            if(decoder == null) {
+                logger.warn("unsupported content encoding {}, return raw body", encodings[i].trim());
+                return inputStream;
+            }
+            inputStream = decoder.decode(inputStream);
+        }
+        return inputStream;
+    }
+
+    /** 获取 请求头 Accept-Encoding(已注册的解码器) */
+    public static String acceptEncoding() {
+        return acceptEncoding;
+    }
+
+    private static String buildAcceptEncoding(Map<String, Decoder> map) {
+        StringJoiner joiner = new StringJoiner(", ");
+        map.keySet().stream().filter(encoding -> !IDENTITY.equals(encoding)).forEach(joiner::add);
+        return joiner.toString();
+    }
+
+    /** 解码 gzip: 解析头部, 使用池中的 Inflater 解压, 结束时校验 CRC32 和长度 */
+    private static InputStream gzip(InputStream inputStream) throws IOException {
+        readGzipHeader(inputStream);
+        return new GzipInputStream(inputStream, RAW_POOL.acquire());
+    }
+
+    /** 解码 deflate: 规范是 zlib 格式, 部分服务器返回原始 deflate, 按照前两个字节判断 */
+    private static InputStream deflate(InputStream inputStream) throws IOException {
+        PushbackInputStream pushback = new PushbackInputStream(inputStream, 2);
+        byte[] head = new byte[2];
+        int length = 0;
+        for(int n; length < 2 && (n = pushback.read(head, length, 2 - length)) > -1; ) {
+            length += n;
+        }
+        pushback.unread(head, 0, length);
+        boolean zlib = length == 2 && (head[0] & 0x0F) == 8 && (((head[0] & 0xFF) << 8) | (head[1] & 0xFF)) % 31 == 0;
+        InflaterPool pool = zlib ? ZLIB_POOL : RAW_POOL;
+        return new PooledInflaterInputStream(pushback, pool.acquire(), pool);
+    }
+
+    /** 读取 gzip 头部(RFC 1952) */
+    private static void readGzipHeader(InputStream inputStream) throws IOException {
+        if(readUnsignedShort(inputStream) != 0x8b1f) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if(readUnsignedByte(inputStream) != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = readUnsignedByte(inputStream);
+        // 修改时间(4), 额外标志(1), 操作系统(1)
+        skipBytes(inputStream, 6);
+        if((flags & 4) == 4) {
+            // FEXTRA
+            skipBytes(inputStream, readUnsignedShort(inputStream));
+        }
+        if((flags & 8) == 8) {
+            // FNAME
+            while(readUnsignedByte(inputStream) != 0) {
+                // 跳过文件名
+            }
+        }
+        if((flags & 16) == 16) {
+            // FCOMMENT
+            while(readUnsignedByte(inputStream) != 0) {
+                // 跳过注释
+            }
+        }
+        if((flags & 2) == 2) {
+            // FHCRC
+            skipBytes(inputStream, 2);
+        }
+    }
+
+    private static int readUnsignedByte(InputStream inputStream) throws IOException {
+        int b = inputStream.read();
+        if(b < 0) {
+            throw new EOFException("Unexpected end of GZIP input stream");
+        }
+        return b;
+    }
+
+    private static int readUnsignedShort(InputStream inputStream) throws IOException {
+        return readUnsignedByte(inputStream) | (readUnsignedByte(inputStream) << 8);
+    }
+
+    private static long readUnsignedInt(InputStream inputStream) throws IOException {
+        return (readUnsignedShort(inputStream) & 0xFFFFL) | ((long) readUnsignedShort(inputStream) << 16);
+    }
+
+    private static void skipBytes(InputStream inputStream, int n) throws IOException {
+        for(int i = 0; i < n; i++) {
+            readUnsignedByte(inputStream);
+        }
+    }
+
+    /** Inflater 池 */
+    private static class InflaterPool {
+        private final boolean nowrap;
+        private final ConcurrentLinkedQueue<Inflater> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private InflaterPool(boolean nowrap) {
+            this.nowrap = nowrap;
+        }
+
+        private Inflater acquire() {
+            Inflater inflater = this.queue.poll();
+            if(inflater == null) {
+                return new Inflater(this.nowrap);
+            }
+            this.size.decrementAndGet();
+            return inflater;
+        }
+
+        /** 归还, 池已满时释放本地内存 */
+        private void release(Inflater inflater) {
+            if(this.size.incrementAndGet() <= POOL_SIZE) {
+                inflater.reset();
+                this.queue.offer(inflater);
+            } else {
+                this.size.decrementAndGet();
+                inflater.end();
+            }
+        }
+    }
+
+    /** 使用池中 Inflater 的输入流, 关闭时归还 Inflater */
+    private static class PooledInflaterInputStream extends InflaterInputStream {
+        private final InflaterPool pool;
+        private boolean released = false;
+
+        private PooledInflaterInputStream(InputStream inputStream, Inflater inflater, InflaterPool pool) {
+            super(inputStream, inflater, 1024 * 8);
+            this.pool = pool;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if(!this.released) {
+                    this.released = true;
+                    this.pool.release(this.inf);
+                }
+            }
+        }
+    }
+
+    /** gzip 输入流: 解压的同时计算 CRC32, 结束时校验尾部(只支持一个成员, HTTP 响应不会拼接多个成员) */
+    private static class GzipInputStream extends PooledInflaterInputStream {
+        private final CRC32 crc = new CRC32();
+        private boolean eos = false;
+
+        private GzipInputStream(InputStream inputStream, Inflater inflater) {
+            super(inputStream, inflater, RAW_POOL);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(this.eos) {
+                return -1;
+            }
+            int n = super.read(b, off, len);
+            if(n == -1) {
+                this.eos = true;
+                this.readTrailer();
+            } else {
+                this.crc.update(b, off, n);
+            }
+            return n;
+        }
+
+        /** 校验尾部: CRC32(4) 和 原始长度(4), 尾部可能一部分已经读取到缓冲区中 */
+        private void readTrailer() throws IOException {
+            int remaining = this.inf.getRemaining();
+            InputStream trailer = remaining > 0 ? new SequenceInputStream(new ByteArrayInputStream(this.buf, this.len - remaining, remaining), this.in) : this.in;
+            if(readUnsignedInt(trailer) != this.crc.getValue() || readUnsignedInt(trailer) != (this.inf.getBytesWritten() & 0xFFFFFFFFL)) {
+                throw new ZipException("Corrupt GZIP trailer");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,470 @@
+package cn.shaines.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * cookie 存储
+ *
+ * 按照域名保存 cookie(同一个域名内按照 名称 + 路径 覆盖), 支持 Domain / Path / Max-Age / Expires / Secure / HttpOnly,
+ * 过期的 cookie 在使用时丢弃. 每一个主机缓存匹配的 cookie 和序列化之后的请求头 Cookie, 存储修改之后(版本变化)或者有 cookie 过期时重新生成,
+ * 没有修改时获取请求头不需要拆分和拼接字符串.
+ * 可以保存到文件(Netscape cookies.txt 格式, 只保存有过期时间的 cookie), 重新运行时加载, 不需要再次请求获取 cookie 的页面.
+ * 不检查公共后缀(Domain=com.cn 这样的 cookie 也会接受).
+ *
+ * 使用方式:
+ * CookieJar cookieJar = new CookieJar();
+ * cookieJar.load(Paths.get("conf/cookies.txt"));
+ * session.setCookieJar(cookieJar);
+ * cookieJar.save(Paths.get("conf/cookies.txt"));
+ *
+ * @description cookie 存储
+ * @date created in 2026-10-18 08:09:51
+ * @author agent
+ */
+public class CookieJar {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(CookieJar.class);
+
+    private static final String FILE_HEADER = "# Netscape HTTP Cookie File";
+    private static final String HTTP_ONLY_PREFIX = "#HttpOnly_";
+    private static final Pattern TIME_PATTERN = Pattern.compile("(\\d{1,2}):(\\d{1,2}):(\\d{1,2})");
+    private static final Pattern DIGITS_PATTERN = Pattern.compile("\\d+");
+    private static final String MONTHS = "jan feb mar apr may jun jul aug sep oct nov dec";
+    /** 请求头中的顺序: 路径长的在前面, 路径相同时先创建的在前面 */
+    private static final Comparator<Cookie> HEADER_ORDER = Comparator.comparingInt((Cookie cookie) -> -cookie.path.length()).thenComparingLong(cookie -> cookie.sequence);
+
+    private final Map<String, Map<String, Cookie>> domainMap = new ConcurrentHashMap<>(16);    // 域名 => (名称;路径 => cookie)
+    private final Map<String, HostCookies> hostMap = new ConcurrentHashMap<>(16);             // 协议://主机 => 匹配的 cookie(缓存)
+    private final AtomicLong version = new AtomicLong();                                        // 修改版本, 和缓存的版本不同时重新生成缓存
+    private final AtomicLong sequence = new AtomicLong();                                       // 创建顺序
+
+    /**
+     * 保存响应头 Set-Cookie, Max-Age <= 0 或者 Expires 已经过去时删除同名的 cookie
+     * @param site 响应的网址
+     * @param setCookies 响应头 Set-Cookie(可以为null)
+     */
+    public void saveFromResponse(String site, List<String> setCookies) {
+        if(setCookies == null || setCookies.isEmpty()) {
+            return;
+        }
+        URL url = parseUrl(site);
+        if(url == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for(String setCookie : setCookies) {
+            Cookie cookie = this.parse(url, setCookie, now);
+            if(cookie == null) {
+                continue;
+            }
+            Map<String, Cookie> cookieMap = this.domainMap.computeIfAbsent(cookie.domain, k -> new ConcurrentHashMap<>(8));
+            if(cookie.expiresAt <= now) {
+                cookieMap.remove(cookie.key());
+            } else {
+                Cookie previous = cookieMap.get(cookie.key());
+                if(previous != null) {
+                    // 覆盖时保持原来的顺序
+                    cookie.sequence = previous.sequence;
+                }
+                cookieMap.put(cookie.key(), cookie);
+            }
+            this.version.incrementAndGet();
+        }
+    }
+
+    /**
+     * 获取 请求头 Cookie, 没有匹配的 cookie 时返回null
+     * @param site 请求的网址
+     */
+    public String cookieHeader(String site) {
+        URL url = parseUrl(site);
+        if(url == null) {
+            return null;
+        }
+        boolean secure = "https".equalsIgnoreCase(url.getProtocol());
+        String host = url.getHost().toLowerCase(Locale.ROOT);
+        long version = this.version.get();
+        long now = System.currentTimeMillis();
+        String cacheKey = (secure ? "https://" : "http://") + host;
+        HostCookies hostCookies = this.hostMap.get(cacheKey);
+        if(hostCookies == null || hostCookies.version != version || now >= hostCookies.expiresAt) {
+            hostCookies = this.collect(host, secure, version, now);
+            this.hostMap.put(cacheKey, hostCookies);
+        }
+        if(hostCookies.header != null || hostCookies.cookies.isEmpty()) {
+            // 所有 cookie 的路径都是 "/"(大部分情况), 直接使用缓存的请求头
+            return hostCookies.header;
+        }
+        String path = url.getPath().isEmpty() ? "/" : url.getPath();
+        StringBuilder builder = new StringBuilder(128);
+        for(Cookie cookie : hostCookies.cookies) {
+            if(pathMatches(path, cookie.path)) {
+                builder.append(builder.length() > 0 ? "; " : "").append(cookie.name).append('=').append(cookie.value);
+            }
+        }
+        return builder.length() > 0 ? builder.toString() : null;
+    }
+
+    /** 是否有发送到该网址的 cookie */
+    public boolean hasCookies(String site) {
+        return this.cookieHeader(site) != null;
+    }
+
+    /** 查找主机匹配的 cookie(依次查找 a.b.com, b.com, com), 删除过期的 cookie */
+    private HostCookies collect(String host, boolean secure, long version, long now) {
+        List<Cookie> cookies = new ArrayList<>(16);
+        long expiresAt = Long.MAX_VALUE;
+        boolean rootPathOnly = true;
+        for(String domain = host; domain != null; domain = parentDomain(domain)) {
+            Map<String, Cookie> cookieMap = this.domainMap.get(domain);
+            if(cookieMap == null) {
+                continue;
+            }
+            for(Cookie cookie : cookieMap.values()) {
+                if(cookie.expiresAt <= now) {
+                    cookieMap.remove(cookie.key(), cookie);
+                } else if((!cookie.hostOnly || domain.equals(host)) && (secure || !cookie.secure)) {
+                    cookies.add(cookie);
+                    expiresAt = Math.min(expiresAt, cookie.expiresAt);
+                    rootPathOnly &= "/".equals(cookie.path);
+                }
+            }
+        }
+        cookies.sort(HEADER_ORDER);
+        String header = null;
+        if(rootPathOnly && !cookies.isEmpty()) {
+            StringBuilder builder = new StringBuilder(cookies.size() * 32);
+            for(Cookie cookie : cookies) {
+                builder.append(builder.length() > 0 ? "; " : "").append(cookie.name).append('=').append(cookie.value);
+            }
+            header = builder.toString();
+        }
+        return new HostCookies(version, cookies, header, expiresAt);
+    }
+
+    /** 上一级域名, 没有时返回null(IP 地址不查找上一级) */
+    private static String parentDomain(String domain) {
+        int index = domain.indexOf('.');
+        if(index < 0 || Character.isDigit(domain.charAt(domain.length() - 1)) || domain.indexOf(':') >= 0) {
+            return null;
+        }
+        return domain.substring(index + 1);
+    }
+
+    /** 路径是否匹配(RFC 6265 5.1.4) */
+    private static boolean pathMatches(String requestPath, String cookiePath) {
+        if(!requestPath.startsWith(cookiePath)) {
+            return false;
+        }
+        return requestPath.length() == cookiePath.length() || cookiePath.endsWith("/") || requestPath.charAt(cookiePath.length()) == '/';
+    }
+
+    /** 解析一个 Set-Cookie, 不合法(没有名称, 域名不匹配)时返回null */
+    private Cookie parse(URL url, String setCookie, long now) {
+        if(setCookie == null) {
+            return null;
+        }
+        String[] parts = setCookie.split(";");
+        int index = parts[0].indexOf('=');
+        if(index <= 0) {
+            return null;
+        }
+        String host = url.getHost().toLowerCase(Locale.ROOT);
+        Cookie cookie = new Cookie();
+        cookie.name = parts[0].substring(0, index).trim();
+        cookie.value = parts[0].substring(index + 1).trim();
+        cookie.domain = host;
+        cookie.hostOnly = true;
+        cookie.path = defaultPath(url.getPath());
+        cookie.expiresAt = Long.MAX_VALUE;
+        cookie.sequence = this.sequence.incrementAndGet();
+        if(cookie.name.isEmpty()) {
+            return null;
+        }
+        boolean hasMaxAge = false;
+        for(int i = 1; i < parts.length; i++) {
+            String part = parts[i].trim();
+            int equal = part.indexOf('=');
+            String name = (equal < 0 ? part : part.substring(0, equal)).trim().toLowerCase(Locale.ROOT);
+            String value = equal < 0 ? "" : part.substring(equal + 1).trim();
+            switch(name) {
+                case "domain":
+                    String domain = value.startsWith(".") ? value.substring(1) : value;
+                    domain = domain.toLowerCase(Locale.ROOT);
+                    if(domain.isEmpty()) {
+                        break;
+                    }
+                    if(!host.equals(domain) && !host.endsWith("." + domain)) {
+                        logger.debug("{} reject cookie {} for domain {}", host, cookie.name, domain);
+                        return null;
+                    }
+                    cookie.domain = domain;
+                    cookie.hostOnly = false;
+                    break;
+                case "path":
+                    if(value.startsWith("/")) {
+                        cookie.path = value;
+                    }
+                    break;
+                case "max-age":
+                    try {
+                        long seconds = Long.parseLong(value);
+                        cookie.expiresAt = seconds <= 0 ? Long.MIN_VALUE : now + Math.min(seconds, Long.MAX_VALUE / 2000) * 1000;
+                        hasMaxAge = true;
+                    } catch(NumberFormatException e) {
+                        // 忽略不合法的 Max-Age
+                    }
+                    break;
+                case "expires":
+                    if(!hasMaxAge) {
+                        long expiresAt = parseExpires(value);
+                        if(expiresAt != -1) {
+                            cookie.expiresAt = expiresAt;
+                        }
+                    }
+                    break;
+                case "secure":
+                    cookie.secure = true;
+                    break;
+                case "httponly":
+                    cookie.httpOnly = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        return cookie;
+    }
+
+    /** 默认路径: 请求路径最后一个 "/" 之前的部分(RFC 6265 5.1.4) */
+    private static String defaultPath(String path) {
+        int index = path.lastIndexOf('/');
+        return !path.startsWith("/") || index == 0 ? "/" : path.substring(0, index);
+    }
+
+    /**
+     * 解析 Expires(RFC 6265 5.1.1), 兼容 "Wed, 21 Oct 2015 07:28:00 GMT" 和 "Thu, 31-Dec-37 23:55:55 GMT", 不合法时返回-1
+     */
+    static long parseExpires(String value) {
+        int hour = -1, minute = -1, second = -1, day = -1, month = -1, year = -1;
+        for(String token : value.split("[\\s,\\-]+")) {
+            Matcher matcher;
+            if(hour < 0 && (matcher = TIME_PATTERN.matcher(token)).matches()) {
+                hour = Integer.parseInt(matcher.group(1));
+                minute = Integer.parseInt(matcher.group(2));
+                second = Integer.parseInt(matcher.group(3));
+            } else if(day < 0 && token.length() <= 2 && DIGITS_PATTERN.matcher(token).matches()) {
+                day = Integer.parseInt(token);
+            } else if(month < 0 && token.length() >= 3 && MONTHS.contains(token.substring(0, 3).toLowerCase(Locale.ROOT))) {
+                month = MONTHS.indexOf(token.substring(0, 3).toLowerCase(Locale.ROOT)) / 4 + 1;
+            } else if(year < 0 && token.length() >= 2 && token.length() <= 4 && DIGITS_PATTERN.matcher(token).matches()) {
+                year = Integer.parseInt(token);
+                year += year < 70 ? 2000 : (year < 100 ? 1900 : 0);
+            }
+        }
+        if(hour < 0 || day < 0 || month < 0 || year < 1601) {
+            return -1;
+        }
+        try {
+            return LocalDateTime.of(year, month, day, hour, minute, second).toEpochSecond(ZoneOffset.UTC) * 1000;
+        } catch(DateTimeException e) {
+            return -1;
+        }
+    }
+
+    private static URL parseUrl(String site) {
+        try {
+            return site == null ? null : new URL(site);
+        } catch(MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 保存到文件(Netscape cookies.txt 格式), 只保存有过期时间并且没有过期的 cookie, 先写入临时文件再替换
+     */
+    public void save(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if(parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".part");
+        // 按照创建顺序保存, 加载之后请求头中的顺序不变
+        List<Cookie> cookies = this.getCookies();
+        cookies.removeIf(cookie -> cookie.expiresAt == Long.MAX_VALUE);
+        cookies.sort(Comparator.comparingLong(cookie -> cookie.sequence));
+        try(BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(FILE_HEADER);
+            writer.newLine();
+            for(Cookie cookie : cookies) {
+                writer.write((cookie.httpOnly ? HTTP_ONLY_PREFIX : "") + (cookie.hostOnly ? "" : ".") + cookie.domain + '\t'
+                        + (cookie.hostOnly ? "FALSE" : "TRUE") + '\t' + cookie.path + '\t' + (cookie.secure ? "TRUE" : "FALSE") + '\t'
+                        + cookie.expiresAt / 1000 + '\t' + cookie.name + '\t' + cookie.value);
+                writer.newLine();
+            }
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        logger.debug("{} 保存cookie {} 个", path, cookies.size());
+    }
+
+    /**
+     * 从文件加载(Netscape cookies.txt 格式), 跳过已经过期的 cookie, 文件不存在时返回0
+     * @return 加载的数量
+     */
+    public int load(Path path) throws IOException {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        try(BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            for(String line; (line = reader.readLine()) != null; ) {
+                boolean httpOnly = line.startsWith(HTTP_ONLY_PREFIX);
+                if(httpOnly) {
+                    line = line.substring(HTTP_ONLY_PREFIX.length());
+                }
+                String[] fields = line.split("\t", -1);
+                if(line.startsWith("#") || fields.length != 7) {
+                    continue;
+                }
+                Cookie cookie = new Cookie();
+                cookie.hostOnly = !"TRUE".equalsIgnoreCase(fields[1]);
+                cookie.domain = (fields[0].startsWith(".") ? fields[0].substring(1) : fields[0]).toLowerCase(Locale.ROOT);
+                cookie.path = fields[2];
+                cookie.secure = "TRUE".equalsIgnoreCase(fields[3]);
+                cookie.httpOnly = httpOnly;
+                cookie.name = fields[5];
+                cookie.value = fields[6];
+                cookie.sequence = this.sequence.incrementAndGet();
+                try {
+                    cookie.expiresAt = Long.parseLong(fields[4]) * 1000;
+                } catch(NumberFormatException e) {
+                    continue;
+                }
+                if(cookie.expiresAt > now && !cookie.domain.isEmpty() && !cookie.name.isEmpty()) {
+                    this.domainMap.computeIfAbsent(cookie.domain, k -> new ConcurrentHashMap<>(8)).put(cookie.key(), cookie);
+                    count++;
+                }
+            }
+        } catch(NoSuchFileException e) {
+            return 0;
+        }
+        this.version.incrementAndGet();
+        logger.debug("{} 加载cookie {} 个", path, count);
+        return count;
+    }
+
+    /** 获取 所有没有过期的 cookie */
+    public List<Cookie> getCookies() {
+        long now = System.currentTimeMillis();
+        List<Cookie> cookies = new ArrayList<>(32);
+        this.domainMap.values().forEach(cookieMap -> cookieMap.values().stream().filter(cookie -> cookie.expiresAt > now).forEach(cookies::add));
+        return cookies;
+    }
+
+    /** 清空 */
+    public void clear() {
+        this.domainMap.clear();
+        this.hostMap.clear();
+        this.version.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "CookieJar{domains=" + this.domainMap.size() + ", cookies=" + this.getCookies().size() + '}';
+    }
+
+    /** cookie, 保存之后不再修改 */
+    public static class Cookie {
+        private String name;
+        private String value;
+        private String domain;                      // 域名(没有开头的".")
+        private boolean hostOnly;                   // 是否只发送到 domain 本身(Set-Cookie 没有 Domain 属性)
+        private String path;
+        private long expiresAt;                     // 过期时间(毫秒), Long.MAX_VALUE 表示会话 cookie
+        private boolean secure;
+        private boolean httpOnly;
+        private long sequence;                      // 创建顺序
+
+        private String key() {
+            return this.name + ';' + this.path;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getValue() {
+            return this.value;
+        }
+
+        public String getDomain() {
+            return this.domain;
+        }
+
+        public boolean isHostOnly() {
+            return this.hostOnly;
+        }
+
+        public String getPath() {
+            return this.path;
+        }
+
+        /** 获取 过期时间(毫秒), Long.MAX_VALUE 表示会话 cookie */
+        public long getExpiresAt() {
+            return this.expiresAt;
+        }
+
+        public boolean isSecure() {
+            return this.secure;
+        }
+
+        public boolean isHttpOnly() {
+            return this.httpOnly;
+        }
+
+        @Override
+        public String toString() {
+            return this.name + '=' + this.value + "; domain=" + this.domain + "; path=" + this.path;
+        }
+    }
+
+    /** 一个主机匹配的 cookie(缓存) */
+    private static class HostCookies {
+        private final long version;                 // 生成时存储的版本
+        private final List<Cookie> cookies;         // 匹配的 cookie(按照请求头中的顺序)
+        private final String header;                // 序列化之后的请求头, 有路径不是 "/" 的 cookie 时为null(需要按照请求路径过滤)
+        private final long expiresAt;               // 最早过期的时间, 之后需要重新生成
+
+        private HostCookies(long version, List<Cookie> cookies, String header, long expiresAt) {
+            this.version = version;
+            this.cookies = cookies;
+            this.header = header;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
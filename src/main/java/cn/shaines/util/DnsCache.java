@@ -0,0 +1,265 @@
+package cn.shaines.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内 DNS 缓存, 过期时后台刷新常用的主机
+ *
+ * HttpURLConnection / HttpClient 连接时使用 JVM 的 InetAddress 缓存, Java 8 不能替换解析器,
+ * 因此这里把 JVM 缓存的有效期(networkaddress.cache.ttl / networkaddress.cache.negative.ttl)设置为相同的值,
+ * 请求之前先通过该缓存解析主机: 没有缓存时同一个主机只解析一次(其他请求等待结果), 解析失败的主机在 negativeTtl 内直接失败.
+ * 一个周期内使用次数达到 refreshHits 的主机在过期时由后台线程重新解析(同时刷新 JVM 缓存), 请求线程不需要等待解析.
+ * 需要在第一次解析主机之前创建(JVM 只在第一次解析时读取缓存有效期).
+ * 注意: 构造方法修改的是 JVM 全局的 Security 属性, 影响进程内所有的解析(包括没有使用该缓存的请求和其他库), 创建时打印日志.
+ *
+ * 使用方式:
+ * DnsCache dnsCache = DnsCache.builder().ttl(300).negativeTtl(10).refreshHits(10).build();
+ * session.setDnsCache(dnsCache);
+ * logger.info("DNS {}", dnsCache);
+ *
+ * @description 进程内 DNS 缓存
+ * @date created in 2026-10-18 07:54:47
+ * @author agent
+ */
+public class DnsCache {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(DnsCache.class);
+
+    private final long ttlMillis;                                   // 解析成功的有效期
+    private final long negativeTtlMillis;                           // 解析失败的有效期
+    private final int refreshHits;                                  // 一个周期内使用次数达到该值时过期后台刷新, 0表示不刷新
+    private final Map<String, Entry> entryMap = new ConcurrentHashMap<>(64);
+    private final Map<String, CompletableFuture<InetAddress[]>> pendingMap = new ConcurrentHashMap<>(16);   // 正在解析的主机
+    private final ScheduledExecutorService executor;               // 异步解析和后台刷新
+    private final LongAdder hits = new LongAdder();                 // 命中数量
+    private final LongAdder misses = new LongAdder();               // 没有命中数量(需要解析)
+    private final LongAdder negativeHits = new LongAdder();         // 命中解析失败的数量
+    private final LongAdder refreshes = new LongAdder();            // 后台刷新数量
+    private final LongAdder refreshFailures = new LongAdder();      // 后台刷新失败数量
+
+    private DnsCache(Builder builder) {
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(Math.max(1, builder.ttl));
+        this.negativeTtlMillis = TimeUnit.SECONDS.toMillis(Math.max(0, builder.negativeTtl));
+        this.refreshHits = Math.max(0, builder.refreshHits);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(Math.max(1, builder.threads), r -> {
+            Thread thread = new Thread(r, "dns-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.executor = executor;
+        // JVM 缓存使用相同的有效期, 后台刷新时 JVM 缓存同时过期(JVM 全局设置)
+        String ttl = String.valueOf(Math.max(1, builder.ttl));
+        String negativeTtl = String.valueOf(Math.max(0, builder.negativeTtl));
+        Security.setProperty("networkaddress.cache.ttl", ttl);
+        Security.setProperty("networkaddress.cache.negative.ttl", negativeTtl);
+        logger.info("设置JVM全局的DNS缓存有效期 networkaddress.cache.ttl={}, networkaddress.cache.negative.ttl={}", ttl, negativeTtl);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 解析主机, 没有缓存时阻塞解析
+     * @throws UnknownHostException 解析失败(包括缓存的解析失败)
+     */
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        Entry entry = this.hit(host);
+        if(entry != null) {
+            return entry.get(host);
+        }
+        this.misses.increment();
+        try {
+            return this.lookup(host).join();
+        } catch(RuntimeException e) {
+            throw unwrap(host, e);
+        }
+    }
+
+    /**
+     * 异步解析主机, 有缓存时返回已经完成的结果, 否则在解析线程中解析(不阻塞调用线程)
+     */
+    public CompletableFuture<InetAddress[]> resolveAsync(String host) {
+        Entry entry = this.hit(host);
+        CompletableFuture<InetAddress[]> future = new CompletableFuture<>();
+        if(entry != null) {
+            if(entry.addresses != null) {
+                future.complete(entry.addresses);
+            } else {
+                future.completeExceptionally(entry.newError(host));
+            }
+            return future;
+        }
+        this.misses.increment();
+        this.executor.execute(() -> this.lookup(host).whenComplete((addresses, e) -> {
+            if(e == null) {
+                future.complete(addresses);
+            } else {
+                future.completeExceptionally(unwrap(host, e));
+            }
+        }));
+        return future;
+    }
+
+    /** 查找没有过期的缓存, 命中时统计并且按需安排后台刷新 */
+    private Entry hit(String host) {
+        Entry entry = this.entryMap.get(host);
+        if(entry == null || System.currentTimeMillis() >= entry.expiresAt) {
+            return null;
+        }
+        if(entry.addresses == null) {
+            this.negativeHits.increment();
+            return entry;
+        }
+        this.hits.increment();
+        if(this.refreshHits > 0 && entry.uses.incrementAndGet() >= this.refreshHits && entry.refreshScheduled.compareAndSet(false, true)) {
+            // 常用的主机, 过期时(JVM 缓存同时过期)后台重新解析
+            long delay = Math.max(0, entry.expiresAt - System.currentTimeMillis()) + 1;
+            this.executor.schedule(() -> this.refresh(host), delay, TimeUnit.MILLISECONDS);
+        }
+        return entry;
+    }
+
+    /** 后台刷新 */
+    private void refresh(String host) {
+        this.refreshes.increment();
+        this.lookup(host).whenComplete((addresses, e) -> {
+            if(e != null) {
+                this.refreshFailures.increment();
+                logger.debug("{} 后台刷新DNS失败 {}", host, e.toString());
+            }
+        });
+    }
+
+    /** 解析主机, 同一个主机同时只解析一次 */
+    private CompletableFuture<InetAddress[]> lookup(String host) {
+        CompletableFuture<InetAddress[]> future = new CompletableFuture<>();
+        CompletableFuture<InetAddress[]> pending = this.pendingMap.putIfAbsent(host, future);
+        if(pending != null) {
+            return pending;
+        }
+        long start = System.nanoTime();
+        try {
+            InetAddress[] addresses = InetAddress.getAllByName(host);
+            this.entryMap.put(host, new Entry(addresses, null, System.currentTimeMillis() + this.ttlMillis));
+            future.complete(addresses);
+        } catch(UnknownHostException e) {
+            this.entryMap.put(host, new Entry(null, e, System.currentTimeMillis() + this.negativeTtlMillis));
+            future.completeExceptionally(e);
+        } finally {
+            this.pendingMap.remove(host, future);
+        }
+        logger.debug("{} 解析DNS耗时 {}ms", host, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return future;
+    }
+
+    private static UnknownHostException unwrap(String host, Throwable e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        if(cause instanceof UnknownHostException) {
+            return (UnknownHostException) cause;
+        }
+        UnknownHostException exception = new UnknownHostException(host);
+        exception.initCause(cause);
+        return exception;
+    }
+
+    /** 命中率 = 命中数量(包括解析失败) / 总数量, 没有请求时返回0 */
+    public double getHitRate() {
+        long hits = this.hits.sum() + this.negativeHits.sum();
+        long total = hits + this.misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /** 获取 统计 [命中数量, 没有命中数量, 命中解析失败数量, 后台刷新数量, 后台刷新失败数量] */
+    public long[] getStats() {
+        return new long[] {this.hits.sum(), this.misses.sum(), this.negativeHits.sum(), this.refreshes.sum(), this.refreshFailures.sum()};
+    }
+
+    /** 清空缓存 */
+    public void clear() {
+        this.entryMap.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DnsCache{hosts=%d, hits=%d, misses=%d, negativeHits=%d, refreshes=%d, refreshFailures=%d, hitRate=%.1f%%}",
+                this.entryMap.size(), this.hits.sum(), this.misses.sum(), this.negativeHits.sum(), this.refreshes.sum(), this.refreshFailures.sum(), this.getHitRate() * 100);
+    }
+
+    /** 一个主机的解析结果 */
+    private static class Entry {
+        private final InetAddress[] addresses;                      // 解析成功的地址, 失败时为null
+        private final UnknownHostException error;                   // 解析失败的异常
+        private final long expiresAt;                               // 过期时间
+        private final AtomicInteger uses = new AtomicInteger();     // 使用次数
+        private final AtomicBoolean refreshScheduled = new AtomicBoolean(false);   // 是否已经安排后台刷新
+
+        private Entry(InetAddress[] addresses, UnknownHostException error, long expiresAt) {
+            this.addresses = addresses;
+            this.error = error;
+            this.expiresAt = expiresAt;
+        }
+
+        private InetAddress[] get(String host) throws UnknownHostException {
+            if(this.addresses == null) {
+                throw this.newError(host);
+            }
+            return this.addresses;
+        }
+
+        /** 缓存的解析失败每次使用新的异常(共享的异常会被调用方修改, 比如 addSuppressed), 原来的异常作为原因 */
+        private UnknownHostException newError(String host) {
+            UnknownHostException exception = new UnknownHostException(host);
+            exception.initCause(this.error);
+            return exception;
+        }
+    }
+
+    public static class Builder {
+        private long ttl = 300;
+        private long negativeTtl = 10;
+        private int refreshHits = 10;
+        private int threads = 2;
+
+        /** 解析成功的有效期(秒) */
+        public Builder ttl(long ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /** 解析失败的有效期(秒), 0表示不缓存 */
+        public Builder negativeTtl(long negativeTtl) {
+            this.negativeTtl = negativeTtl;
+            return this;
+        }
+
+        /** 一个周期内使用次数达到该值的主机在过期时后台刷新, 0表示不刷新 */
+        public Builder refreshHits(int refreshHits) {
+            this.refreshHits = refreshHits;
+            return this;
+        }
+
+        /** 异步解析和后台刷新的线程数 */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        public DnsCache build() {
+            return new DnsCache(this);
+        }
+    }
+
+}
@@ -0,0 +1,378 @@
+package cn.shaines.util;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 公平调度线程池
+ *
+ * 每一个 key 拥有自己的任务队列, 工作线程按照 key 轮流取任务执行,
+ * 因此某一个 key 提交了大量任务也不会让其他 key 的任务一直等待.
+ * 多个 key 可以属于同一个份额(比如同一个关键字的不同主机), 此时分两级轮转: 先在份额之间轮流, 再在份额内的 key 之间轮流,
+ * 因此某一个份额的 key 很多时也只占一份, 没有指定份额时每一个 key 是一个份额.
+ * 每一个份额排队的任务数量有上限, 超过上限时 submit 阻塞(背压).
+ * 多个 key 可以属于同一个分组(比如同一个主机), 每一个分组同时执行的任务数量有上限,
+ * 达到上限的分组暂时跳过, 因此某一个分组很慢时不会占满所有工作线程.
+ * 开启虚拟线程时(VirtualThreadUtil.setEnabled), 由一个分发线程为每一个任务创建一个虚拟线程,
+ * threads 表示同时执行的任务数量(信号量), 可以设置为几千而不需要几千个系统线程.
+ *
+ * 使用方式:
+ * FairScheduler<String> scheduler = new FairScheduler<>("download", 50, 200);
+ * scheduler.submit("唐嫣", () -> download(url));
+ * // 按主机分组, 每一个主机最多同时执行 6 个任务
+ * FairScheduler<URL> scheduler = new FairScheduler<>("download", 50, 200, URL::getHost, 6);
+ * // 先按关键字轮流, 再按主机轮流, 每一个关键字最多排队 200 个任务
+ * FairScheduler<DownloadKey> scheduler = new FairScheduler<>("download", 50, 200, DownloadKey::getKeyword, DownloadKey::getHost, 6);
+ * scheduler.awaitIdle(10, TimeUnit.MINUTES);
+ * scheduler.shutdown();
+ *
+ * @description 公平调度线程池
+ * @date created in 2026-10-18 07:17:37
+ * @author agent
+ */
+public class FairScheduler<K> {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(FairScheduler.class);
+
+    private final String name;                                      // 名称(用于线程命名)
+    private final int maxQueuedPerShare;                            // 每一个份额最多排队的任务数量
+    private final Function<? super K, ?> shareOf;                   // key所属的份额
+    private final Function<? super K, String> groupOf;              // key所属的分组
+    private final int maxRunningPerGroup;                           // 每一个分组最多同时执行的任务数量
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();         // 有任务可以执行
+    private final Condition notFull = lock.newCondition();          // 队列有空位
+    private final Condition idle = lock.newCondition();             // 所有任务执行完成
+    private final Map<K, Lane<K>> laneMap = new LinkedHashMap<>(16);// 每一个key的队列
+    private final Map<Object, Share<K>> shareMap = new LinkedHashMap<>(16); // 每一个份额
+    private final ArrayDeque<Share<K>> ring = new ArrayDeque<>(16); // 有任务的份额, 轮流执行
+    private final Map<String, Group> groupMap = new LinkedHashMap<>(16); // 每一个分组
+    private final Semaphore permits;                                // 虚拟线程模式: 同时执行的任务数量, 普通模式为null
+    private final ThreadFactory threadFactory;                      // 虚拟线程模式: 创建执行任务的虚拟线程
+    private int running = 0;                                        // 正在执行的任务数量
+    private boolean shutdown = false;                               // 是否已关闭
+
+    /**
+     * @param name 名称
+     * @param threads 工作线程数量
+     * @param maxQueuedPerKey 每一个key最多排队的任务数量
+     */
+    public FairScheduler(String name, int threads, int maxQueuedPerKey) {
+        this(name, threads, maxQueuedPerKey, String::valueOf, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param name 名称
+     * @param threads 工作线程数量(虚拟线程模式下为同时执行的任务数量)
+     * @param maxQueuedPerKey 每一个key最多排队的任务数量
+     * @param groupOf key所属的分组
+     * @param maxRunningPerGroup 每一个分组最多同时执行的任务数量
+     */
+    public FairScheduler(String name, int threads, int maxQueuedPerKey, Function<? super K, String> groupOf, int maxRunningPerGroup) {
+        this(name, threads, maxQueuedPerKey, Function.identity(), groupOf, maxRunningPerGroup);
+    }
+
+    /**
+     * @param name 名称
+     * @param threads 工作线程数量(虚拟线程模式下为同时执行的任务数量)
+     * @param maxQueuedPerShare 每一个份额最多排队的任务数量
+     * @param shareOf key所属的份额, 先在份额之间轮流, 再在份额内的key之间轮流
+     * @param groupOf key所属的分组
+     * @param maxRunningPerGroup 每一个分组最多同时执行的任务数量
+     */
+    public FairScheduler(String name, int threads, int maxQueuedPerShare, Function<? super K, ?> shareOf, Function<? super K, String> groupOf, int maxRunningPerGroup) {
+        this.name = name;
+        this.maxQueuedPerShare = Math.max(1, maxQueuedPerShare);
+        this.shareOf = shareOf;
+        this.groupOf = groupOf;
+        this.maxRunningPerGroup = Math.max(1, maxRunningPerGroup);
+        if(VirtualThreadUtil.isEnabled()) {
+            this.permits = new Semaphore(Math.max(1, threads));
+            this.threadFactory = VirtualThreadUtil.newThreadFactory(name + "-");
+            Thread thread = new Thread(this::dispatch, name + "-dispatch");
+            thread.setDaemon(true);
+            thread.start();
+            return;
+        }
+        this.permits = null;
+        this.threadFactory = null;
+        for(int i = 0; i < Math.max(1, threads); i++) {
+            Thread thread = new Thread(this::work, name + "-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 提交任务, 该key所属的份额排队的任务已满时阻塞
+     */
+    public void submit(K key, Runnable task) throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            Lane<K> lane = this.laneMap.computeIfAbsent(key, k -> new Lane<>(k, this.shareMap.computeIfAbsent(this.shareOf.apply(k), Share::new),
+                    this.groupMap.computeIfAbsent(this.groupOf.apply(k), Group::new)));
+            Share<K> share = lane.share;
+            while(!this.shutdown && share.queued >= this.maxQueuedPerShare) {
+                this.notFull.await();
+            }
+            if(this.shutdown) {
+                throw new IllegalStateException(this.name + " 已关闭, 不可以继续提交任务");
+            }
+            lane.queue.addLast(task);
+            share.queued++;
+            lane.group.queued++;
+            lane.submitted++;
+            if(!lane.inRing) {
+                lane.inRing = true;
+                share.ring.addLast(lane);
+            }
+            if(!share.inRing) {
+                share.inRing = true;
+                this.ring.addLast(share);
+            }
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 等待所有已提交的任务执行完成
+     * @return 超时返回 false
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        this.lock.lockInterruptibly();
+        try {
+            while(!this.ring.isEmpty() || this.running > 0) {
+                if(nanos <= 0) {
+                    return false;
+                }
+                nanos = this.idle.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 关闭, 已经提交的任务会继续执行
+     */
+    public void shutdown() {
+        this.lock.lock();
+        try {
+            this.shutdown = true;
+            this.notEmpty.signalAll();
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+        logger.debug("{} 关闭", this.name);
+    }
+
+    /**
+     * 获取每一个key的统计 key => [排队数量, 已提交数量, 已完成数量, 失败数量, 正在执行数量]
+     */
+    public Map<K, long[]> getStats() {
+        this.lock.lock();
+        try {
+            Map<K, long[]> stats = new LinkedHashMap<>(this.laneMap.size());
+            this.laneMap.forEach((k, lane) -> stats.put(k, new long[] {lane.queue.size(), lane.submitted, lane.completed, lane.failed, lane.running}));
+            return stats;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 获取每一个分组的统计 分组 => [排队数量, 正在执行数量]
+     */
+    public Map<String, long[]> getGroupStats() {
+        this.lock.lock();
+        try {
+            Map<String, long[]> stats = new LinkedHashMap<>(this.groupMap.size());
+            this.groupMap.forEach((group, g) -> stats.put(group, new long[] {g.queued, g.running}));
+            return stats;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * 按照轮转顺序取第一个有可以执行的key的份额, 再按照份额内的轮转顺序取第一个分组没有达到上限的key, 都达到上限时返回null
+     * 返回的key和它的份额已经移出轮转队列
+     */
+    private Lane<K> pollLane() {
+        for(Iterator<Share<K>> shareIterator = this.ring.iterator(); shareIterator.hasNext(); ) {
+            Share<K> share = shareIterator.next();
+            for(Iterator<Lane<K>> iterator = share.ring.iterator(); iterator.hasNext(); ) {
+                Lane<K> lane = iterator.next();
+                if(lane.group.running < this.maxRunningPerGroup) {
+                    iterator.remove();
+                    shareIterator.remove();
+                    return lane;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** 工作线程循环 */
+    private void work() {
+        for(Runnable task; (task = this.take()) != null; ) {
+            task.run();
+        }
+    }
+
+    /** 虚拟线程模式: 获取到信号量之后取一个任务, 在新的虚拟线程中执行 */
+    private void dispatch() {
+        while(true) {
+            this.permits.acquireUninterruptibly();
+            Runnable task = this.take();
+            if(task == null) {
+                return;
+            }
+            this.threadFactory.newThread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    this.permits.release();
+                }
+            }).start();
+        }
+    }
+
+    /**
+     * 按照 key 轮流取一个任务, 没有可以执行的任务时阻塞, 关闭并且没有任务时返回null
+     * 返回的任务执行完成时更新统计
+     */
+    private Runnable take() {
+        Lane<K> lane;
+        Runnable task;
+        this.lock.lock();
+        try {
+            // 没有任务, 或者有任务的分组都达到上限时等待
+            while((lane = this.pollLane()) == null && !(this.shutdown && this.ring.isEmpty())) {
+                this.notEmpty.awaitUninterruptibly();
+            }
+            if(lane == null) {
+                return null;
+            }
+            task = lane.queue.pollFirst();
+            Share<K> share = lane.share;
+            share.queued--;
+            if(lane.queue.isEmpty()) {
+                lane.inRing = false;
+            } else {
+                // 还有任务, 排到份额内的最后等待下一轮
+                share.ring.addLast(lane);
+            }
+            if(share.ring.isEmpty()) {
+                share.inRing = false;
+            } else {
+                // 份额还有任务, 排到最后等待下一轮
+                this.ring.addLast(share);
+            }
+            this.running++;
+            lane.running++;
+            lane.group.queued--;
+            lane.group.running++;
+            this.notFull.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+        Lane<K> taken = lane;
+        return () -> this.execute(taken, task);
+    }
+
+    /** 执行任务并更新统计 */
+    private void execute(Lane<K> lane, Runnable task) {
+        boolean success = true;
+        try {
+            task.run();
+        } catch(Throwable e) {
+            success = false;
+            logger.warn("{} 执行任务出现异常 {}", lane.key, e);
+        }
+        this.lock.lock();
+        try {
+            this.running--;
+            lane.running--;
+            lane.group.running--;
+            lane.completed++;
+            if(!success) {
+                lane.failed++;
+            }
+            if(this.ring.isEmpty() && this.running == 0) {
+                this.idle.signalAll();
+            } else if(!this.ring.isEmpty()) {
+                // 分组空出了位置, 唤醒一个等待的工作线程
+                this.notEmpty.signal();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        this.lock.lock();
+        try {
+            return "FairScheduler{name='" + this.name + "', keys=" + this.laneMap.size() + ", shares=" + this.shareMap.size() + ", groups=" + this.groupMap.size() + ", active=" + this.ring.size() + ", running=" + this.running + "}";
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /** 每一个key的任务队列 */
+    private static class Lane<K> {
+        private final K key;
+        private final Share<K> share;                               // 所属的份额
+        private final Group group;                                  // 所属的分组
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<>(16);
+        private boolean inRing = false;                             // 是否在轮转队列中
+        private int running;                                        // 正在执行数量
+        private long submitted;                                     // 已提交数量
+        private long completed;                                     // 已完成数量
+        private long failed;                                        // 失败数量
+
+        private Lane(K key, Share<K> share, Group group) {
+            this.key = key;
+            this.share = share;
+            this.group = group;
+        }
+    }
+
+    /** 份额(比如关键字), 份额之间轮流执行, 限制排队的任务数量 */
+    private static class Share<K> {
+        private final Object name;
+        private final ArrayDeque<Lane<K>> ring = new ArrayDeque<>(4);   // 份额内有任务的key, 轮流执行
+        private boolean inRing = false;                             // 是否在轮转队列中
+        private int queued;                                         // 排队数量
+
+        private Share(Object name) {
+            this.name = name;
+        }
+    }
+
+    /** 分组(比如主机), 限制同时执行的任务数量 */
+    private static class Group {
+        private final String name;
+        private int queued;                                         // 排队数量
+        private int running;                                        // 正在执行数量
+
+        private Group(String name) {
+            this.name = name;
+        }
+    }
+
+}
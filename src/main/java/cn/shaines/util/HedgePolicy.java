@@ -0,0 +1,379 @@
+package cn.shaines.util;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * 对冲请求策略(降低长尾耗时)
+ *
+ * 请求发送之后超过该主机首字节耗时的百分位(默认 p95)还没有收到响应头时, 再发送一个相同的请求(可以通过 hedgeWith 换一个代理或者网址),
+ * 使用先完成的响应, 中止另一个请求(阻塞引擎断开连接, 非阻塞引擎取消请求).
+ * 每一个主机保存最近 WINDOW 个首字节耗时, 样本少于 minSamples 时不对冲, 等待时间限制在 minDelay 和 maxDelay 之间.
+ * 对冲预算: 每一个主机的每一个请求存入 budgetRatio 个令牌, 每一次对冲消耗一个令牌, 最多保存 budgetReserve 个,
+ * 对冲的数量不超过请求数量的 budgetRatio 倍(加上保存的令牌), 主机整体变慢时不会因为对冲加倍请求.
+ * 响应体写入 sink 时需要 sink 支持 fork(如 BodySink.ofPath), 否则不对冲.
+ * 非幂等的请求(POST)不对冲(对冲会重复发送, 和 RetryPolicy 一致), 除非设置 hedgeNonIdempotent.
+ *
+ * 使用方式:
+ * HedgePolicy hedgePolicy = HedgePolicy.builder().percentile(0.95).budgetRatio(0.05).build();
+ * session.setHedgePolicy(hedgePolicy);
+ * logger.info("对冲 {}", hedgePolicy);
+ *
+ * @description 对冲请求策略
+ * @date created in 2026-10-18 08:21:05
+ * @author agent
+ */
+public class HedgePolicy {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(HedgePolicy.class);
+
+    /** 每一个主机保存的首字节耗时数量 */
+    private static final int WINDOW = 128;
+    /** 新增多少个样本之后重新计算百分位 */
+    private static final int REFRESH = 16;
+
+    private final double percentile;                                // 首字节耗时的百分位(0.95 即 p95)
+    private final long minDelay;                                    // 最短等待时间(毫秒)
+    private final long maxDelay;                                    // 最长等待时间(毫秒)
+    private final int minSamples;                                   // 样本少于该数量时不对冲
+    private final boolean hedgeNonIdempotent;                       // 非幂等的请求是否对冲
+    private final long budgetRatio;                                 // 每一个请求存入的令牌(千分之一个令牌)
+    private final long budgetReserve;                               // 最多保存的令牌(千分之一个令牌)
+    private final UnaryOperator<HttpURLConnectionUtil.Request> hedgeWith;   // 修改对冲的请求(换代理, 换网址)
+    private final Map<String, HostStats> hostMap = new ConcurrentHashMap<>(64);    // 主机 => 首字节耗时和令牌
+    private final ScheduledExecutorService executor;                // 发送对冲请求的定时器
+    private final LongAdder requests = new LongAdder();             // 请求数量(不包括对冲的请求)
+    private final LongAdder hedges = new LongAdder();               // 对冲的请求数量
+    private final LongAdder hedgeWins = new LongAdder();            // 对冲的请求先完成的数量
+    private final LongAdder exhausted = new LongAdder();            // 对冲预算不足放弃的数量
+
+    private HedgePolicy(Builder builder) {
+        this.percentile = Math.min(1D, Math.max(0D, builder.percentile));
+        this.minDelay = Math.max(0, builder.minDelay);
+        this.maxDelay = Math.max(this.minDelay, builder.maxDelay);
+        this.minSamples = Math.max(1, Math.min(WINDOW, builder.minSamples));
+        this.hedgeNonIdempotent = builder.hedgeNonIdempotent;
+        this.budgetRatio = Math.round(Math.max(0, builder.budgetRatio) * 1000);
+        this.budgetReserve = Math.max(0, builder.budgetReserve) * 1000L;
+        this.hedgeWith = builder.hedgeWith;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "hedge-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.executor = executor;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** 阻塞执行请求: 第一个请求在当前线程执行, 对冲的请求异步执行 */
+    HttpURLConnectionUtil.Response execute(HttpURLConnectionUtil.Request request) {
+        Hedge hedge = this.start(request);
+        CompletableFuture<HttpURLConnectionUtil.Response> attempt = new CompletableFuture<>();
+        hedge.watch(request, attempt);
+        try {
+            attempt.complete(request.executeAttempt());
+        } catch(RuntimeException e) {
+            attempt.completeExceptionally(e);
+        }
+        try {
+            return hedge.result.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch(ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    /** 异步执行请求, 对冲的请求由定时器发送 */
+    CompletableFuture<HttpURLConnectionUtil.Response> executeAsync(HttpURLConnectionUtil.Request request) {
+        Hedge hedge = this.start(request);
+        CompletableFuture<HttpURLConnectionUtil.Response> attempt;
+        try {
+            attempt = request.executeAttemptAsync();
+        } catch(RuntimeException e) {
+            attempt = new CompletableFuture<>();
+            attempt.completeExceptionally(e);
+        }
+        hedge.watch(request, attempt);
+        return hedge.result;
+    }
+
+    /** 执行之前: 存入令牌, 统计首字节耗时, 可以对冲时复制请求并且设置定时器 */
+    private Hedge start(HttpURLConnectionUtil.Request request) {
+        this.requests.increment();
+        HostStats stats = this.hostMap.computeIfAbsent(hostOf(request.getSite()), k -> new HostStats(this.budgetReserve));
+        stats.deposit(this.budgetRatio, this.budgetReserve);
+        Hedge hedge = new Hedge(request, stats);
+        request.setFirstByte(this.firstByte(stats));
+        long delay = stats.percentile(this.percentile, this.minSamples);
+        HttpURLConnectionUtil.BodySink sink = request.getBodySink();
+        HttpURLConnectionUtil.BodySink forked = sink == null ? null : sink.fork();
+        if(delay >= 0 && this.isIdempotent(request) && (sink == null || forked != null)) {
+            long hedgeDelay = Math.min(this.maxDelay, Math.max(this.minDelay, delay));
+            // 执行之前复制(执行时网址会拼接 GET 参数, 请求头会加上 Cookie 等)
+            HttpURLConnectionUtil.Request backup = request.copy().setBodySink(forked);
+            ScheduledFuture<?> timer = this.executor.schedule(() -> this.fire(hedge, backup, hedgeDelay), hedgeDelay, TimeUnit.MILLISECONDS);
+            hedge.result.whenComplete((response, e) -> timer.cancel(false));
+        }
+        return hedge;
+    }
+
+    /** 定时器: 第一个请求还没有收到响应头时发送对冲的请求 */
+    private void fire(Hedge hedge, HttpURLConnectionUtil.Request backup, long delay) {
+        if(hedge.result.isDone() || hedge.primary.getFirstByte().isDone()) {
+            return;
+        }
+        if(!hedge.stats.withdraw()) {
+            this.exhausted.increment();
+            logger.debug("{} 对冲预算不足, 不发送对冲请求", hedge.primary.getSite());
+            return;
+        }
+        hedge.launched.incrementAndGet();
+        if(hedge.result.isDone()) {
+            return;
+        }
+        this.hedges.increment();
+        HttpURLConnectionUtil.Request request = this.hedgeWith.apply(backup);
+        request.setFirstByte(this.firstByte(hedge.stats));
+        hedge.backup = request;
+        logger.debug("{} {}ms 没有收到响应头, 发送对冲请求", hedge.primary.getSite(), delay);
+        CompletableFuture<HttpURLConnectionUtil.Response> attempt;
+        try {
+            attempt = request.executeAttemptAsync();
+        } catch(RuntimeException e) {
+            attempt = new CompletableFuture<>();
+            attempt.completeExceptionally(e);
+        }
+        hedge.watch(request, attempt);
+        if(hedge.result.isDone() && !attempt.isDone()) {
+            // 第一个请求在设置 backup 之前完成
+            hedge.abort(request);
+        }
+    }
+
+    /** 请求是否幂等(可以重复发送) */
+    private boolean isIdempotent(HttpURLConnectionUtil.Request request) {
+        return this.hedgeNonIdempotent || request.getMethod() != HttpURLConnectionUtil.Method.POST;
+    }
+
+    /** 收到响应头时记录首字节耗时 */
+    private CompletableFuture<Void> firstByte(HostStats stats) {
+        long start = System.nanoTime();
+        CompletableFuture<Void> firstByte = new CompletableFuture<>();
+        firstByte.thenRun(() -> stats.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return firstByte;
+    }
+
+    private static String hostOf(String site) {
+        try {
+            return HostRateLimiter.hostOf(new URL(site));
+        } catch(MalformedURLException e) {
+            return String.valueOf(site);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+    }
+
+    /** 获取 主机当前的对冲等待时间(毫秒), 样本不足时为-1 */
+    public long getDelay(String host) {
+        HostStats stats = this.hostMap.get(host);
+        long delay = stats == null ? -1 : stats.percentile(this.percentile, this.minSamples);
+        return delay < 0 ? -1 : Math.min(this.maxDelay, Math.max(this.minDelay, delay));
+    }
+
+    /** 获取 统计 [请求数量, 对冲的请求数量, 对冲的请求先完成的数量, 对冲预算不足放弃的数量] */
+    public long[] getStats() {
+        return new long[] {this.requests.sum(), this.hedges.sum(), this.hedgeWins.sum(), this.exhausted.sum()};
+    }
+
+    @Override
+    public String toString() {
+        long requests = this.requests.sum();
+        return String.format("HedgePolicy{requests=%d, hedges=%d, hedgeWins=%d, exhausted=%d, hedgeRate=%.1f%%, hosts=%d}",
+                requests, this.hedges.sum(), this.hedgeWins.sum(), this.exhausted.sum(), requests == 0 ? 0D : this.hedges.sum() * 100D / requests, this.hostMap.size());
+    }
+
+    /**
+     * 一次对冲: 第一个请求和对冲的请求, 先成功的响应作为结果, 都失败时使用最后一个异常
+     */
+    private final class Hedge {
+        private final HttpURLConnectionUtil.Request primary;
+        private final HostStats stats;
+        private final CompletableFuture<HttpURLConnectionUtil.Response> result = new CompletableFuture<>();
+        private final AtomicInteger launched = new AtomicInteger(1);            // 已经发送的请求数量
+        private final AtomicInteger failed = new AtomicInteger();               // 已经失败的请求数量
+        private volatile HttpURLConnectionUtil.Request backup;                  // 对冲的请求, 没有发送时为null
+
+        private Hedge(HttpURLConnectionUtil.Request primary, HostStats stats) {
+            this.primary = primary;
+            this.stats = stats;
+        }
+
+        /** 请求完成时: 成功的第一个作为结果并中止另一个; 失败时等待另一个 */
+        private void watch(HttpURLConnectionUtil.Request request, CompletableFuture<HttpURLConnectionUtil.Response> attempt) {
+            attempt.whenComplete((response, e) -> {
+                if(e == null) {
+                    if(this.result.complete(response)) {
+                        HttpURLConnectionUtil.Request other = request == this.primary ? this.backup : this.primary;
+                        if(request != this.primary) {
+                            HedgePolicy.this.hedgeWins.increment();
+                            logger.debug("{} 对冲请求先完成", request.getSite());
+                        }
+                        if(other != null) {
+                            this.abort(other);
+                        }
+                    }
+                } else if(this.failed.incrementAndGet() >= this.launched.get()) {
+                    this.result.completeExceptionally(unwrap(e));
+                }
+            });
+        }
+
+        /** 中止另一个请求, 还没有收到响应头时按照已经等待的时间记录(只统计先完成的请求会低估首字节耗时) */
+        private void abort(HttpURLConnectionUtil.Request request) {
+            request.abort();
+            request.getFirstByte().complete(null);
+        }
+    }
+
+    /**
+     * 一个主机: 最近的首字节耗时(环形数组)和对冲令牌
+     */
+    private static final class HostStats {
+        private final long[] samples = new long[WINDOW];
+        private final AtomicLong budget;                                // 令牌(千分之一个令牌)
+        private int count;                                              // 样本数量
+        private int index;                                              // 下一个样本的位置
+        private int fresh;                                              // 上一次计算之后新增的样本数量
+        private long cached = -1;                                       // 上一次计算的百分位
+
+        private HostStats(long budgetReserve) {
+            this.budget = new AtomicLong(budgetReserve);
+        }
+
+        private synchronized void record(long millis) {
+            this.samples[this.index] = millis;
+            this.index = (this.index + 1) % WINDOW;
+            this.count = Math.min(WINDOW, this.count + 1);
+            this.fresh++;
+        }
+
+        /** 首字节耗时的百分位, 样本不足时返回-1 */
+        private synchronized long percentile(double percentile, int minSamples) {
+            if(this.count < minSamples) {
+                return -1;
+            }
+            if(this.cached < 0 || this.fresh >= REFRESH) {
+                long[] sorted = Arrays.copyOf(this.samples, this.count);
+                Arrays.sort(sorted);
+                this.cached = sorted[Math.max(0, Math.min(this.count - 1, (int) Math.ceil(percentile * this.count) - 1))];
+                this.fresh = 0;
+            }
+            return this.cached;
+        }
+
+        /** 请求存入令牌 */
+        private void deposit(long budgetRatio, long budgetReserve) {
+            this.budget.accumulateAndGet(budgetRatio, (balance, ratio) -> Math.min(budgetReserve, balance + ratio));
+        }
+
+        /** 对冲消耗一个令牌, 不足时返回 false */
+        private boolean withdraw() {
+            for(long balance = this.budget.get(); balance >= 1000; balance = this.budget.get()) {
+                if(this.budget.compareAndSet(balance, balance - 1000)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    public static class Builder {
+        private double percentile = 0.95;
+        private long minDelay = 50;
+        private long maxDelay = 10000;
+        private int minSamples = 20;
+        private boolean hedgeNonIdempotent = false;
+        private double budgetRatio = 0.05;
+        private int budgetReserve = 5;
+        private UnaryOperator<HttpURLConnectionUtil.Request> hedgeWith = UnaryOperator.identity();
+
+        /** 首字节耗时的百分位(0.95 即 p95), 超过该耗时还没有收到响应头时对冲 */
+        public Builder percentile(double percentile) {
+            this.percentile = percentile;
+            return this;
+        }
+
+        /** 最短等待时间(毫秒), 主机很快时不会过早对冲 */
+        public Builder minDelay(long minDelay) {
+            this.minDelay = minDelay;
+            return this;
+        }
+
+        /** 最长等待时间(毫秒) */
+        public Builder maxDelay(long maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /** 主机的首字节耗时样本少于该数量时不对冲(最多 128) */
+        public Builder minSamples(int minSamples) {
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /** 非幂等的请求(POST)是否对冲, 对冲时同一个请求可能被服务端处理两次 */
+        public Builder hedgeNonIdempotent(boolean hedgeNonIdempotent) {
+            this.hedgeNonIdempotent = hedgeNonIdempotent;
+            return this;
+        }
+
+        /** 对冲预算: 每一个请求存入的令牌(对冲数量占请求数量的比例) */
+        public Builder budgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+            return this;
+        }
+
+        /** 对冲预算: 每一个主机最多保存的令牌 */
+        public Builder budgetReserve(int budgetReserve) {
+            this.budgetReserve = budgetReserve;
+            return this;
+        }
+
+        /**
+         * 修改对冲的请求(已经复制的请求, 还没有执行), 如换一个代理 request -> request.setProxy(...),
+         * 或者换一个网址 request -> request.copy(otherSite).setBodySink(request.getBodySink())
+         */
+        public Builder hedgeWith(UnaryOperator<HttpURLConnectionUtil.Request> hedgeWith) {
+            this.hedgeWith = hedgeWith == null ? UnaryOperator.identity() : hedgeWith;
+            return this;
+        }
+
+        public HedgePolicy build() {
+            return new HedgePolicy(this);
+        }
+    }
+
+}
@@ -0,0 +1,259 @@
+package cn.shaines.util;
+
+import java.net.URL;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按主机限流(令牌桶), 速率按 AIMD 自适应调整
+ *
+ * 每一个主机一个令牌桶, 请求前获取令牌, 令牌不足时等待.
+ * 请求成功时速率加法增加(每次 +increase), 被限制(403/429/5xx/连接异常/空结果)时速率乘法减少(每次 *decrease),
+ * 响应头中有 Retry-After 时在指定时间之前暂停该主机的所有请求.
+ * 这样可以尽可能接近服务器允许的速率, 而不是固定的随机睡眠.
+ *
+ * 使用方式:
+ * HostRateLimiter limiter = HostRateLimiter.builder().initialRate(2).minRate(0.2).maxRate(10).build();
+ * session.build(url).setRateLimiter(limiter).execute();
+ * // 业务判断被限制时(比如返回空的结果)
+ * limiter.backoff(host);
+ *
+ * @description 按主机自适应限流
+ * @date created in 2026-10-18 07:21:08
+ * @author agent
+ */
+public class HostRateLimiter {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(HostRateLimiter.class);
+
+    private final double initialRate;                           // 初始速率(每秒请求数)
+    private final double minRate;                               // 最小速率
+    private final double maxRate;                               // 最大速率
+    private final double burst;                                 // 令牌桶容量(允许的突发请求数)
+    private final double increase;                              // 成功时速率增加的值
+    private final double decrease;                              // 被限制时速率乘以的系数
+    private final long maxRetryAfter;                           // Retry-After 最长等待时间(毫秒)
+    private final Map<String, Bucket> bucketMap = new ConcurrentHashMap<>(16);
+
+    private HostRateLimiter(Builder builder) {
+        this.minRate = builder.minRate;
+        this.maxRate = Math.max(builder.minRate, builder.maxRate);
+        this.initialRate = Math.min(this.maxRate, Math.max(this.minRate, builder.initialRate));
+        this.burst = Math.max(1, builder.burst);
+        this.increase = builder.increase;
+        this.decrease = builder.decrease;
+        this.maxRetryAfter = builder.maxRetryAfter;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 获取一个令牌, 令牌不足或者主机暂停时阻塞
+     */
+    public void acquire(String host) throws InterruptedException {
+        long waitNanos = this.reserve(host);
+        if(waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * 预定一个令牌, 不阻塞, 返回需要等待的时间(纳秒), 用于异步请求延迟发送
+     */
+    public long reserve(String host) {
+        return this.bucket(host).reserve();
+    }
+
+    /**
+     * 根据响应调整速率
+     * @param code 响应状态码
+     * @param retryAfter 响应头 Retry-After (秒数或者 HTTP 日期), 可以为null
+     */
+    public void onResponse(String host, int code, String retryAfter) {
+        if(code == 403 || code == 429 || code >= 500) {
+            this.backoff(host, parseRetryAfter(retryAfter));
+        } else if(code > 0 && code < 400) {
+            this.bucket(host).increase();
+        }
+    }
+
+    /**
+     * 被限制(空结果, 连接异常等), 降低速率
+     */
+    public void backoff(String host) {
+        this.backoff(host, 0);
+    }
+
+    private void backoff(String host, long retryAfterMillis) {
+        Bucket bucket = this.bucket(host);
+        double rate = bucket.decrease(Math.min(retryAfterMillis, this.maxRetryAfter));
+        logger.debug("{} 被限制, 速率降低到 {}/s, Retry-After:{}ms", host, String.format("%.2f", rate), retryAfterMillis);
+    }
+
+    /** 获取主机当前的速率(每秒请求数) */
+    public double getRate(String host) {
+        Bucket bucket = this.bucketMap.get(host);
+        return bucket == null ? this.initialRate : bucket.rate;
+    }
+
+    /** 获取每一个主机当前的速率 */
+    public Map<String, Double> getRates() {
+        Map<String, Double> rates = new LinkedHashMap<>(this.bucketMap.size());
+        this.bucketMap.forEach((host, bucket) -> rates.put(host, bucket.rate));
+        return rates;
+    }
+
+    /** 从链接中获取主机 */
+    public static String hostOf(URL url) {
+        return url.getPort() == -1 ? url.getHost() : url.getHost() + ":" + url.getPort();
+    }
+
+    private Bucket bucket(String host) {
+        return this.bucketMap.computeIfAbsent(host, k -> new Bucket(this.initialRate, this.burst));
+    }
+
+    /** 解析 Retry-After, 返回毫秒, 无法解析返回0 */
+    static long parseRetryAfter(String retryAfter) {
+        if(retryAfter == null || retryAfter.trim().isEmpty()) {
+            return 0;
+        }
+        retryAfter = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(retryAfter) * 1000);
+        } catch(NumberFormatException e) {
+            // 不是秒数, 尝试 HTTP 日期
+        }
+        try {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            return Math.max(0, format.parse(retryAfter).getTime() - System.currentTimeMillis());
+        } catch(ParseException e) {
+            logger.debug("无法解析 Retry-After {}", retryAfter);
+            return 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("HostRateLimiter{");
+        this.getRates().forEach((host, rate) -> builder.append(host).append('=').append(String.format("%.2f", rate)).append("/s, "));
+        if(!this.bucketMap.isEmpty()) {
+            builder.setLength(builder.length() - 2);
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * 令牌桶, 令牌可以为负数(预支), 预支的令牌需要等待补充
+     */
+    private class Bucket {
+        private volatile double rate;                           // 当前速率
+        private double tokens;                                  // 当前令牌数量
+        private long lastRefill = System.nanoTime();            // 上一次补充令牌的时间
+        private long pausedUntil = 0;                           // Retry-After 暂停到的时间(nanoTime)
+
+        private Bucket(double rate, double burst) {
+            this.rate = rate;
+            this.tokens = Math.min(1, burst);
+        }
+
+        /** 预定一个令牌, 返回需要等待的时间(纳秒) */
+        private synchronized long reserve() {
+            long now = System.nanoTime();
+            this.refill(now);
+            this.tokens -= 1;
+            long waitNanos = this.tokens >= 0 ? 0 : (long) (-this.tokens / this.rate * 1_000_000_000L);
+            if(this.pausedUntil - now > waitNanos) {
+                waitNanos = this.pausedUntil - now;
+            }
+            return waitNanos;
+        }
+
+        private void refill(long now) {
+            this.tokens = Math.min(burst, this.tokens + (now - this.lastRefill) / 1_000_000_000D * this.rate);
+            this.lastRefill = now;
+        }
+
+        private synchronized void increase() {
+            this.refill(System.nanoTime());
+            this.rate = Math.min(maxRate, this.rate + increase);
+        }
+
+        private synchronized double decrease(long pauseMillis) {
+            long now = System.nanoTime();
+            this.refill(now);
+            this.rate = Math.max(minRate, this.rate * decrease);
+            // 清空令牌, 已经预支的令牌保留
+            this.tokens = Math.min(0, this.tokens);
+            if(pauseMillis > 0) {
+                this.pausedUntil = Math.max(this.pausedUntil, now + TimeUnit.MILLISECONDS.toNanos(pauseMillis));
+            }
+            return this.rate;
+        }
+    }
+
+    public static class Builder {
+        private double initialRate = 2;
+        private double minRate = 0.2;
+        private double maxRate = 20;
+        private double burst = 1;
+        private double increase = 0.1;
+        private double decrease = 0.5;
+        private long maxRetryAfter = 5 * 60 * 1000;
+
+        private Builder() {}
+
+        /** 初始速率(每秒请求数) */
+        public Builder initialRate(double initialRate) {
+            this.initialRate = initialRate;
+            return this;
+        }
+
+        /** 最小速率(每秒请求数) */
+        public Builder minRate(double minRate) {
+            this.minRate = minRate > 0 ? minRate : this.minRate;
+            return this;
+        }
+
+        /** 最大速率(每秒请求数) */
+        public Builder maxRate(double maxRate) {
+            this.maxRate = maxRate;
+            return this;
+        }
+
+        /** 令牌桶容量, 空闲之后允许的突发请求数 */
+        public Builder burst(double burst) {
+            this.burst = burst;
+            return this;
+        }
+
+        /** 成功时速率增加的值(加法增加) */
+        public Builder increase(double increase) {
+            this.increase = Math.max(0, increase);
+            return this;
+        }
+
+        /** 被限制时速率乘以的系数(乘法减少), 0 ~ 1 */
+        public Builder decrease(double decrease) {
+            this.decrease = decrease > 0 && decrease < 1 ? decrease : this.decrease;
+            return this;
+        }
+
+        /** Retry-After 最长等待时间(毫秒) */
+        public Builder maxRetryAfter(long maxRetryAfter) {
+            this.maxRetryAfter = Math.max(0, maxRetryAfter);
+            return this;
+        }
+
+        public HostRateLimiter build() {
+            return new HostRateLimiter(this);
+        }
+    }
+
+}
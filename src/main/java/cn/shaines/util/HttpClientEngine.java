@@ -0,0 +1,413 @@
+package cn.shaines.util;
+
+import javax.net.ssl.SSLContext;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 非阻塞请求引擎: 使用 JDK 11+ 的 java.net.http.HttpClient
+ *
+ * 项目按照 Java 8 编译, 这里通过反射调用 HttpClient, 当前 JDK 不支持时 create 返回阻塞引擎.
+ * 所有请求由 threads 个线程驱动(读取响应, 解压, 计算摘要), 同时进行的请求数量不受线程数量限制.
+ * 与阻塞引擎的行为保持一致: 请求头, cookie, 稳定重定向, 限流(令牌不足时延迟发送, 不阻塞线程), 域对象.
+ * 不支持的设置: 自定义 HostnameVerifier / SSLSocketFactory(使用信任所有证书的 SSLContext),
+ * 以及 HttpClient 不允许设置的请求头(Connection, Content-Length, Expect, Host, Upgrade).
+ * 设置了 BodySink 时, 响应体先完整接收到内存再写入 sink(HttpClient 的流式读取需要阻塞线程).
+ *
+ * 使用方式:
+ * Session session = HttpURLConnectionUtil.buildSession().setEngine(HttpClientEngine.create(4));
+ * session.build(url).executeAsync().thenAccept(response -> ...);
+ *
+ * @description 非阻塞请求引擎
+ * @date created in 2026-10-18 07:40:08
+ * @author agent
+ */
+public class HttpClientEngine implements HttpURLConnectionUtil.Engine {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(HttpClientEngine.class);
+
+    /** HttpClient 不允许设置的请求头 */
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList("connection", "content-length", "expect", "host", "upgrade"));
+
+    private static final Method NEW_CLIENT_BUILDER;             // HttpClient.newBuilder()
+    private static final Method CLIENT_FOLLOW_REDIRECTS;        // HttpClient.Builder.followRedirects(Redirect)
+    private static final Method CLIENT_CONNECT_TIMEOUT;         // HttpClient.Builder.connectTimeout(Duration)
+    private static final Method CLIENT_PROXY;                   // HttpClient.Builder.proxy(ProxySelector)
+    private static final Method CLIENT_SSL_CONTEXT;             // HttpClient.Builder.sslContext(SSLContext)
+    private static final Method CLIENT_EXECUTOR;                // HttpClient.Builder.executor(Executor)
+    private static final Method CLIENT_BUILD;                   // HttpClient.Builder.build()
+    private static final Object REDIRECT_NEVER;                 // HttpClient.Redirect.NEVER
+    private static final Object REDIRECT_NORMAL;                // HttpClient.Redirect.NORMAL
+    private static final Method SEND_ASYNC;                     // HttpClient.sendAsync(HttpRequest, BodyHandler)
+    private static final Method NEW_REQUEST_BUILDER;            // HttpRequest.newBuilder(URI)
+    private static final Method REQUEST_METHOD;                 // HttpRequest.Builder.method(String, BodyPublisher)
+    private static final Method REQUEST_HEADER;                 // HttpRequest.Builder.header(String, String)
+    private static final Method REQUEST_TIMEOUT;                // HttpRequest.Builder.timeout(Duration)
+    private static final Method REQUEST_BUILD;                  // HttpRequest.Builder.build()
+    private static final Method BODY_OF_BYTE_ARRAY;             // HttpRequest.BodyPublishers.ofByteArray(byte[])
+    private static final Method BODY_NO_BODY;                   // HttpRequest.BodyPublishers.noBody()
+    private static final Object BODY_HANDLER;                   // HttpResponse.BodyHandlers.ofByteArray()
+    private static final Class<?> BODY_HANDLER_CLASS;           // HttpResponse.BodyHandler
+    private static final Method RESPONSE_STATUS_CODE;           // HttpResponse.statusCode()
+    private static final Method RESPONSE_HEADERS;               // HttpResponse.headers()
+    private static final Method RESPONSE_BODY;                  // HttpResponse.body()
+    private static final Method HEADERS_MAP;                    // HttpHeaders.map()
+    private static final Method PROXY_SELECTOR_OF;              // ProxySelector.of(InetSocketAddress)
+    private static final boolean SUPPORTED;
+
+    static {
+        Method[] methods = new Method[20];
+        Object[] objects = new Object[3];
+        Class<?> bodyHandlerClass = null;
+        boolean supported;
+        try {
+            Class<?> clientClass = Class.forName("java.net.http.HttpClient");
+            Class<?> clientBuilderClass = Class.forName("java.net.http.HttpClient$Builder");
+            Class<?> redirectClass = Class.forName("java.net.http.HttpClient$Redirect");
+            Class<?> requestClass = Class.forName("java.net.http.HttpRequest");
+            Class<?> requestBuilderClass = Class.forName("java.net.http.HttpRequest$Builder");
+            Class<?> publisherClass = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+            Class<?> publishersClass = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+            Class<?> handlerClass = Class.forName("java.net.http.HttpResponse$BodyHandler");
+            Class<?> handlersClass = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+            Class<?> responseClass = Class.forName("java.net.http.HttpResponse");
+            Class<?> headersClass = Class.forName("java.net.http.HttpHeaders");
+            methods[0] = clientClass.getMethod("newBuilder");
+            methods[1] = clientBuilderClass.getMethod("followRedirects", redirectClass);
+            methods[2] = clientBuilderClass.getMethod("connectTimeout", Duration.class);
+            methods[3] = clientBuilderClass.getMethod("proxy", ProxySelector.class);
+            methods[4] = clientBuilderClass.getMethod("sslContext", SSLContext.class);
+            methods[5] = clientBuilderClass.getMethod("executor", Executor.class);
+            methods[6] = clientBuilderClass.getMethod("build");
+            methods[7] = clientClass.getMethod("sendAsync", requestClass, handlerClass);
+            methods[8] = requestClass.getMethod("newBuilder", URI.class);
+            methods[9] = requestBuilderClass.getMethod("method", String.class, publisherClass);
+            methods[10] = requestBuilderClass.getMethod("header", String.class, String.class);
+            methods[11] = requestBuilderClass.getMethod("timeout", Duration.class);
+            methods[12] = requestBuilderClass.getMethod("build");
+            methods[13] = publishersClass.getMethod("ofByteArray", byte[].class);
+            methods[14] = publishersClass.getMethod("noBody");
+            methods[15] = responseClass.getMethod("statusCode");
+            methods[16] = responseClass.getMethod("headers");
+            methods[17] = responseClass.getMethod("body");
+            methods[18] = headersClass.getMethod("map");
+            methods[19] = ProxySelector.class.getMethod("of", InetSocketAddress.class);
+            objects[0] = redirectClass.getField("NEVER").get(null);
+            objects[1] = redirectClass.getField("NORMAL").get(null);
+            objects[2] = handlersClass.getMethod("ofByteArray").invoke(null);
+            bodyHandlerClass = handlerClass;
+            supported = true;
+        } catch(ReflectiveOperationException e) {
+            // JDK 11 以下没有 java.net.http
+            supported = false;
+        }
+        SUPPORTED = supported;
+        NEW_CLIENT_BUILDER = methods[0];
+        CLIENT_FOLLOW_REDIRECTS = methods[1];
+        CLIENT_CONNECT_TIMEOUT = methods[2];
+        CLIENT_PROXY = methods[3];
+        CLIENT_SSL_CONTEXT = methods[4];
+        CLIENT_EXECUTOR = methods[5];
+        CLIENT_BUILD = methods[6];
+        SEND_ASYNC = methods[7];
+        NEW_REQUEST_BUILDER = methods[8];
+        REQUEST_METHOD = methods[9];
+        REQUEST_HEADER = methods[10];
+        REQUEST_TIMEOUT = methods[11];
+        REQUEST_BUILD = methods[12];
+        BODY_OF_BYTE_ARRAY = methods[13];
+        BODY_NO_BODY = methods[14];
+        RESPONSE_STATUS_CODE = methods[15];
+        RESPONSE_HEADERS = methods[16];
+        RESPONSE_BODY = methods[17];
+        HEADERS_MAP = methods[18];
+        PROXY_SELECTOR_OF = methods[19];
+        REDIRECT_NEVER = objects[0];
+        REDIRECT_NORMAL = objects[1];
+        BODY_HANDLER = objects[2];
+        BODY_HANDLER_CLASS = bodyHandlerClass;
+    }
+
+    private final int threads;                                  // 驱动所有请求的线程数量
+    private final ExecutorService executor;                     // HttpClient 的回调线程池
+    private final ScheduledExecutorService delayPool;           // 限流时延迟发送
+    private final Map<String, Object> clientMap = new ConcurrentHashMap<>(8);   // 代理/超时/重定向/https设置 => HttpClient
+
+    private HttpClientEngine(int threads) {
+        this.threads = Math.max(1, threads);
+        AtomicInteger index = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread thread = new Thread(r, "http-client-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.delayPool = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "http-client-delay");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** 当前运行的 JDK 是否支持 java.net.http.HttpClient */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * 创建非阻塞引擎, 当前 JDK 不支持时返回阻塞引擎
+     * @param threads 驱动所有请求的线程数量
+     */
+    public static HttpURLConnectionUtil.Engine create(int threads) {
+        if(!SUPPORTED) {
+            logger.warn("当前JDK版本 {} 不支持 java.net.http.HttpClient(需要JDK 11+), 使用阻塞引擎", System.getProperty("java.version"));
+            return HttpURLConnectionUtil.Engine.BLOCKING;
+        }
+        return new HttpClientEngine(threads);
+    }
+
+    @Override
+    public CompletableFuture<HttpURLConnectionUtil.Response> executeAsync(HttpURLConnectionUtil.Request request) {
+        CompletableFuture<HttpURLConnectionUtil.Response> future = new CompletableFuture<>();
+        String breakerHost = null;
+        try {
+            // 已经中止时不再执行(包括重定向和重试)
+            request.checkAborted();
+            request.handleGETParamWithUrl();
+            // 熔断: 主机熔断时直接失败(不连接)
+            breakerHost = request.acquireCircuitBreaker();
+            request.prepareHeader();
+            byte[] body = request.buildBody();
+            URI uri = toUri(request.getSite());
+            DnsCache dnsCache = request.getDnsCache();
+            String host = breakerHost;
+            if(dnsCache == null || request.getProxy() != null) {
+                this.schedule(request, uri, body, host, future);
+            } else {
+                // 先通过 DNS 缓存解析主机(没有缓存时在解析线程中解析, 不阻塞)
+                dnsCache.resolveAsync(uri.getHost()).whenComplete((addresses, e) -> {
+                    if(e != null) {
+                        logger.warn("{} resolve host has exception {}", uri, e.toString());
+                        request.reportCircuitBreaker(host, 0, e);
+                        future.completeExceptionally(new RuntimeException(e));
+                    } else {
+                        this.schedule(request, uri, body, host, future);
+                    }
+                });
+            }
+        } catch(Exception e) {
+            // 发送之前的异常(不是主机的问题), 释放熔断许可
+            request.releaseCircuitBreaker(breakerHost);
+            future.completeExceptionally(e instanceof RuntimeException ? e : new RuntimeException(e));
+        }
+        return future;
+    }
+
+    /**
+     * 获取限流令牌之后发送请求
+     * @param breakerHost 已经获取熔断许可的主机, 没有熔断器时为null
+     */
+    private void schedule(HttpURLConnectionUtil.Request request, URI uri, byte[] body, String breakerHost, CompletableFuture<HttpURLConnectionUtil.Response> future) {
+        try {
+            HostRateLimiter rateLimiter = request.getRateLimiter();
+            String host = HostRateLimiter.hostOf(uri.toURL());
+            long waitNanos = rateLimiter == null ? 0 : rateLimiter.reserve(host);
+            if(waitNanos > 0) {
+                // 令牌不足时延迟发送, 不占用线程
+                this.delayPool.schedule(() -> this.send(request, uri, body, host, breakerHost, future), waitNanos, TimeUnit.NANOSECONDS);
+            } else {
+                this.send(request, uri, body, host, breakerHost, future);
+            }
+        } catch(Exception e) {
+            request.releaseCircuitBreaker(breakerHost);
+            future.completeExceptionally(e instanceof RuntimeException ? e : new RuntimeException(e));
+        }
+    }
+
+    /** 发送请求, 响应完成时处理重定向和限流, 每一个结束的分支都记录或者释放熔断许可 */
+    private void send(HttpURLConnectionUtil.Request request, URI uri, byte[] body, String host, String breakerHost, CompletableFuture<HttpURLConnectionUtil.Response> future) {
+        HostRateLimiter rateLimiter = request.getRateLimiter();
+        CompletableFuture<?> sent;
+        try {
+            CompletableFuture<Void> firstByte = request.getFirstByte();
+            Object bodyHandler = firstByte == null ? BODY_HANDLER : firstByteHandler(firstByte);
+            sent = (CompletableFuture<?>) invoke(SEND_ASYNC, this.client(request), this.buildRequest(request, uri, body), bodyHandler);
+        } catch(RuntimeException e) {
+            request.releaseCircuitBreaker(breakerHost);
+            future.completeExceptionally(e);
+            return;
+        }
+        // 中止时取消请求(JDK 16+ 同时关闭连接上的交换)
+        request.onAbort(() -> sent.cancel(true));
+        sent.whenComplete((httpResponse, e) -> {
+            if(e != null) {
+                if(request.isAborted()) {
+                    request.releaseCircuitBreaker(breakerHost);
+                    future.completeExceptionally(new CancellationException(uri + " 请求已经中止"));
+                    return;
+                }
+                if(rateLimiter != null) {
+                    // 连接异常也当作被限制
+                    rateLimiter.backoff(host);
+                }
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                logger.warn("{} send data has exception {}", uri, cause.toString());
+                request.reportCircuitBreaker(breakerHost, 0, cause);
+                future.completeExceptionally(new RuntimeException(cause));
+                return;
+            }
+            try {
+                int code = (Integer) invoke(RESPONSE_STATUS_CODE, httpResponse);
+                Map<String, List<String>> header = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                @SuppressWarnings("unchecked")
+                Map<String, List<String>> headerMap = (Map<String, List<String>>) invoke(HEADERS_MAP, invoke(RESPONSE_HEADERS, httpResponse));
+                header.putAll(headerMap);
+                List<String> location = header.get(HttpURLConnectionUtil.Constant.LOCATION);
+                if(request.getIfStableRedirection() && location != null && !location.isEmpty()
+                        && request.followRedirect(code, location.get(0))) {
+                    request.storeRedirectCookies(uri.toString(), header);
+                    // 重定向的中间请求不记录, 只记录最后一个请求
+                    request.releaseCircuitBreaker(breakerHost);
+                    // 递归实现重定向
+                    this.executeAsync(request).whenComplete((response, error) -> {
+                        if(error != null) {
+                            future.completeExceptionally(error);
+                        } else {
+                            future.complete(response);
+                        }
+                    });
+                    return;
+                }
+                request.handleSession();
+                HttpURLConnectionUtil.Response response = new HttpURLConnectionUtil.Response(uri.toString(), code, header, (byte[]) invoke(RESPONSE_BODY, httpResponse),
+                        request.getRedirectUrlList(), request.getExtra(), request.getSession(), request.getDigestAlgorithm(), request.getBodySink());
+                if(request.getIfLightweight()) {
+                    response.lighten();
+                }
+                if(rateLimiter != null) {
+                    rateLimiter.onResponse(host, code, response.getHeaderField(HttpURLConnectionUtil.Constant.RETRY_AFTER));
+                }
+                request.reportCircuitBreaker(breakerHost, code, null);
+                future.complete(response);
+            } catch(Throwable error) {
+                request.reportCircuitBreaker(breakerHost, 0, error);
+                future.completeExceptionally(error);
+            }
+        });
+    }
+
+    /** 收到响应头时完成 firstByte, 然后按照 ofByteArray 读取响应体 */
+    private static Object firstByteHandler(CompletableFuture<Void> firstByte) {
+        return Proxy.newProxyInstance(BODY_HANDLER_CLASS.getClassLoader(), new Class<?>[] {BODY_HANDLER_CLASS}, (proxy, method, args) -> {
+            if("apply".equals(method.getName())) {
+                firstByte.complete(null);
+            }
+            try {
+                return method.invoke(BODY_HANDLER, args);
+            } catch(InvocationTargetException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    /** 构造 HttpRequest */
+    private Object buildRequest(HttpURLConnectionUtil.Request request, URI uri, byte[] body) {
+        Object builder = invoke(NEW_REQUEST_BUILDER, null, uri);
+        invoke(REQUEST_METHOD, builder, request.getMethod().name(), body == null ? invoke(BODY_NO_BODY, null) : invoke(BODY_OF_BYTE_ARRAY, null, (Object) body));
+        if(request.getHeader() != null) {
+            request.getHeader().forEach((k, v) -> {
+                if(!RESTRICTED_HEADERS.contains(k.toLowerCase())) {
+                    invoke(REQUEST_HEADER, builder, k, String.valueOf(v));
+                }
+            });
+        }
+        HttpURLConnectionUtil.Proxy proxy = request.getProxy();
+        if(proxy != null && HttpURLConnectionUtil.isNotEmpty(proxy.getUsername())) {
+            String authString = proxy.getUsername() + ":" + proxy.getPassword();
+            invoke(REQUEST_HEADER, builder, HttpURLConnectionUtil.Constant.PROXY_AUTHORIZATION, "Basic " + Base64.getEncoder().encodeToString(authString.getBytes(StandardCharsets.UTF_8)));
+        }
+        if(request.getTimeout() > 0) {
+            invoke(REQUEST_TIMEOUT, builder, Duration.ofMillis(request.getTimeout()));
+        }
+        return invoke(REQUEST_BUILD, builder);
+    }
+
+    /** 按照代理/超时/重定向/https设置复用 HttpClient(连接池在 HttpClient 内部) */
+    private Object client(HttpURLConnectionUtil.Request request) {
+        HttpURLConnectionUtil.Proxy proxy = request.getProxy();
+        boolean hasProxy = proxy != null && HttpURLConnectionUtil.isNotEmpty(proxy.getHost());
+        String key = (hasProxy ? proxy.getHost() + ":" + proxy.getPort() : "direct") + "|" + request.getTimeout()
+                + "|" + request.getIfStableRedirection() + "|" + request.getIfHandleHttps();
+        return this.clientMap.computeIfAbsent(key, k -> {
+            Object builder = invoke(NEW_CLIENT_BUILDER, null);
+            // 稳定重定向由引擎处理, 否则由 HttpClient 自动处理
+            invoke(CLIENT_FOLLOW_REDIRECTS, builder, request.getIfStableRedirection() ? REDIRECT_NEVER : REDIRECT_NORMAL);
+            if(request.getTimeout() > 0) {
+                invoke(CLIENT_CONNECT_TIMEOUT, builder, Duration.ofMillis(request.getTimeout()));
+            }
+            if(hasProxy) {
+                invoke(CLIENT_PROXY, builder, invoke(PROXY_SELECTOR_OF, null, new InetSocketAddress(proxy.getHost(), proxy.getPort())));
+            }
+            if(request.getIfHandleHttps() && HttpURLConnectionUtil.Request.SSL_CONTEXT != null) {
+                invoke(CLIENT_SSL_CONTEXT, builder, HttpURLConnectionUtil.Request.SSL_CONTEXT);
+            }
+            invoke(CLIENT_EXECUTOR, builder, this.executor);
+            logger.debug("创建 HttpClient {}", k);
+            return invoke(CLIENT_BUILD, builder);
+        });
+    }
+
+    /** 网站地址转换为 URI, 有非法字符时编码 */
+    private static URI toUri(String site) throws MalformedURLException, URISyntaxException {
+        try {
+            return URI.create(site);
+        } catch(IllegalArgumentException e) {
+            URL url = new URL(site);
+            return new URI(url.getProtocol(), url.getUserInfo(), url.getHost(), url.getPort(), url.getPath(), url.getQuery(), url.getRef());
+        }
+    }
+
+    /** 反射调用, 异常转换为 RuntimeException */
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch(InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } catch(IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "httpclient(threads=" + this.threads + ", clients=" + this.clientMap.size() + ")";
+    }
+
+}
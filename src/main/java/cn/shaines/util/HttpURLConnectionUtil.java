@@ -3,16 +3,29 @@ package cn.shaines.util;
 import javax.net.ssl.*;
 import java.io.*;
 import java.net.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.KeyManagementException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
 
 /**
  * @description: 网络请求工具类
@@ -74,186 +87,382 @@ public class HttpURLConnectionUtil {
 
     /**
      * @description 域对象
+     *
+     * 状态保存在一个不可修改的快照(State)中, 修改时复制一份新的快照再替换(写时复制),
+     * build() 只读取当前快照, 不需要加锁, 请求头和携带参数与请求共享(请求修改时才复制).
+     * 请求完成之后写回的内容(请求头, cookie, 引荐...)与当前快照相同时不替换快照.
+     * readOnly() 返回共享同一个快照的只读视图: 读取最新的 cookie 等状态, 但是创建的请求不写回, 适合大量下载图片.
+     *
      * @date 2019-09-02 11:00:51
      * @author houyu for.houyu@foxmail.com
      */
     public static class Session {
 
-        private volatile String referer;                                                            // 推荐
-        private volatile Map<String, Object> header = new ConcurrentHashMap<>(32);     // 请求头
-        private volatile String cookie;                                                             // cookie
-        private volatile Map<String, Object> extra = new ConcurrentHashMap<>(32);      // 携带参数(可使用于响应之后的操作)
-        private volatile Proxy proxy;                                                               // 代理
-        private volatile String charset;                                                            // 参数编码
-        private volatile boolean ifEncodeUrl = false;                                               // 是否编码URL
-        private volatile boolean ifCache = false;                                                   // 是否缓存
-        private volatile int timeout = -1;                                                          // 连接超时(单位:毫秒)
-        private volatile boolean ifStableRedirection = true;                                        // 是否稳定重定向
-        private volatile boolean ifHandleHttps = true;                                              // 是否处理https
-        private volatile boolean ifEnableDefaultHostnameVerifier = false;                           // 是否启用默认主机名验证程序
-        private volatile HostnameVerifier hostnameVerifier;                                         // 主机名验证程序
-        private volatile SSLSocketFactory sslSocketFactory;                                         // SocketFactory
+        private final AtomicReference<State> state;                                                 // 当前快照(只读视图与原域对象共享)
+        private final boolean readOnly;                                                             // 是否只读视图
 
         ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
         /** 保护构造 */
-        protected Session() {}
-
-        public synchronized Request build(String site) {
-            return new Request(site)//
-                    .setReferer(this.referer)//
-                    .setHeader(new HashMap<>(this.header))//
-                    .setCookie(this.cookie)//
-                    .setExtra(new HashMap<>(this.extra))//
-                    .setProxy(this.proxy)//
-                    .setCharset(this.charset)//
-                    .setIfEncodeUrl(this.ifEncodeUrl)//
-                    .setIfCache(this.ifCache)//
-                    .setTimeout(this.timeout)//
-                    .setIfStableRedirection(this.ifStableRedirection)//
-                    .setIfHandleHttps(this.ifHandleHttps)//
-                    .setIfEnableDefaultHostnameVerifier(this.ifEnableDefaultHostnameVerifier)//
-                    .setHostnameVerifier(this.hostnameVerifier)//
-                    .setSslSocketFactory(this.sslSocketFactory)//
-                    .setSession(this);
+        protected Session() {
+            this(new AtomicReference<>(new State()), false);
+        }
+
+        private Session(AtomicReference<State> state, boolean readOnly) {
+            this.state = state;
+            this.readOnly = readOnly;
+        }
+
+        public Request build(String site) {
+            State state = this.state.get();
+            Request request = new Request(site)//
+                    .share(state.referer, state.header, state.cookie, state.extra)//
+                    .setProxy(state.proxy)//
+                    .setCharset(state.charset)//
+                    .setIfEncodeUrl(state.ifEncodeUrl)//
+                    .setIfCache(state.ifCache)//
+                    .setTimeout(state.timeout)//
+                    .setIfStableRedirection(state.ifStableRedirection)//
+                    .setIfHandleHttps(state.ifHandleHttps)//
+                    .setIfEnableDefaultHostnameVerifier(state.ifEnableDefaultHostnameVerifier)//
+                    .setIfKeepAlive(state.ifKeepAlive)//
+                    .setIfLightweight(state.ifLightweight)//
+                    .setHostnameVerifier(state.hostnameVerifier)//
+                    .setSslSocketFactory(state.sslSocketFactory)//
+                    .setEngine(state.engine)//
+                    .setDnsCache(state.dnsCache)//
+                    .setCookieJar(state.cookieJar)//
+                    .setRetryPolicy(state.retryPolicy)//
+                    .setHedgePolicy(state.hedgePolicy)//
+                    .setCircuitBreaker(state.circuitBreaker);
+            // 只读视图创建的请求不关联域对象, 响应之后不写回
+            return this.readOnly ? request : request.setSession(this);
         }
 
         public Request buildPost(String site) {
             return this.build(site).setMethod(Method.POST);
         }
 
+        /**
+         * 获取 只读视图: 与当前域对象共享状态(可以读取之后写入的 cookie 等), 创建的请求完成之后不写回,
+         * 修改只读视图时抛出 UnsupportedOperationException
+         */
+        public Session readOnly() {
+            return this.readOnly ? this : new Session(this.state, true);
+        }
+
+        /** 是否只读视图 */
+        public boolean isReadOnly() {
+            return this.readOnly;
+        }
+
+        /** 修改状态: 复制当前快照, 修改之后替换(并发修改时重试, change 可能执行多次) */
+        private Session update(Consumer<State> change) {
+            if(this.readOnly) {
+                throw new UnsupportedOperationException("只读域对象不可以修改");
+            }
+            for(;;) {
+                State current = this.state.get();
+                State next = current.copy();
+                change.accept(next);
+                if(this.state.compareAndSet(current, next)) {
+                    return this;
+                }
+            }
+        }
+
         ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
         // setter --- start
 
         protected Session setReferer(String referer) {
-            if (isNotEmpty(referer)) {
-                this.referer = referer;
+            if (isNotEmpty(referer) && !referer.equals(this.state.get().referer)) {
+                this.update(state -> state.referer = referer);
             }
             return this;
         }
 
         protected Session setHeader(Map<String, Object> header) {
-            if (isNotEmpty(header)) {
-                header.forEach((k, v) -> {
-                    if (isNotEmpty(k) && isNotEmpty(v)) {
-                        this.header.put(k, v);
-                    }
-                });
-                // 移除 content-length
-                this.header.remove(Constant.CONTENT_LENGTH);
-                this.header.remove("content-length");
-                // 移除 cookie
-                this.header.remove(Constant.REQUEST_COOKIE);
-                this.header.remove("cookie");
-                // 移除 referer
-                this.header.remove(Constant.REFERER);
-                this.header.remove("referer");
-                // 移除 content-type
-                this.header.remove(Constant.CONTENT_TYPE);
-                this.header.remove("content-type");
+            if (isNotEmpty(header) && this.changed(this.state.get().header, header, true)) {
+                this.update(state -> state.header = merge(state.header, header, true));
             }
             return this;
         }
 
         protected Session setCookie(String cookie) {
-            if (isNotEmpty(cookie)) {
-                synchronized(this) {
-                    this.cookie = this.cookie == null ? cookie : (this.cookie + "; " + cookie);// key1=val1; key2=val2
-                    this.cookie = Request.cardingCookie(this.cookie);
-                }
+            if (isNotEmpty(cookie) && !cookie.equals(this.state.get().cookie)) {
+                this.update(state -> {
+                    String merged = state.cookie == null ? cookie : (state.cookie + "; " + cookie);// key1=val1; key2=val2
+                    state.cookie = Request.cardingCookie(merged);
+                });
             }
             return this;
         }
 
         protected Session setExtra(Map<String, Object> extra) {
-            if(isNotEmpty(extra)) {
-                extra.forEach((k, v) -> {
-                    if(isNotEmpty(k) && isNotEmpty(v)) {
-                        this.extra.put(k, v);
-                    }
-                });
+            if(isNotEmpty(extra) && this.changed(this.state.get().extra, extra, false)) {
+                this.update(state -> state.extra = merge(state.extra, extra, false));
             }
             return this;
         }
 
+        /** 写回的内容是否有变化(请求没有修改时与快照是同一个对象) */
+        private boolean changed(Map<String, Object> current, Map<String, Object> update, boolean ifHeader) {
+            if(current == update) {
+                return false;
+            }
+            for(Map.Entry<String, Object> entry : update.entrySet()) {
+                String k = entry.getKey();
+                Object v = entry.getValue();
+                if(isNotEmpty(k) && isNotEmpty(v) && !(ifHeader && isRequestOnlyHeader(k)) && !v.equals(current.get(k))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** 合并, 返回新的不可修改的 Map */
+        private static Map<String, Object> merge(Map<String, Object> current, Map<String, Object> update, boolean ifHeader) {
+            Map<String, Object> map = new HashMap<>(current);
+            update.forEach((k, v) -> {
+                if (isNotEmpty(k) && isNotEmpty(v) && !(ifHeader && isRequestOnlyHeader(k))) {
+                    map.put(k, v);
+                }
+            });
+            return Collections.unmodifiableMap(map);
+        }
+
+        /**
+         * 只属于一个请求的请求头, 不写回域对象:
+         * content-length, cookie, referer, content-type, accept-encoding(每一个请求按照 Request.setIfAcceptEncoding 生成)
+         */
+        private static boolean isRequestOnlyHeader(String key) {
+            return Constant.CONTENT_LENGTH.equalsIgnoreCase(key)
+                    || Constant.REQUEST_COOKIE.equalsIgnoreCase(key)
+                    || Constant.REFERER.equalsIgnoreCase(key)
+                    || Constant.CONTENT_TYPE.equalsIgnoreCase(key)
+                    || Constant.ACCEPT_ENCODING.equalsIgnoreCase(key);
+        }
+
         protected Session setProxy(Proxy proxy) {
-            if (proxy != null) {
-                this.proxy = proxy;
+            if (proxy != null && proxy != this.state.get().proxy) {
+                this.update(state -> state.proxy = proxy);
             }
             return this;
         }
 
         protected Session setCharset(String charset) {
-            if (isNotEmpty(charset)) {
-                this.charset = charset;
+            if (isNotEmpty(charset) && !charset.equals(this.state.get().charset)) {
+                this.update(state -> state.charset = charset);
             }
             return this;
         }
 
         protected Session setIfEncodeUrl(boolean ifEncodeUrl) {
-            this.ifEncodeUrl = ifEncodeUrl;
+            if(ifEncodeUrl != this.state.get().ifEncodeUrl) {
+                this.update(state -> state.ifEncodeUrl = ifEncodeUrl);
+            }
             return this;
         }
 
         protected Session setIfCache(boolean ifCache) {
-            this.ifCache = ifCache;
+            if(ifCache != this.state.get().ifCache) {
+                this.update(state -> state.ifCache = ifCache);
+            }
             return this;
         }
 
         protected Session setTimeout(int timeout) {
-            this.timeout = timeout;
+            if(timeout != this.state.get().timeout) {
+                this.update(state -> state.timeout = timeout);
+            }
             return this;
         }
 
         protected Session setIfStableRedirection(boolean ifStableRedirection) {
-            this.ifStableRedirection = ifStableRedirection;
+            if(ifStableRedirection != this.state.get().ifStableRedirection) {
+                this.update(state -> state.ifStableRedirection = ifStableRedirection);
+            }
             return this;
         }
 
         protected Session setIfHandleHttps(boolean ifHandleHttps) {
-            this.ifHandleHttps = ifHandleHttps;
+            if(ifHandleHttps != this.state.get().ifHandleHttps) {
+                this.update(state -> state.ifHandleHttps = ifHandleHttps);
+            }
             return this;
         }
 
         protected Session setIfEnableDefaultHostnameVerifier(boolean ifEnableDefaultHostnameVerifier) {
-            this.ifEnableDefaultHostnameVerifier = ifEnableDefaultHostnameVerifier;
+            if(ifEnableDefaultHostnameVerifier != this.state.get().ifEnableDefaultHostnameVerifier) {
+                this.update(state -> state.ifEnableDefaultHostnameVerifier = ifEnableDefaultHostnameVerifier);
+            }
+            return this;
+        }
+
+        /** 设置 是否复用连接, 之后通过该域对象创建的请求读完响应之后不断开, 由JDK的连接缓存复用 */
+        public Session setIfKeepAlive(boolean ifKeepAlive) {
+            if(ifKeepAlive != this.state.get().ifKeepAlive) {
+                this.update(state -> state.ifKeepAlive = ifKeepAlive);
+            }
+            return this;
+        }
+
+        /** 设置 是否使用轻量响应, 之后通过该域对象创建的请求读完响应之后不保留连接和完整的响应头 */
+        public Session setIfLightweight(boolean ifLightweight) {
+            if(ifLightweight != this.state.get().ifLightweight) {
+                this.update(state -> state.ifLightweight = ifLightweight);
+            }
             return this;
         }
 
         protected Session setHostnameVerifier(HostnameVerifier hostnameVerifier) {
-            if (hostnameVerifier != null) {
-                this.hostnameVerifier = hostnameVerifier;
+            if (hostnameVerifier != null && hostnameVerifier != this.state.get().hostnameVerifier) {
+                this.update(state -> state.hostnameVerifier = hostnameVerifier);
             }
             return this;
         }
 
         protected Session setSslSocketFactory(SSLSocketFactory sslSocketFactory) {
-            if(sslSocketFactory != null) {
-                this.sslSocketFactory = sslSocketFactory;
+            if(sslSocketFactory != null && sslSocketFactory != this.state.get().sslSocketFactory) {
+                this.update(state -> state.sslSocketFactory = sslSocketFactory);
+            }
+            return this;
+        }
+
+        /** 设置 执行请求的引擎, 之后通过该域对象创建的请求都使用该引擎 */
+        public Session setEngine(Engine engine) {
+            if(engine != null) {
+                this.update(state -> state.engine = engine);
             }
             return this;
         }
 
+        /** 获取 执行请求的引擎 */
+        public Engine getEngine() {
+            return this.state.get().engine;
+        }
+
+        /** 设置 DNS 缓存, 之后通过该域对象创建的请求连接之前先通过该缓存解析主机 */
+        public Session setDnsCache(DnsCache dnsCache) {
+            this.update(state -> state.dnsCache = dnsCache);
+            return this;
+        }
+
+        /** 获取 DNS 缓存 */
+        public DnsCache getDnsCache() {
+            return this.state.get().dnsCache;
+        }
+
+        /**
+         * 设置 cookie 存储, 之后通过该域对象创建的请求从存储中获取 cookie(按照域名和路径匹配), 响应的 cookie 保存到存储中(不再合并到 cookie 字符串)
+         */
+        public Session setCookieJar(CookieJar cookieJar) {
+            this.update(state -> state.cookieJar = cookieJar);
+            return this;
+        }
+
+        /** 获取 cookie 存储 */
+        public CookieJar getCookieJar() {
+            return this.state.get().cookieJar;
+        }
+
+        /** 设置 重试策略, 之后通过该域对象创建的请求失败时按照该策略重试 */
+        public Session setRetryPolicy(RetryPolicy retryPolicy) {
+            this.update(state -> state.retryPolicy = retryPolicy);
+            return this;
+        }
+
+        /** 获取 重试策略 */
+        public RetryPolicy getRetryPolicy() {
+            return this.state.get().retryPolicy;
+        }
+
+        /** 设置 对冲策略, 之后通过该域对象创建的请求很慢(没有收到响应头)时按照该策略再发送一个请求 */
+        public Session setHedgePolicy(HedgePolicy hedgePolicy) {
+            this.update(state -> state.hedgePolicy = hedgePolicy);
+            return this;
+        }
+
+        /** 获取 对冲策略 */
+        public HedgePolicy getHedgePolicy() {
+            return this.state.get().hedgePolicy;
+        }
+
+        /** 设置 按主机熔断, 之后通过该域对象创建的请求在主机熔断时直接失败 */
+        public Session setCircuitBreaker(CircuitBreaker circuitBreaker) {
+            this.update(state -> state.circuitBreaker = circuitBreaker);
+            return this;
+        }
+
+        /** 获取 按主机熔断 */
+        public CircuitBreaker getCircuitBreaker() {
+            return this.state.get().circuitBreaker;
+        }
+
         @Override
         public String toString() {
+            State state = this.state.get();
             final StringBuilder sb = new StringBuilder("Session{");
-            sb.append("referer='").append(referer).append('\'');
-            sb.append(", header=").append(header);
-            sb.append(", cookie='").append(cookie).append('\'');
-            sb.append(", extra=").append(extra);
-            sb.append(", proxy=").append(proxy);
-            sb.append(", charset='").append(charset).append('\'');
-            sb.append(", ifEncodeUrl=").append(ifEncodeUrl);
-            sb.append(", ifCache=").append(ifCache);
-            sb.append(", timeout=").append(timeout);
-            sb.append(", ifStableRedirection=").append(ifStableRedirection);
-            sb.append(", ifHandleHttps=").append(ifHandleHttps);
-            sb.append(", ifEnableDefaultHostnameVerifier=").append(ifEnableDefaultHostnameVerifier);
-            sb.append(", hostnameVerifier=").append(hostnameVerifier);
-            sb.append(", sslSocketFactory=").append(sslSocketFactory);
+            sb.append("referer='").append(state.referer).append('\'');
+            sb.append(", header=").append(state.header);
+            sb.append(", cookie='").append(state.cookie).append('\'');
+            sb.append(", extra=").append(state.extra);
+            sb.append(", proxy=").append(state.proxy);
+            sb.append(", charset='").append(state.charset).append('\'');
+            sb.append(", ifEncodeUrl=").append(state.ifEncodeUrl);
+            sb.append(", ifCache=").append(state.ifCache);
+            sb.append(", timeout=").append(state.timeout);
+            sb.append(", ifStableRedirection=").append(state.ifStableRedirection);
+            sb.append(", ifHandleHttps=").append(state.ifHandleHttps);
+            sb.append(", ifEnableDefaultHostnameVerifier=").append(state.ifEnableDefaultHostnameVerifier);
+            sb.append(", ifKeepAlive=").append(state.ifKeepAlive);
+            sb.append(", ifLightweight=").append(state.ifLightweight);
+            sb.append(", hostnameVerifier=").append(state.hostnameVerifier);
+            sb.append(", sslSocketFactory=").append(state.sslSocketFactory);
+            sb.append(", engine=").append(state.engine);
+            sb.append(", dnsCache=").append(state.dnsCache);
+            sb.append(", cookieJar=").append(state.cookieJar);
+            sb.append(", retryPolicy=").append(state.retryPolicy);
+            sb.append(", hedgePolicy=").append(state.hedgePolicy);
+            sb.append(", circuitBreaker=").append(state.circuitBreaker);
+            sb.append(", readOnly=").append(this.readOnly);
             sb.append('}');
             return sb.toString();
         }
+
+        /** 域对象的快照, 发布之后不再修改 */
+        private static final class State implements Cloneable {
+            private String referer;                                                                 // 推荐
+            private Map<String, Object> header = Collections.emptyMap();                           // 请求头(不可修改)
+            private String cookie;                                                                  // cookie
+            private Map<String, Object> extra = Collections.emptyMap();                            // 携带参数(不可修改)
+            private Proxy proxy;                                                                    // 代理
+            private String charset;                                                                 // 参数编码
+            private boolean ifEncodeUrl = false;                                                    // 是否编码URL
+            private boolean ifCache = false;                                                        // 是否缓存
+            private int timeout = -1;                                                               // 连接超时(单位:毫秒)
+            private boolean ifStableRedirection = true;                                             // 是否稳定重定向
+            private boolean ifHandleHttps = true;                                                   // 是否处理https
+            private boolean ifEnableDefaultHostnameVerifier = false;                                // 是否启用默认主机名验证程序
+            private boolean ifKeepAlive = false;                                                    // 是否复用连接(读完响应之后不断开)
+            private boolean ifLightweight = false;                                                  // 是否使用轻量响应(不保留连接和完整的响应头)
+            private HostnameVerifier hostnameVerifier;                                              // 主机名验证程序
+            private SSLSocketFactory sslSocketFactory;                                              // SocketFactory
+            private Engine engine = Engine.BLOCKING;                                                // 执行请求的引擎
+            private DnsCache dnsCache;                                                              // DNS 缓存, null表示使用 JVM 的缓存
+            private CookieJar cookieJar;                                                            // cookie 存储, null表示使用 cookie 字符串
+            private RetryPolicy retryPolicy;                                                        // 重试策略, null表示不重试
+            private HedgePolicy hedgePolicy;                                                        // 对冲策略, null表示不对冲
+            private CircuitBreaker circuitBreaker;                                                  // 按主机熔断, null表示不熔断
+
+            private State copy() {
+                try {
+                    return (State) super.clone();
+                } catch(CloneNotSupportedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
     }
 
     /**
@@ -278,16 +487,36 @@ public class HttpURLConnectionUtil {
         private boolean ifStableRedirection = true;                     // 是否稳定重定向
         private boolean ifHandleHttps = true;                           // 是否处理https
         private boolean ifEnableDefaultHostnameVerifier = false;        // 是否启用默认主机名验证程序
+        private boolean ifKeepAlive = false;                            // 是否复用连接(读完响应之后不断开)
+        private boolean ifLightweight = false;                          // 是否使用轻量响应(不保留连接和完整的响应头)
+        private boolean ifAcceptEncoding = true;                        // 是否接受压缩的响应(Accept-Encoding)
         private List<String> redirectUrlList;                           // 重定向的url列表
         private HttpURLConnection http = null;                          // HttpURLConnection对象
         private HostnameVerifier hostnameVerifier;                      // 主机名验证程序
         private SSLSocketFactory sslSocketFactory;                      // SocketFactory
         private Session session;                                        // 域对象
+        private String digestAlgorithm;                                 // 下载时同时计算响应体摘要的算法(如 MD5)
+        private BodySink bodySink;                                      // 响应体写入的位置, null表示保存在内存
+        private HostRateLimiter rateLimiter;                            // 按主机限流(不传递到域对象)
+        private Engine engine = Engine.BLOCKING;                        // 执行请求的引擎
+        private DnsCache dnsCache;                                      // DNS 缓存(不传递到域对象)
+        private CookieJar cookieJar;                                    // cookie 存储(不传递到域对象)
+        private String sentCookie;                                      // 上一次发送的请求头 Cookie(重定向时不再合并到携带的 cookie)
+        private RetryPolicy retryPolicy;                                // 重试策略(不传递到域对象)
+        private HedgePolicy hedgePolicy;                                // 对冲策略(不传递到域对象)
+        private CircuitBreaker circuitBreaker;                          // 按主机熔断(不传递到域对象)
+        private CompletableFuture<Void> firstByte;                      // 收到响应头时完成(对冲策略统计首字节耗时), null表示不通知
+        private volatile boolean aborted = false;                       // 是否已经中止
+        private volatile Runnable abortAction;                          // 中止时执行(断开连接/取消请求)
+        private String sessionReferer;                                  // 域对象的引荐(请求头中没有 Referer 时使用)
+        private boolean headerShared = false;                           // 请求头是否与域对象共享(修改之前复制)
+        private boolean extraShared = false;                            // 携带参数是否与域对象共享(修改之前复制)
         ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
         private static Map<String, Object> DEFAULT_HEADER;              // 默认的请求头
         private static HostnameVerifier HOSTNAME_VERIFIER;              // 设置主机名验证程序
         private static SSLSocketFactory SSL_SOCKET_FACTORY;             // SocketFactory
+        static SSLContext SSL_CONTEXT;                                  // 信任所有证书的 SSLContext(非阻塞引擎使用)
 
 
         static {
@@ -295,7 +524,6 @@ public class HttpURLConnectionUtil {
             DEFAULT_HEADER = new HashMap<>(8);
             DEFAULT_HEADER.put("Accept", "text/html,application/xhtml+xml,application/xml,application/json;q=0.9,*/*;q=0.8");
             DEFAULT_HEADER.put("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/68.0.3440.84 Safari/537.36 shaines.cn");
-            DEFAULT_HEADER.put("Accept-Encoding", "gzip");
             DEFAULT_HEADER.put("Accept-Language", "zh-CN,zh;q=0.8");
             // DEFAULT_HEADER.put("Content-Type", "application/x-www-form-urlencoded");
             //
@@ -322,7 +550,9 @@ public class HttpURLConnectionUtil {
             try {
                 SSLContext sslContext = SSLContext.getInstance("TLS");
                 sslContext.init(null, new TrustManager[] { x509TrustManager }, new SecureRandom());
-                SSL_SOCKET_FACTORY = sslContext.getSocketFactory();
+                SSL_CONTEXT = sslContext;
+                // 统计新建的https连接, 用于计算连接复用率
+                SSL_SOCKET_FACTORY = new CountingSSLSocketFactory(sslContext.getSocketFactory());
             } catch(NoSuchAlgorithmException | KeyManagementException e) {
                 logger.warn("init SSLContext has exception ", e);
             }
@@ -337,24 +567,240 @@ public class HttpURLConnectionUtil {
 
         /** 执行 请求 */
         public Response execute() {
+            if(this.engine == Engine.BLOCKING) {
+                return this.hedgePolicy == null ? this.executeAttempt() : this.hedgePolicy.execute(this);
+            }
+            try {
+                return this.executeAsync().get();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch(ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+            }
+        }
+
+        /**
+         * 执行 请求, 响应体直接写入 sink(文件, 输出流, 通道), 不在内存中保存完整的响应体, Response.getBody() 为空
+         */
+        public Response execute(BodySink sink) {
+            return this.setBodySink(sink).execute();
+        }
+
+        /**
+         * 异步执行 请求, 由引擎决定使用的线程: 阻塞引擎在线程池中执行, 非阻塞引擎由少量线程驱动所有请求
+         */
+        public CompletableFuture<Response> executeAsync() {
+            return this.hedgePolicy == null ? this.executeAttemptAsync() : this.hedgePolicy.executeAsync(this);
+        }
+
+        /** 异步执行 请求, 响应体直接写入 sink */
+        public CompletableFuture<Response> executeAsync(BodySink sink) {
+            return this.setBodySink(sink).executeAsync();
+        }
+
+        /** 阻塞执行一次 请求(失败时按照重试策略重试), 不对冲 */
+        Response executeAttempt() {
+            return this.retryPolicy == null ? this.executeBlocking() : this.retryPolicy.execute(this);
+        }
+
+        /** 异步执行一次 请求(失败时按照重试策略重试), 不对冲 */
+        CompletableFuture<Response> executeAttemptAsync() {
+            return this.retryPolicy == null ? this.engine.executeAsync(this) : this.retryPolicy.executeAsync(this);
+        }
+
+        /** 使用 HttpURLConnection 阻塞执行 请求 */
+        Response executeBlocking() {
+            // 已经中止时不再执行(包括重定向和重试)
+            this.checkAborted();
             // 初始化GET param
             this.handleGETParamWithUrl();
+            // 熔断: 主机熔断时直接失败(不连接)
+            String breakerHost = this.acquireCircuitBreaker();
+            Response response;
+            try {
+                response = this.executeHop();
+            } catch(RuntimeException | Error e) {
+                this.reportCircuitBreaker(breakerHost, 0, e);
+                throw e;
+            }
+            if(response == null) {
+                // 重定向的中间请求不记录, 只记录最后一个请求
+                this.releaseCircuitBreaker(breakerHost);
+                return this.executeBlocking();// 递归实现重定向
+            }
+            this.reportCircuitBreaker(breakerHost, response.getCode(), null);
+            return response;
+        }
+
+        /** 连接一个网址并读取响应, 需要重定向时返回null */
+        private Response executeHop() {
+            // 解析主机(DNS 缓存)
+            this.resolveHost();
             // 初始化连接
             this.initConnection();
-            // 发送数据包裹
-            this.send();
-            // 处理重定向
-            boolean ifRedirect = this.handleRedirect();
-            if(ifRedirect) {
-                return this.execute();// 递归实现重定向
+            this.onAbort(this.http::disconnect);
+            // 限流
+            String host = this.acquireRateLimiter();
+            Response response;
+            try {
+                // 发送数据包裹
+                this.send();
+                // 处理重定向
+                boolean ifRedirect = this.handleRedirect();
+                if(ifRedirect) {
+                    return null;
+                }
+                // 等待响应头时被中止(连接已经断开)
+                this.checkAborted();
+                this.notifyFirstByte();
+                this.handleSession();
+                // 返回响应
+                response = new Response(this.http, this.redirectUrlList, this.extra, this.session, this.digestAlgorithm, this.ifKeepAlive, this.bodySink);
+                if(this.ifLightweight) {
+                    response.lighten();
+                }
+            } catch(RuntimeException e) {
+                if(this.rateLimiter != null && !this.aborted) {
+                    // 连接异常也当作被限制(中止的请求除外)
+                    this.rateLimiter.backoff(host);
+                }
+                throw e;
+            }
+            this.reportRateLimiter(host, response.getCode());
+            return response;
+        }
+
+        /**
+         * 通过 DNS 缓存解析主机, 连接时使用 JVM 缓存中已经解析的地址, 解析失败时直接失败
+         */
+        private void resolveHost() {
+            if(this.dnsCache == null || this.proxy != null) {
+                return;
+            }
+            try {
+                this.dnsCache.resolve(new URL(this.site).getHost());
+            } catch(IOException e) {
+                logger.warn("{} resolve host has exception {}", this.site, e.toString());
+                throw new RuntimeException(e);
+            }
+        }
+
+        /**
+         * 重试之前恢复: 网址恢复为第一次执行之前的网址(重新拼接 GET 参数, 重新处理重定向)
+         * @param site 第一次执行之前的网址
+         */
+        void resetForRetry(String site) {
+            this.site = site;
+            this.redirectUrlList = null;
+            this.http = null;
+        }
+
+        /**
+         * 中止 请求: 断开连接(阻塞引擎)或者取消请求(非阻塞引擎), 正在读取的响应失败, 之后不再重定向和重试
+         * 对冲请求中先完成的请求由对冲策略中止另一个请求
+         */
+        public void abort() {
+            this.aborted = true;
+            Runnable abortAction = this.abortAction;
+            if(abortAction != null) {
+                abortAction.run();
+            }
+        }
+
+        /** 是否已经中止 */
+        public boolean isAborted() {
+            return this.aborted;
+        }
+
+        /** 设置 中止时执行的操作(引擎发送请求时设置), 已经中止时立即执行 */
+        void onAbort(Runnable abortAction) {
+            this.abortAction = abortAction;
+            if(this.aborted) {
+                abortAction.run();
+            }
+        }
+
+        /** 已经中止时抛出 CancellationException */
+        void checkAborted() {
+            if(this.aborted) {
+                throw new CancellationException(this.site + " 请求已经中止");
+            }
+        }
+
+        /** 收到响应头(第一个字节)之后通知对冲策略 */
+        private void notifyFirstByte() {
+            if(this.firstByte != null && !this.firstByte.isDone()) {
+                try {
+                    // 非稳定重定向时还没有读取响应头
+                    this.http.getResponseCode();
+                } catch(IOException e) {
+                    return;
+                }
+                this.firstByte.complete(null);
+            }
+        }
+
+        /** 主机熔断时抛出 CircuitOpenException, 返回主机 */
+        String acquireCircuitBreaker() {
+            if(this.circuitBreaker == null) {
+                return null;
+            }
+            String host = CircuitBreaker.hostOf(this.site);
+            if(host != null) {
+                this.circuitBreaker.acquire(host);
+            }
+            return host;
+        }
+
+        /**
+         * 记录主机的熔断结果: 异常链中有 IOException 或者响应状态码 5xx 时失败
+         * 中止的请求和其他异常(不是主机的问题)不记录, 只释放许可
+         * @param code 响应状态码, 异常时为0
+         * @param error 异常, 没有时为null
+         */
+        void reportCircuitBreaker(String host, int code, Throwable error) {
+            if(this.circuitBreaker == null || host == null) {
+                return;
+            }
+            if(this.aborted || (error != null && !CircuitBreaker.isFailure(error))) {
+                this.circuitBreaker.release(host);
+            } else {
+                this.circuitBreaker.record(host, error == null && !CircuitBreaker.isFailure(code));
+            }
+        }
+
+        /** 获取许可之后没有结果(重定向的中间请求, 发送之前的异常)时释放主机的熔断许可 */
+        void releaseCircuitBreaker(String host) {
+            if(this.circuitBreaker != null && host != null) {
+                this.circuitBreaker.release(host);
+            }
+        }
+
+        /** 获取限流令牌, 返回主机 */
+        private String acquireRateLimiter() {
+            if(this.rateLimiter == null) {
+                return null;
+            }
+            String host = HostRateLimiter.hostOf(this.http.getURL());
+            try {
+                this.rateLimiter.acquire(host);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            return host;
+        }
+
+        /** 根据响应状态码调整限流速率 */
+        private void reportRateLimiter(String host, int code) {
+            if(this.rateLimiter != null) {
+                this.rateLimiter.onResponse(host, code, this.http.getHeaderField(Constant.RETRY_AFTER));
             }
-            this.handleSession();
-            // 返回响应
-            return new Response(this.http, this.redirectUrlList, this.extra, this.session);
         }
 
         /** 处理 域对象 */
-        private void handleSession() {
+        void handleSession() {
             if (this.session != null) {
                 this.session
                         // .setReferer(this.getSite())//
@@ -369,6 +815,8 @@ public class HttpURLConnectionUtil {
                         .setIfStableRedirection(this.ifStableRedirection)//
                         .setIfHandleHttps(this.ifHandleHttps)//
                         .setIfEnableDefaultHostnameVerifier(this.ifEnableDefaultHostnameVerifier)//
+                        .setIfKeepAlive(this.ifKeepAlive)//
+                        .setIfLightweight(this.ifLightweight)//
                         .setHostnameVerifier(this.hostnameVerifier)//
                         .setSslSocketFactory(this.sslSocketFactory);
             }
@@ -382,20 +830,17 @@ public class HttpURLConnectionUtil {
                 try {
                     responseCode = this.http.getResponseCode();
                 } catch(IOException var3) {
-                    logger.warn("{} get response code has exception", this.site);
+                    if(!this.aborted) {
+                        logger.warn("{} get response code has exception", this.site);
+                    }
                     responseCode = 0;
                 }
-                if(responseCode == Constant.REDIRECT_CODE_301
-                        || responseCode == Constant.REDIRECT_CODE_302
-                        || responseCode == Constant.REDIRECT_CODE_303) {
-                    this.site = this.http.getHeaderField(Constant.LOCATION);
-                    this.redirectUrlList = this.redirectUrlList == null ? new ArrayList<>(8) : this.redirectUrlList;
-                    this.redirectUrlList.add(this.site);
-                    if(this.redirectUrlList.size() < 8) {
+                if(this.followRedirect(responseCode, this.http.getHeaderField(Constant.LOCATION))) {
+                    this.storeRedirectCookies(this.http.getURL().toString(), this.http.getHeaderFields());
+                    if(!this.ifKeepAlive || !drain(this.http, responseCode)) {
                         this.http.disconnect();     // 断开本次连接, 然后重新请求
-                        logger.debug("{} request redirecting ", this.site);
-                        return true;
                     }
+                    return true;
                 }
             } else {
                 // 使用默认的重定向规则处理, 无序手动处理, 但是有可能出现重定向失败
@@ -404,6 +849,49 @@ public class HttpURLConnectionUtil {
             return false;
         }
 
+        /**
+         * 读完并关闭响应流(不断开连接), 连接可以被复用
+         * @return 读取失败返回 false
+         */
+        private static boolean drain(HttpURLConnection http, int responseCode) {
+            try(InputStream inputStream = responseCode < 400 ? http.getInputStream() : http.getErrorStream()) {
+                if(inputStream != null) {
+                    byte[] bytes = new byte[512];
+                    while(inputStream.read(bytes) > -1) {
+                        // 丢弃重定向的响应体
+                    }
+                }
+                return true;
+            } catch(IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * 是否需要重定向, 需要时更新网站地址(最多重定向8次)
+         * @param responseCode 响应状态码
+         * @param location 响应头 Location
+         */
+        boolean followRedirect(int responseCode, String location) {
+            if(responseCode == Constant.REDIRECT_CODE_301
+                    || responseCode == Constant.REDIRECT_CODE_302
+                    || responseCode == Constant.REDIRECT_CODE_303) {
+                try {
+                    // 相对地址相对于当前地址
+                    this.site = new URL(new URL(this.site), location).toString();
+                } catch(MalformedURLException e) {
+                    this.site = location;
+                }
+                this.redirectUrlList = this.redirectUrlList == null ? new ArrayList<>(8) : this.redirectUrlList;
+                this.redirectUrlList.add(this.site);
+                if(this.redirectUrlList.size() < 8) {
+                    logger.debug("{} request redirecting ", this.site);
+                    return true;
+                }
+            }
+            return false;
+        }
+
         /** 发送数据 */
         private void send() {
             try {
@@ -421,14 +909,26 @@ public class HttpURLConnectionUtil {
 
         /** 处理 ContentType 和 传输内容 */
         private void handleContentTypeAndBody() throws IOException {
+            byte[] body = this.buildBody();
+            if(body != null) {
+                try(OutputStream outputStream = this.http.getOutputStream()) {
+                    // 使用 try-with-resource 方式处理流, 无需手动关闭流操作
+                    outputStream.write(body);
+                    outputStream.flush();
+                }
+            }
+        }
+
+        /** 处理 ContentType, 返回需要传输的内容, GET 返回 null */
+        byte[] buildBody() throws IOException {
             if(!Method.GET.equals(this.method)) {
                 // non GET
                 /* handle ContentType 有可能多个content-type, 大小写不一致的问题 */
                 String contentType = Objects.toString(this.header.get(Constant.CONTENT_TYPE), null);
                 if(isEmpty(contentType)) {
-                    contentType = Objects.toString(this.header.remove("content-type"), null);
+                    contentType = Objects.toString(this.mutableHeader().remove("content-type"), null);
                 } else {
-                    this.header.remove("content-type");
+                    this.mutableHeader().remove("content-type");
                 }
                 if(isEmpty(contentType)) {
                     // 没有 Content-Type
@@ -461,12 +961,9 @@ public class HttpURLConnectionUtil {
                     paramString = Objects.toString(paramString, "");
                     body = paramString.getBytes(this.charset);
                 }
-                try(OutputStream outputStream = this.http.getOutputStream()) {
-                    // 使用 try-with-resource 方式处理流, 无需手动关闭流操作
-                    outputStream.write(body);
-                    outputStream.flush();
-                }
+                return body;
             }
+            return null;
         }
 
         /** 初始化连接 */
@@ -492,7 +989,7 @@ public class HttpURLConnectionUtil {
                 this.http.setRequestMethod(this.method.name());
             } catch(IOException e) {
                 logger.warn("{} open connection has exception", this.site);
-                throw new RuntimeException("打开连接出错" + e.getMessage());
+                throw new RuntimeException("打开连接出错" + e.getMessage(), e);
             }
             //
             this.http.setDoInput(true);
@@ -501,10 +998,8 @@ public class HttpURLConnectionUtil {
                 http.setDoOutput(true);
                 http.setUseCaches(false);
             }
-            // 初始化填充默认请求头
-            this.initAndFillDefaultHeader();
-            // 设置cookie
-            this.setCookie();
+            // 初始化请求头和cookie
+            this.prepareHeader();
             // 设置请求头到连接中
             this.header.forEach((k, v) -> this.http.setRequestProperty(k, String.valueOf(v)));
             // 设置缓存
@@ -515,19 +1010,45 @@ public class HttpURLConnectionUtil {
             this.http.setInstanceFollowRedirects(!(this.ifStableRedirection));
         }
 
-        /** 设置 Cookie到连接中 */
+        /** 初始化填充默认请求头, 设置cookie */
+        void prepareHeader() {
+            // 初始化填充默认请求头
+            this.initAndFillDefaultHeader();
+            // 设置cookie
+            this.setCookie();
+        }
+
+        /** 设置 Cookie到连接中: cookie 存储中匹配的 cookie + 携带的 cookie(优先) */
         private void setCookie() {
+            boolean merged = false;
             String headerCookie = Objects.toString(this.header.remove(Constant.REQUEST_COOKIE), null);
-            if (headerCookie != null) {
+            if (headerCookie != null && !headerCookie.equals(this.sentCookie)) {
                 this.cookie = isEmpty(this.cookie) ? headerCookie : (headerCookie + "; " + this.cookie);
+                merged = true;
             }
             headerCookie = Objects.toString(this.header.remove("cookie"), null);
-            if (headerCookie != null) {
+            if (headerCookie != null && !headerCookie.equals(this.sentCookie)) {
                 this.cookie = isEmpty(this.cookie) ? headerCookie : (headerCookie + "; " + this.cookie);
+                merged = true;
             }
-            if(isNotEmpty(this.cookie)) {
+            if(merged) {
+                // 携带的 cookie 已经整理过(Request.setCookie), 只有合并了请求头中的 cookie 时需要重新整理
                 this.cookie = cardingCookie(this.cookie);
-                this.addHead(Constant.REQUEST_COOKIE, this.cookie);
+            }
+            // cookie 存储中的 cookie 只用于本次发送(重定向时按照新的网址重新获取), 不合并到携带的 cookie
+            String jarCookie = this.cookieJar == null ? null : this.cookieJar.cookieHeader(this.site);
+            this.sentCookie = isEmpty(this.cookie) ? jarCookie : (jarCookie == null ? this.cookie : cardingCookie(jarCookie + "; " + this.cookie));
+            this.addHead(Constant.REQUEST_COOKIE, this.sentCookie);
+        }
+
+        /**
+         * 保存重定向响应的 cookie 到域对象的 cookie 存储(比如登录之后 302 响应设置的 cookie), 只读视图创建的请求不保存
+         * @param site 重定向之前的网址
+         */
+        void storeRedirectCookies(String site, Map<String, List<String>> header) {
+            CookieJar cookieJar = this.session == null ? null : this.session.getCookieJar();
+            if(cookieJar != null) {
+                cookieJar.saveFromResponse(site, Response.headerValues(header, Constant.RESPONSE_COOKIE));
             }
         }
 
@@ -535,7 +1056,9 @@ public class HttpURLConnectionUtil {
         private void addAndRefreshHead(String key, Object value) {
             if (isNotEmpty(key) && isNotEmpty(value)) {
                 this.addHead(key, value);
-                http.setRequestProperty(key, String.valueOf(value));
+                if(this.http != null) {
+                    this.http.setRequestProperty(key, String.valueOf(value));
+                }
             }
         }
 
@@ -543,10 +1066,19 @@ public class HttpURLConnectionUtil {
         private void initAndFillDefaultHeader() {
             HashMap<String, Object> initMap = new HashMap<>(16);
             initMap.putAll(DEFAULT_HEADER);
+            // 声明支持的压缩方式(已注册的解码器), 不接受压缩时(比如已经压缩过的图片)使用 identity
+            initMap.put(Constant.ACCEPT_ENCODING, this.ifAcceptEncoding ? ContentDecoder.acceptEncoding() : ContentDecoder.IDENTITY);
+            if(isNotEmpty(this.sessionReferer)) {
+                initMap.put(Constant.REFERER, this.sessionReferer);
+            }
             if(isNotEmpty(this.header)) {
+                if(this.header.containsKey("referer")) {
+                    initMap.remove(Constant.REFERER);
+                }
                 initMap.putAll(this.header);
             }
             this.header = initMap;
+            this.headerShared = false;
         }
 
         /** 打开连接 */
@@ -583,7 +1115,7 @@ public class HttpURLConnectionUtil {
         }
 
         /** 设置 如果是GET, 则将参数写入url中 */
-        private void handleGETParamWithUrl() {
+        void handleGETParamWithUrl() {
             // 校验url地址
             Objects.requireNonNull(this.site, "网站地址不可以为空");
             // 校验url协议 要求url必须是http / https协议, 默认使用http协议
@@ -659,8 +1191,9 @@ public class HttpURLConnectionUtil {
             if (isNotEmpty(header)) {
                 if (isEmpty(this.header)) {
                     this.header = header;
+                    this.headerShared = false;
                 }else {
-                    this.header.putAll(header);
+                    this.mutableHeader().putAll(header);
                 }
             }
             return this;
@@ -683,8 +1216,9 @@ public class HttpURLConnectionUtil {
             if (isNotEmpty(extra)) {
                 if (isEmpty(this.extra)) {
                     this.extra = extra;
+                    this.extraShared = false;
                 }else {
-                    this.extra.putAll(extra);
+                    this.mutableExtra().putAll(extra);
                 }
             }
             return this;
@@ -799,19 +1333,174 @@ public class HttpURLConnectionUtil {
             return this;
         }
 
-        /** 设置 域对象 */
-        protected Request setSession(Session session) {
-            if (session != null) {
+        /** 设置 是否复用连接: 读完响应之后只关闭响应流, 不断开连接, 由JDK的连接缓存复用(见 KeepAlive.configure) */
+        public Request setIfKeepAlive(boolean ifKeepAlive) {
+            this.ifKeepAlive = ifKeepAlive;
+            return this;
+        }
+
+        /**
+         * 设置 是否使用轻量响应: 读完响应之后不保留 HttpURLConnection 和完整的响应头(只保留常用的几个, 见 Response.lighten),
+         * 适合大量只需要响应体的请求(比如分页的 JSON)
+         */
+        public Request setIfLightweight(boolean ifLightweight) {
+            this.ifLightweight = ifLightweight;
+            return this;
+        }
+
+        /** 设置 是否接受压缩的响应, 已经压缩过的内容(比如图片)设置为 false, 避免服务端压缩和本地无意义的解压 */
+        public Request setIfAcceptEncoding(boolean ifAcceptEncoding) {
+            this.ifAcceptEncoding = ifAcceptEncoding;
+            return this;
+        }
+
+        /** 设置 下载时同时计算响应体摘要的算法(如 MD5 / SHA-256), 通过 Response.getDigest() 获取 */
+        public Request setDigestAlgorithm(String digestAlgorithm) {
+            this.digestAlgorithm = digestAlgorithm;
+            return this;
+        }
+
+        /** 设置 响应体写入的位置(见 BodySink), null表示保存在内存 */
+        public Request setBodySink(BodySink bodySink) {
+            this.bodySink = bodySink;
+            return this;
+        }
+
+        /** 设置 按主机限流, 请求前获取令牌, 根据响应状态码调整速率 */
+        public Request setRateLimiter(HostRateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        /** 设置 执行请求的引擎 */
+        public Request setEngine(Engine engine) {
+            if(engine != null) {
+                this.engine = engine;
+            }
+            return this;
+        }
+
+        /** 设置 DNS 缓存, 连接之前先通过该缓存解析主机(使用代理时不解析) */
+        public Request setDnsCache(DnsCache dnsCache) {
+            this.dnsCache = dnsCache;
+            return this;
+        }
+
+        /** 设置 重试策略, 失败或者响应状态码可以重试时按照该策略重新执行 */
+        public Request setRetryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /** 设置 对冲策略, 超过该主机首字节耗时的百分位还没有收到响应头时再发送一个请求, 使用先完成的响应 */
+        public Request setHedgePolicy(HedgePolicy hedgePolicy) {
+            this.hedgePolicy = hedgePolicy;
+            return this;
+        }
+
+        /** 设置 按主机熔断, 主机最近的请求失败率过高时直接失败(抛出 CircuitBreaker.CircuitOpenException) */
+        public Request setCircuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        /** 设置 收到响应头时完成的 future(对冲策略统计首字节耗时) */
+        void setFirstByte(CompletableFuture<Void> firstByte) {
+            this.firstByte = firstByte;
+        }
+
+        /** 设置 cookie 存储, 发送时加上存储中匹配的 cookie(携带的 cookie 优先) */
+        public Request setCookieJar(CookieJar cookieJar) {
+            this.cookieJar = cookieJar;
+            return this;
+        }
+
+        /** 设置 域对象 */
+        protected Request setSession(Session session) {
+            if (session != null) {
                 this.session = session;
             }
             return this;
         }
 
+        /**
+         * 使用域对象的状态: 请求头和携带参数与域对象共享(修改之前复制), cookie 已经整理过, 引荐在请求头中没有 Referer 时使用
+         */
+        Request share(String referer, Map<String, Object> header, String cookie, Map<String, Object> extra) {
+            this.sessionReferer = referer;
+            this.header = header;
+            this.headerShared = true;
+            this.cookie = cookie;
+            this.extra = extra;
+            this.extraShared = true;
+            return this;
+        }
+
+        /**
+         * 复制 还没有执行的请求(相同的设置, 请求头, 参数, cookie), 用于同时发送的另一个请求(如对冲请求)
+         * 需要在执行之前复制(执行时网址会拼接 GET 参数, 请求头会加上 Cookie 等);
+         * 请求头和携带参数由两个请求共享(修改之前复制), 不复制 BodySink(两个请求不能写入同一个位置)
+         */
+        public Request copy() {
+            return this.copy(this.site);
+        }
+
+        /** 复制 还没有执行的请求, 使用另一个网址(如同一个资源的其他地址) */
+        public Request copy(String site) {
+            Request request = new Request(site);
+            this.headerShared = this.header != null;
+            this.extraShared = this.extra != null;
+            request.share(this.sessionReferer, this.header, this.cookie, this.extra);
+            request.method = this.method;
+            request.param = this.param == null ? null : new HashMap<>(this.param);
+            request.proxy = this.proxy;
+            request.charset = this.charset;
+            request.ifEncodeUrl = this.ifEncodeUrl;
+            request.ifCache = this.ifCache;
+            request.json = this.json;
+            request.timeout = this.timeout;
+            request.ifStableRedirection = this.ifStableRedirection;
+            request.ifHandleHttps = this.ifHandleHttps;
+            request.ifEnableDefaultHostnameVerifier = this.ifEnableDefaultHostnameVerifier;
+            request.ifKeepAlive = this.ifKeepAlive;
+            request.ifLightweight = this.ifLightweight;
+            request.ifAcceptEncoding = this.ifAcceptEncoding;
+            request.hostnameVerifier = this.hostnameVerifier;
+            request.sslSocketFactory = this.sslSocketFactory;
+            request.session = this.session;
+            request.digestAlgorithm = this.digestAlgorithm;
+            request.rateLimiter = this.rateLimiter;
+            request.engine = this.engine;
+            request.dnsCache = this.dnsCache;
+            request.cookieJar = this.cookieJar;
+            request.retryPolicy = this.retryPolicy;
+            request.hedgePolicy = this.hedgePolicy;
+            request.circuitBreaker = this.circuitBreaker;
+            return request;
+        }
+
+        /** 获取 可以修改的请求头, 与域对象共享时复制一份 */
+        private Map<String, Object> mutableHeader() {
+            if(this.header == null || this.headerShared) {
+                this.header = this.header == null ? new HashMap<>(8) : new HashMap<>(this.header);
+                this.headerShared = false;
+            }
+            return this.header;
+        }
+
+        /** 获取 可以修改的携带参数, 与域对象共享时复制一份 */
+        private Map<String, Object> mutableExtra() {
+            if(this.extra == null || this.extraShared) {
+                this.extra = this.extra == null ? new HashMap<>(16) : new HashMap<>(this.extra);
+                this.extraShared = false;
+            }
+            return this.extra;
+        }
+
         /** 添加 请求头 */
         public Request addHead(String key, Object value) {
             if (isNotEmpty(key) && isNotEmpty(value)) {
-                this.header = this.header == null ? new HashMap<>(8) : this.header;
-                this.header.put(key, value);
+                this.mutableHeader().put(key, value);
             }
             return this;
         }
@@ -828,8 +1517,7 @@ public class HttpURLConnectionUtil {
         /** 添加 携带参数 */
         public Request addExtra(String key, Object value) {
             if (isNotEmpty(key) && isNotEmpty(value)) {
-                this.extra = this.extra == null ? new HashMap<>(16) : this.extra;
-                this.extra.put(key, value);
+                this.mutableExtra().put(key, value);
             }
             return this;
         }
@@ -885,7 +1573,7 @@ public class HttpURLConnectionUtil {
             return this.method;
         }
 
-        /** 获取 请求头 */
+        /** 获取 请求头, 与域对象共享时不可以修改(使用 addHead 修改) */
         public Map<String, Object> getHeader() {
             return this.header;
         }
@@ -895,7 +1583,7 @@ public class HttpURLConnectionUtil {
             return this.param;
         }
 
-        /** 获取 携带参数 */
+        /** 获取 携带参数, 与域对象共享时不可以修改(使用 addExtra 修改) */
         public Map<String, Object> getExtra() {
             return this.extra;
         }
@@ -935,6 +1623,21 @@ public class HttpURLConnectionUtil {
             return ifEnableDefaultHostnameVerifier;
         }
 
+        /** 获取 是否复用连接 */
+        public boolean getIfKeepAlive() {
+            return this.ifKeepAlive;
+        }
+
+        /** 获取 是否接受压缩的响应 */
+        public boolean getIfAcceptEncoding() {
+            return this.ifAcceptEncoding;
+        }
+
+        /** 获取 是否使用轻量响应 */
+        public boolean getIfLightweight() {
+            return this.ifLightweight;
+        }
+
         /** 获取 主机名验证程序 */
         public HostnameVerifier getHostnameVerifier() {
             return this.hostnameVerifier;
@@ -944,6 +1647,66 @@ public class HttpURLConnectionUtil {
         public SSLSocketFactory getSslSocketFactory() {
             return this.sslSocketFactory;
         }
+
+        /** 获取 摘要算法 */
+        public String getDigestAlgorithm() {
+            return this.digestAlgorithm;
+        }
+
+        /** 获取 响应体写入的位置 */
+        public BodySink getBodySink() {
+            return this.bodySink;
+        }
+
+        /** 获取 限流 */
+        public HostRateLimiter getRateLimiter() {
+            return this.rateLimiter;
+        }
+
+        /** 获取 执行请求的引擎 */
+        public Engine getEngine() {
+            return this.engine;
+        }
+
+        /** 获取 DNS 缓存 */
+        public DnsCache getDnsCache() {
+            return this.dnsCache;
+        }
+
+        /** 获取 cookie 存储 */
+        public CookieJar getCookieJar() {
+            return this.cookieJar;
+        }
+
+        /** 获取 重试策略 */
+        public RetryPolicy getRetryPolicy() {
+            return this.retryPolicy;
+        }
+
+        /** 获取 对冲策略 */
+        public HedgePolicy getHedgePolicy() {
+            return this.hedgePolicy;
+        }
+
+        /** 获取 按主机熔断 */
+        public CircuitBreaker getCircuitBreaker() {
+            return this.circuitBreaker;
+        }
+
+        /** 获取 收到响应头时完成的 future, 没有设置时为null */
+        CompletableFuture<Void> getFirstByte() {
+            return this.firstByte;
+        }
+
+        /** 获取 重定向的url列表 */
+        List<String> getRedirectUrlList() {
+            return this.redirectUrlList;
+        }
+
+        /** 获取 域对象 */
+        Session getSession() {
+            return this.session;
+        }
         ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
         @Override
@@ -964,6 +1727,9 @@ public class HttpURLConnectionUtil {
             sb.append(", ifStableRedirection=").append(ifStableRedirection);
             sb.append(", ifHandleHttps=").append(ifHandleHttps);
             sb.append(", ifEnableDefaultHostnameVerifier=").append(ifEnableDefaultHostnameVerifier);
+            sb.append(", ifKeepAlive=").append(ifKeepAlive);
+            sb.append(", ifLightweight=").append(ifLightweight);
+            sb.append(", ifAcceptEncoding=").append(ifAcceptEncoding);
             sb.append(", redirectUrlList=").append(redirectUrlList);
             sb.append(", http=").append(http);
             sb.append(", hostnameVerifier=").append(hostnameVerifier);
@@ -995,6 +1761,11 @@ public class HttpURLConnectionUtil {
         private HttpURLConnection http;                     // HttpURLConnection
         private Integer code;                               // http响应状态码(HttpURLConnection.HTTP_OK)
         private Session session;                            // 域对象
+        private String digestAlgorithm;                     // 摘要算法
+        private String digest;                              // 响应体摘要(16进制)
+        private boolean keepAlive;                          // 是否复用连接
+        private BodySink sink;                              // 响应体写入的位置, null表示保存在内存
+        private long bodyLength;                            // 响应体长度(解压之后)
         ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
         /** 保护构造 */
@@ -1003,6 +1774,8 @@ public class HttpURLConnectionUtil {
         /** 获取html 响应的 charset */
         private static final Pattern PATTERN_FOR_CHARSET = Pattern.compile("charset\\s*=\\s*['\"]*([^\\s;'\"]*)", Pattern.CASE_INSENSITIVE);
         private static Response EMPTY_RESPONSE;
+        /** 轻量响应保留的响应头(忽略大小写) */
+        private static final Set<String> LIGHTWEIGHT_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
 
         static {
             EMPTY_RESPONSE = new Response();
@@ -1016,20 +1789,71 @@ public class HttpURLConnectionUtil {
             EMPTY_RESPONSE.redirectUrlList = Collections.emptyList();
             EMPTY_RESPONSE.http = null;
             EMPTY_RESPONSE.code = 0;
+            LIGHTWEIGHT_HEADERS.addAll(Arrays.asList(Constant.CONTENT_TYPE, Constant.CONTENT_LENGTH, Constant.CONTENT_ENCODING, Constant.LOCATION, Constant.RETRY_AFTER));
         }
         ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
         /** 构造 Response */
         protected Response(HttpURLConnection http, List<String> redirectUrlList, Map<String, Object> extra, Session session) {
+            this(http, redirectUrlList, extra, session, null);
+        }
+
+        /** 构造 Response, 读取响应体的同时计算摘要 */
+        protected Response(HttpURLConnection http, List<String> redirectUrlList, Map<String, Object> extra, Session session, String digestAlgorithm) {
+            this(http, redirectUrlList, extra, session, digestAlgorithm, false);
+        }
+
+        /** 构造 Response, 复用连接时读完响应体之后不断开连接 */
+        protected Response(HttpURLConnection http, List<String> redirectUrlList, Map<String, Object> extra, Session session, String digestAlgorithm, boolean keepAlive) {
+            this(http, redirectUrlList, extra, session, digestAlgorithm, keepAlive, null);
+        }
+
+        /** 构造 Response, 响应体写入 sink(为null时保存在内存) */
+        protected Response(HttpURLConnection http, List<String> redirectUrlList, Map<String, Object> extra, Session session, String digestAlgorithm, boolean keepAlive, BodySink sink) {
             //
             this.http = http;
+            this.keepAlive = keepAlive;
+            this.sink = sink;
             this.redirectUrlList = redirectUrlList;
             this.extra = extra;
             this.session = session;
+            this.digestAlgorithm = digestAlgorithm;
             //
             this.init();
         }
 
+        /**
+         * 构造 Response, 用于非阻塞引擎(没有 HttpURLConnection, getHttp() 返回 null)
+         * @param header 响应头(忽略大小写)
+         * @param body 原始的响应体(未解压)
+         */
+        protected Response(String site, int code, Map<String, List<String>> header, byte[] body, List<String> redirectUrlList, Map<String, Object> extra, Session session, String digestAlgorithm) {
+            this(site, code, header, body, redirectUrlList, extra, session, digestAlgorithm, null);
+        }
+
+        /**
+         * 构造 Response, 用于非阻塞引擎, 响应体写入 sink(为null时保存在内存)
+         */
+        protected Response(String site, int code, Map<String, List<String>> header, byte[] body, List<String> redirectUrlList, Map<String, Object> extra, Session session, String digestAlgorithm, BodySink sink) {
+            this.sink = sink;
+            this.site = site;
+            this.code = code;
+            this.header = header;
+            this.redirectUrlList = redirectUrlList;
+            this.extra = extra;
+            this.session = session;
+            this.digestAlgorithm = digestAlgorithm;
+            this.defaultCharset = detectCharset(this.getContentType());
+            try {
+                this.initParseInputSteam(new ByteArrayInputStream(body));
+                this.handleSession();
+                logger.debug("{} get response success, code = {}", this.site, this.code);
+            } catch(IOException e) {
+                logger.warn("{} do response has exception ", this.site, e);
+                throw new RuntimeException(e);
+            }
+        }
+
         /** 初始化数据 */
         private void init() {
             try {
@@ -1047,41 +1871,129 @@ public class HttpURLConnectionUtil {
             }
         }
 
-        /** 处理 域对象 */
+        /** 处理 域对象: 有 cookie 存储时保存到存储中, 否则合并到域对象的 cookie 字符串 */
         private void handleSession() {
             if (this.session != null) {
                 this.session.setReferer(this.getSite());
-                this.session.setCookie(this.getCookie());
+                CookieJar cookieJar = this.session.getCookieJar();
+                if(cookieJar != null) {
+                    cookieJar.saveFromResponse(this.getSite(), headerValues(this.header, Constant.RESPONSE_COOKIE));
+                } else {
+                    this.session.setCookie(this.getCookie());
+                }
             }
         }
 
         /** 初始化解析inputStream */
         private void initParseInputSteam(InputStream inputStream) throws IOException {
-            // 获取响应头是否有Content-Encoding=gzip
-            String gzip = Optional.ofNullable(this.header.get(Constant.CONTENT_ENCODING))//
-                    .filter(v -> v.size() > 0)//
-                    .map(v -> v.get(0))//
-                    .map(String::toLowerCase)//
-                    .filter(Constant.GZIP::equals).orElse(null);
-            if(gzip != null) {
-                inputStream = new GZIPInputStream(inputStream);
-            }
-            ByteArrayOutputStream outputStream = null;
+            // 响应头 Content-Encoding(gzip, deflate...)
+            String contentEncoding = this.getHeaderField(Constant.CONTENT_ENCODING);
+            if(inputStream == null) {
+                // 没有响应体(比如错误响应没有内容)
+                inputStream = new ByteArrayInputStream(new byte[0]);
+            }
+            OutputStream outputStream = null;
+            boolean completed = false;
             try {
-                outputStream = new ByteArrayOutputStream();
-                byte[] bytes = new byte[1024 * 3];
-                for(int length = 0; length > -1; length = inputStream.read(bytes)) {
-                    outputStream.write(bytes, 0, length);
-                    outputStream.flush();
+                // 按照 Content-Encoding 解码(使用池中的 Inflater, 关闭时归还)
+                inputStream = ContentDecoder.decode(contentEncoding, inputStream);
+                MessageDigest messageDigest = isEmpty(this.digestAlgorithm) ? null : MessageDigest.getInstance(this.digestAlgorithm);
+                // 没有压缩时 Content-Length 就是响应体的长度
+                long contentLength = ContentDecoder.isIdentity(contentEncoding) ? this.getContentLength() : -1;
+                if(this.sink == null) {
+                    // 保存在内存: 按照 Content-Length 预先分配响应体, 直接读取到响应体中, 读完之后不需要再复制
+                    BodyBuffer buffer = new BodyBuffer(contentLength >= 0 && contentLength <= BodyBuffer.MAX_PRESIZE ? (int) contentLength : BodyBuffer.INITIAL_SIZE);
+                    outputStream = buffer;
+                    for(int length; (length = buffer.readFrom(inputStream)) > -1; ) {
+                        if(messageDigest != null) {
+                            messageDigest.update(buffer.array(), buffer.size() - length, length);
+                        }
+                        this.bodyLength += length;
+                    }
+                    checkComplete(contentLength);
+                    this.body = buffer.toByteArrayNoCopy();
+                } else {
+                    // 写入 sink 时不在内存中保存响应体, sink 返回null表示丢弃(只计算摘要)
+                    outputStream = this.sink.open(this);
+                    byte[] bytes = BufferPool.acquire();
+                    try {
+                        for(int length; (length = inputStream.read(bytes)) > -1; ) {
+                            if(outputStream != null) {
+                                outputStream.write(bytes, 0, length);
+                            }
+                            if(messageDigest != null) {
+                                messageDigest.update(bytes, 0, length);
+                            }
+                            this.bodyLength += length;
+                        }
+                    } finally {
+                        BufferPool.release(bytes);
+                    }
+                    checkComplete(contentLength);
+                    this.body = new byte[0];
+                    if(outputStream != null) {
+                        outputStream.close();
+                    }
                 }
-                this.body = outputStream.toByteArray();
+                this.digest = messageDigest == null ? null : PublicUtil.encodeHex(messageDigest.digest());
+                completed = true;
+            } catch(NoSuchAlgorithmException e) {
+                logger.warn("{} unsupported digest algorithm {}", this.site, this.digestAlgorithm);
+                throw new RuntimeException(e);
             } catch(IOException e) {
                 logger.warn("{} do response inputSteam has exception ", this.site, e);
                 throw new RuntimeException(e);
             } finally {
                 this.close(inputStream);
                 this.close(outputStream);
-                this.http.disconnect();
+                if(this.sink != null) {
+                    // 通知 sink 写入完成或者失败(比如删除未写完的临时文件)
+                    this.sink.complete(this, completed);
+                }
+                // 复用连接时响应流已经读完并关闭, 连接回到JDK的连接缓存; 否则(或者读取失败)断开
+                this.release(this.http, !(completed && this.keepAlive));
+            }
+        }
+
+        /**
+         * HttpURLConnection 连接提前断开时不会抛出异常, 按照 Content-Length 检查响应体是否完整(不完整时抛出 EOFException, 可以重试)
+         */
+        private void checkComplete(long contentLength) throws EOFException {
+            if(contentLength >= 0 && contentLength != this.bodyLength) {
+                throw new EOFException("response body incomplete, expected " + contentLength + " bytes, but read " + this.bodyLength);
+            }
+        }
+
+        /**
+         * 轻量响应: 不再保留 HttpURLConnection 和完整的响应头, 只保留 LIGHTWEIGHT_HEADERS(cookie 先解析保存)
+         */
+        void lighten() {
+            this.getCookie();
+            Map<String, List<String>> header = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            if(this.header != null) {
+                this.header.forEach((name, value) -> {
+                    if(name != null && LIGHTWEIGHT_HEADERS.contains(name) && value != null) {
+                        header.put(name, value);
+                    }
+                });
+            }
+            this.header = header;
+            this.http = null;
+        }
+
+        /**
+         * 释放连接, 复用连接时统计https请求数量(计算连接复用率)
+         * @param disconnect 是否断开连接
+         */
+        private void release(HttpURLConnection http, boolean disconnect) {
+            if(http == null) {
+                return;
+            }
+            if(this.keepAlive && http instanceof HttpsURLConnection && ((HttpsURLConnection) http).getSSLSocketFactory() instanceof CountingSSLSocketFactory) {
+                KeepAlive.REQUESTS.increment();
+            }
+            if(disconnect) {
+                http.disconnect();
             }
         }
 
@@ -1125,7 +2037,7 @@ public class HttpURLConnectionUtil {
         /** 获取 cookie */
         public String getCookie() {
             if(this.cookie == null) {
-                List<String> cookieList = this.header.get(Constant.RESPONSE_COOKIE);
+                List<String> cookieList = headerValues(this.header, Constant.RESPONSE_COOKIE);
                 if(isNotEmpty(cookieList)) {
                     StringJoiner joiner = new StringJoiner(Constant.COOKIE_SPLIT);
                     for(String cookieObj : cookieList) {
@@ -1184,13 +2096,63 @@ public class HttpURLConnectionUtil {
             return this.redirectUrlList;
         }
 
+        /** 获取 HttpURLConnection, 非阻塞引擎返回 null */
         public HttpURLConnection getHttp() {
             return this.http;
         }
 
+        /** 获取 响应头的第一个值(忽略大小写) */
+        public String getHeaderField(String name) {
+            List<String> values = headerValues(this.header, name);
+            return values == null ? null : values.get(0);
+        }
+
+        /** 获取 响应头的所有值(忽略大小写), 没有时返回null */
+        static List<String> headerValues(Map<String, List<String>> header, String name) {
+            if(header == null) {
+                return null;
+            }
+            for(Map.Entry<String, List<String>> entry : header.entrySet()) {
+                if(name.equalsIgnoreCase(entry.getKey()) && isNotEmpty(entry.getValue())) {
+                    return entry.getValue();
+                }
+            }
+            return null;
+        }
+
+        /** 获取 响应的内容类型 */
+        public String getContentType() {
+            return this.getHeaderField(Constant.CONTENT_TYPE);
+        }
+
+        /** 获取 响应头的 Content-Length, 没有时返回-1 */
+        public long getContentLength() {
+            String contentLength = this.getHeaderField(Constant.CONTENT_LENGTH);
+            try {
+                return contentLength == null ? -1 : Long.parseLong(contentLength.trim());
+            } catch(NumberFormatException e) {
+                return -1;
+            }
+        }
+
         public Integer getCode() {
             return this.code;
         }
+
+        /** 获取 响应体摘要(16进制), 需要在请求时设置 setDigestAlgorithm */
+        public String getDigest() {
+            return this.digest;
+        }
+
+        /** 获取 响应体长度(解压之后), 写入 sink 时 getBody() 为空, 使用该长度 */
+        public long getBodyLength() {
+            return this.bodyLength;
+        }
+
+        /** 获取 响应体写入的位置, 保存在内存时为null */
+        public BodySink getSink() {
+            return this.sink;
+        }
         ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
         /** 自动识别网页编码 */
@@ -1238,6 +2200,345 @@ public class HttpURLConnectionUtil {
         ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     }
 
+    /**
+     * @description 执行请求的引擎, 可以按域对象选择(Session.setEngine)
+     * BLOCKING: 使用 HttpURLConnection, 异步执行时每一个请求占用一个线程(开启虚拟线程时为虚拟线程)
+     * HttpClientEngine: 使用 JDK 11+ 的 java.net.http.HttpClient, 少量线程驱动所有请求
+     * @date created in 2026-10-18 07:40:08
+     * @author agent
+     */
+    public interface Engine {
+
+        /** 阻塞引擎 */
+        Engine BLOCKING = new Engine() {
+            @Override
+            public CompletableFuture<Response> executeAsync(Request request) {
+                return CompletableFuture.supplyAsync(request::executeBlocking, BlockingExecutorHolder.EXECUTOR);
+            }
+
+            @Override
+            public String toString() {
+                return "blocking";
+            }
+        };
+
+        /** 异步执行请求(处理重定向, 限流, 域对象) */
+        CompletableFuture<Response> executeAsync(Request request);
+    }
+
+    /**
+     * @description 响应体写入的位置, 响应体从连接直接写入, 不在内存中保存完整的响应体
+     * 每一个请求使用一个新的 sink(可以保存状态, 比如临时文件)
+     * ofPath: 写入临时文件, 完成之后重命名为目标文件, 失败时删除临时文件
+     * ofOutputStream / ofChannel: 写入调用方的输出流/通道(不会关闭)
+     * discarding: 丢弃响应体, 配合 Request.setDigestAlgorithm 只计算摘要
+     * @date created in 2026-10-18 07:46:21
+     * @author agent
+     */
+    public interface BodySink {
+
+        /**
+         * 收到响应头之后打开输出
+         * @return 写入响应体的输出流, 返回null表示丢弃响应体
+         */
+        OutputStream open(Response response) throws IOException;
+
+        /**
+         * 响应体读取完成(输出流已经关闭)
+         * @param success 是否完整读取, 失败时清理已经写入的数据
+         */
+        default void complete(Response response, boolean success) {}
+
+        /**
+         * 同时发送的另一个请求(对冲请求)使用的 sink, 两个请求同时写入时不互相影响
+         * @return 不支持时返回null(不对冲)
+         */
+        default BodySink fork() {
+            return null;
+        }
+
+        /** 写入文件: 先写入 文件名.part, 完整读取之后重命名为目标文件(覆盖), 失败时删除 */
+        static BodySink ofPath(Path path) {
+            return ofPath(path, path.resolveSibling(path.getFileName() + ".part"));
+        }
+
+        /** 写入文件: 先写入临时文件 temp, 完整读取之后重命名为目标文件(覆盖), 失败时删除 */
+        static BodySink ofPath(Path path, Path temp) {
+            return new BodySink() {
+                @Override
+                public OutputStream open(Response response) throws IOException {
+                    return new BufferedOutputStream(Files.newOutputStream(temp), 1024 * 16);
+                }
+
+                @Override
+                public void complete(Response response, boolean success) {
+                    try {
+                        if(success) {
+                            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+                            return;
+                        }
+                    } catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    try {
+                        Files.deleteIfExists(temp);
+                    } catch(IOException e) {
+                        logger.warn("删除临时文件 {} 失败", temp);
+                    }
+                }
+
+                @Override
+                public BodySink fork() {
+                    // 另一个请求写入另一个临时文件, 先完成的重命名为目标文件, 另一个被中止时删除
+                    return ofPath(path, path.resolveSibling(path.getFileName() + ".hedge.part"));
+                }
+
+                @Override
+                public String toString() {
+                    return "ofPath(" + path + ")";
+                }
+            };
+        }
+
+        /** 写入输出流, 写入完成之后只刷新不关闭 */
+        static BodySink ofOutputStream(OutputStream outputStream) {
+            return response -> new FilterOutputStream(outputStream) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    this.out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    this.flush();
+                }
+            };
+        }
+
+        /** 写入通道, 写入完成之后不关闭 */
+        static BodySink ofChannel(WritableByteChannel channel) {
+            return ofOutputStream(Channels.newOutputStream(channel));
+        }
+
+        /** 丢弃响应体, 配合 Request.setDigestAlgorithm 只计算摘要 */
+        static BodySink discarding() {
+            return response -> null;
+        }
+    }
+
+    /**
+     * 读取响应体的缓冲区池, 避免每一个请求分配新的缓冲区
+     * 按照线程选择起始位置的分段池(不使用 ThreadLocal: 每一个虚拟线程只执行一个请求, ThreadLocal 无法复用), 池中没有时直接分配
+     */
+    private static final class BufferPool {
+        private static final int BUFFER_SIZE = 1024 * 16;
+        private static final int PROBES = 4;                                        // 最多尝试的位置数量
+        private static final AtomicReferenceArray<byte[]> SLOTS = new AtomicReferenceArray<>(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1);
+        private static final int MASK = SLOTS.length() - 1;
+
+        private static byte[] acquire() {
+            int start = probe();
+            for(int i = 0; i < PROBES; i++) {
+                byte[] bytes = SLOTS.getAndSet((start + i) & MASK, null);
+                if(bytes != null) {
+                    return bytes;
+                }
+            }
+            return new byte[BUFFER_SIZE];
+        }
+
+        private static void release(byte[] bytes) {
+            int start = probe();
+            for(int i = 0; i < PROBES; i++) {
+                if(SLOTS.compareAndSet((start + i) & MASK, null, bytes)) {
+                    return;
+                }
+            }
+        }
+
+        private static int probe() {
+            return (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 40);
+        }
+    }
+
+    /**
+     * 保存在内存的响应体: 直接从输入流读取到内部数组(不需要读取缓冲区), 按照 Content-Length 预先分配时读完之后不需要再复制
+     */
+    static final class BodyBuffer extends ByteArrayOutputStream {
+        static final int INITIAL_SIZE = 1024 * 8;                          // 没有 Content-Length 时的初始长度
+        private static final int MAX_PRESIZE = 1024 * 1024 * 64;                   // 最多预先分配的长度, 超过时按需扩容
+
+        BodyBuffer(int size) {
+            super(size);
+        }
+
+        /**
+         * 从输入流读取到内部数组
+         * @return 读取的数量, 结束返回-1
+         */
+        int readFrom(InputStream inputStream) throws IOException {
+            if(this.count == this.buf.length) {
+                // 数组已满(比如按照 Content-Length 预先分配), 先读取一个字节判断是否结束, 结束时不需要扩容
+                int b = inputStream.read();
+                if(b < 0) {
+                    return -1;
+                }
+                this.buf = Arrays.copyOf(this.buf, Math.max(this.buf.length << 1, INITIAL_SIZE));
+                this.buf[this.count++] = (byte) b;
+                return 1;
+            }
+            int length = inputStream.read(this.buf, this.count, this.buf.length - this.count);
+            if(length > 0) {
+                this.count += length;
+            }
+            return length;
+        }
+
+        private byte[] array() {
+            return this.buf;
+        }
+
+        /** 数组刚好写满时直接返回, 否则复制 */
+        byte[] toByteArrayNoCopy() {
+            return this.count == this.buf.length ? this.buf : Arrays.copyOf(this.buf, this.count);
+        }
+    }
+
+    /** 阻塞引擎异步执行时使用的线程池, 第一次使用时创建(在开启虚拟线程之后) */
+    private static class BlockingExecutorHolder {
+        private static final ExecutorService EXECUTOR = VirtualThreadUtil.isEnabled()
+                ? VirtualThreadUtil.newExecutor("http-blocking-", 0)
+                : Executors.newCachedThreadPool(r -> {
+                    Thread thread = new Thread(r, "http-blocking");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * @description 连接复用(Keep-Alive)
+     * 阻塞引擎复用连接(Session.setIfKeepAlive)时读完响应之后只关闭响应流, 由JDK的连接缓存回收socket,
+     * 这里配置连接缓存的大小和空闲时间, 并统计复用率.
+     * 空闲时间(http.keepAlive.time.server/proxy)需要 JDK 19+, 或者移植了该属性的 JDK 11/17 更新版本(JDK-8278067),
+     * 其他版本忽略该属性, 空闲连接使用JDK默认的5秒(服务端返回 Keep-Alive: timeout 时以服务端为准), configure 时打印警告.
+     * 复用率只统计使用内置 SSL_SOCKET_FACTORY(信任所有证书)的https请求, 即 ifHandleHttps 为true 并且没有设置 sslSocketFactory 的请求,
+     * http请求, 自定义 SSLSocketFactory 和 HttpClientEngine 的请求不计入.
+     * @date created in 2026-10-18 07:42:51
+     * @author agent
+     */
+    public static class KeepAlive {
+
+        private static final LongAdder REQUESTS = new LongAdder();     // 复用模式下的https请求数量
+        private static final LongAdder CONNECTIONS = new LongAdder();  // 新建的https连接数量
+
+        private KeepAlive() {}
+
+        /**
+         * 配置JDK连接缓存, 需要在第一次请求之前调用
+         * @param maxConnectionsPerHost 每一个主机最多缓存的空闲连接数量
+         * @param idleSeconds 空闲连接的存活时间(秒), 超过之后关闭, 服务端返回 Keep-Alive: timeout 时以服务端为准
+         */
+        public static void configure(int maxConnectionsPerHost, int idleSeconds) {
+            System.setProperty("http.keepAlive", "true");
+            System.setProperty("http.maxConnections", String.valueOf(Math.max(1, maxConnectionsPerHost)));
+            System.setProperty("http.keepAlive.time.server", String.valueOf(Math.max(1, idleSeconds)));
+            System.setProperty("http.keepAlive.time.proxy", String.valueOf(Math.max(1, idleSeconds)));
+            // HttpClientEngine 空闲连接的存活时间
+            System.setProperty("jdk.httpclient.keepalive.timeout", String.valueOf(Math.max(1, idleSeconds)));
+            logger.info("连接复用: 每一个主机最多缓存 {} 个空闲连接, 空闲 {} 秒之后关闭", maxConnectionsPerHost, idleSeconds);
+            if(!isIdleTimeSupported()) {
+                logger.warn("当前JDK版本 {} 不支持 http.keepAlive.time.server/proxy(需要JDK 19+ 或者移植了 JDK-8278067 的更新版本), 阻塞引擎的空闲连接使用JDK默认的5秒",
+                        System.getProperty("java.version"));
+            }
+        }
+
+        /** 当前JDK的连接缓存是否读取 http.keepAlive.time.server/proxy (KeepAliveCache 中有读取该属性的字段) */
+        static boolean isIdleTimeSupported() {
+            try {
+                Class.forName("sun.net.www.http.KeepAliveCache").getDeclaredField("keepAliveProp");
+                return true;
+            } catch(ClassNotFoundException | NoSuchFieldException e) {
+                return false;
+            }
+        }
+
+        /** 获取 复用模式下的https请求数量 */
+        public static long getRequests() {
+            return REQUESTS.sum();
+        }
+
+        /** 获取 新建的https连接数量 */
+        public static long getConnections() {
+            return CONNECTIONS.sum();
+        }
+
+        /** 获取 连接复用率 = 1 - 新建连接数量 / 请求数量, 没有请求时返回0 */
+        public static double getReuseRatio() {
+            long requests = getRequests();
+            return requests == 0 ? 0 : Math.max(0, 1 - (double) getConnections() / requests);
+        }
+
+        /** 统计信息 */
+        public static String stats() {
+            return String.format("https请求 %d, 新建连接 %d, 复用率 %.1f%%", getRequests(), getConnections(), getReuseRatio() * 100);
+        }
+    }
+
+    /** 统计新建连接数量的SSLSocketFactory */
+    private static class CountingSSLSocketFactory extends SSLSocketFactory {
+
+        private final SSLSocketFactory delegate;
+
+        private CountingSSLSocketFactory(SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        private static Socket count(Socket socket) {
+            KeepAlive.CONNECTIONS.increment();
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return this.delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return this.delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return count(this.delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose) throws IOException {
+            return count(this.delegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return count(this.delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return count(this.delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return count(this.delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return count(this.delegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+
     /**
      * @description 代理对象
      * @date 2019-08-21 11:00:30
@@ -1301,7 +2602,9 @@ public class HttpURLConnectionUtil {
         String REFERER = "Referer";
         String PROXY_AUTHORIZATION = "Proxy-Authorization";
         String CONTENT_ENCODING = "Content-Encoding";
+        String ACCEPT_ENCODING = "Accept-Encoding";
         String LOCATION = "Location";
+        String RETRY_AFTER = "Retry-After";
 
         String CONTENT_TYPE_WITH_FORM = "application/x-www-form-urlencoded; charset=";
         String CONTENT_TYPE_WITH_JSON = "application/json; charset=";
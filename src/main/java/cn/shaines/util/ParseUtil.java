@@ -1,8 +1,374 @@
 package cn.shaines.util;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
 /**
+ * 流式JSON字段提取
+ *
+ * 直接扫描响应的 byte[], 只解码需要的字段值, 不构建整个JSON对象树.
+ * 字段路径使用 JSONPath 的 ".." 语法(任意层级), 例如:
+ * hoverURL                 任意位置的 hoverURL
+ * data..hoverURL           data 下面任意层级的 hoverURL
+ * linkData..thumbnailUrl   linkData 下面任意层级的 thumbnailUrl
+ *
+ * 使用方式:
+ * ParseUtil.Extractor extractor = ParseUtil.compile("data..hoverURL");
+ * extractor.extract(body, url -> System.out.println(url));
+ *
+ * 按数组元素分组提取(同一个结果的多个字段):
+ * ParseUtil.Extractor extractor = ParseUtil.compileGroup("data", "data..thumbURL", "data..objURL", "data..width");
+ * extractor.extractGroups(body, group -> System.out.println(group.get("data..objURL")));
+ *
  * @author houyu
  * @createTime 2019/4/19 22:38
  */
 public class ParseUtil {
+
+    /**
+     * 编译字段路径
+     */
+    public static Extractor compile(String... paths) {
+        return new Extractor(null, paths);
+    }
+
+    /**
+     * 编译字段路径, 按照 group 数组的每一个元素分组
+     * @param group 数组字段名称, 例如 data
+     */
+    public static Extractor compileGroup(String group, String... paths) {
+        return new Extractor(group, paths);
+    }
+
+    /**
+     * @description 字段提取器(线程安全, 可以复用)
+     * @date created in 2026-10-18 07:13:29
+     * @author agent
+     */
+    public static class Extractor {
+
+        private static final int REPLACEMENT_CHAR = 0xFFFD;   // 无效的代理项替换为 U+FFFD
+
+        private final String[] paths;           // 原始路径
+        private final byte[][] names;           // 路径中出现的所有字段名称
+        private final int[] targets;            // 每个路径最后的字段名称id
+        private final int[][] ancestors;        // 每个路径要求的祖先字段名称id(按顺序)
+        private final int group;                // 分组的数组字段名称id, 不分组时为-1
+
+        private Extractor(String group, String[] paths) {
+            this.paths = paths;
+            List<String> nameList = new ArrayList<>(8);
+            if(group != null) {
+                nameList.add(group);
+            }
+            this.group = group == null ? -1 : 0;
+            this.targets = new int[paths.length];
+            this.ancestors = new int[paths.length][];
+            for(int i = 0; i < paths.length; i++) {
+                String path = paths[i].startsWith("$..") ? paths[i].substring(3) : paths[i];
+                String[] split = path.split("\\.\\.");
+                int[] ids = new int[split.length];
+                for(int j = 0; j < split.length; j++) {
+                    int id = nameList.indexOf(split[j]);
+                    if(id < 0) {
+                        id = nameList.size();
+                        nameList.add(split[j]);
+                    }
+                    ids[j] = id;
+                }
+                this.targets[i] = ids[ids.length - 1];
+                this.ancestors[i] = Arrays.copyOf(ids, ids.length - 1);
+            }
+            this.names = new byte[nameList.size()][];
+            for(int i = 0; i < nameList.size(); i++) {
+                this.names[i] = nameList.get(i).getBytes(StandardCharsets.UTF_8);
+            }
+        }
+
+        /**
+         * 提取字段值, 按照在文档中出现的顺序回调
+         */
+        public void extract(byte[] bytes, Consumer<String> consumer) {
+            this.extract(bytes, (path, value) -> consumer.accept(value));
+        }
+
+        /**
+         * 提取字段值, 返回列表
+         */
+        public List<String> extract(byte[] bytes) {
+            List<String> list = new ArrayList<>(32);
+            this.extract(bytes, (Consumer<String>) list::add);
+            return list;
+        }
+
+        /**
+         * 提取字段值, 回调 (路径, 值), 字符串之外的标量(数字/布尔)回调原始文本, null 和空字符串不回调
+         */
+        public void extract(byte[] bytes, BiConsumer<String, String> consumer) {
+            this.scan(bytes, consumer, null);
+        }
+
+        /**
+         * 分组提取, 分组数组的每一个元素回调一次 (路径 => 值), 没有任何匹配字段的元素不回调
+         * 同一个元素中同一个路径出现多次时保留第一个
+         */
+        public void extractGroups(byte[] bytes, Consumer<Map<String, String>> consumer) {
+            if(this.group < 0) {
+                throw new IllegalStateException(this + " 没有指定分组, 请使用 ParseUtil.compileGroup");
+            }
+            AtomicReference<Map<String, String>> current = new AtomicReference<>();
+            this.scan(bytes, (path, value) -> {
+                Map<String, String> map = current.get();
+                if(map == null) {
+                    current.set(map = new HashMap<>(8));
+                }
+                map.putIfAbsent(path, value);
+            }, () -> {
+                Map<String, String> map = current.getAndSet(null);
+                if(map != null) {
+                    consumer.accept(map);
+                }
+            });
+        }
+
+        /**
+         * 扫描
+         * @param groupEnd 分组数组的一个元素结束时回调, 不分组时为null
+         */
+        private void scan(byte[] bytes, BiConsumer<String, String> consumer, Runnable groupEnd) {
+            if(bytes == null) {
+                return;
+            }
+            int groupDepth = -1;                        // 当前分组元素所在的层级
+            int[] keyStack = new int[32];               // 每一层容器对应的字段名称id(-1 表示不关心)
+            boolean[] objectStack = new boolean[32];    // 每一层容器是否是对象
+            int depth = 0;
+            int key = -1;                               // 当前对象中的字段名称id
+            boolean expectKey = false;                  // 当前是否在等待字段名称
+            int length = bytes.length;
+            for(int pos = 0; pos < length; pos++) {
+                byte b = bytes[pos];
+                switch(b) {
+                    case '{':
+                    case '[':
+                        if(depth == keyStack.length) {
+                            keyStack = Arrays.copyOf(keyStack, depth * 2);
+                            objectStack = Arrays.copyOf(objectStack, depth * 2);
+                        }
+                        if(groupEnd != null && depth > 0 && !objectStack[depth - 1] && keyStack[depth - 1] == this.group && groupDepth < 0) {
+                            // 分组数组的一个元素开始
+                            groupDepth = depth;
+                        }
+                        keyStack[depth] = key;
+                        objectStack[depth] = b == '{';
+                        depth++;
+                        key = -1;
+                        expectKey = b == '{';
+                        break;
+                    case '}':
+                    case ']':
+                        depth = depth > 0 ? depth - 1 : 0;
+                        if(depth == groupDepth) {
+                            // 分组数组的一个元素结束
+                            groupDepth = -1;
+                            groupEnd.run();
+                        }
+                        key = -1;
+                        expectKey = false;
+                        break;
+                    case ',':
+                        key = -1;
+                        expectKey = depth > 0 && objectStack[depth - 1];
+                        break;
+                    case '"': {
+                        int start = pos + 1;
+                        boolean escaped = false;
+                        for(pos = start; pos < length && bytes[pos] != '"'; pos++) {
+                            if(bytes[pos] == '\\') {
+                                escaped = true;
+                                pos++;
+                            }
+                        }
+                        if(expectKey) {
+                            key = this.indexOfName(bytes, start, pos);
+                            expectKey = false;
+                        } else {
+                            int path = this.match(key, keyStack, depth);
+                            // 响应被截断(没有结束的引号)时不回调不完整的值
+                            if(path > -1 && pos > start && pos < length) {
+                                consumer.accept(this.paths[path], decode(bytes, start, pos, escaped));
+                            }
+                            key = -1;
+                        }
+                        break;
+                    }
+                    case ':':
+                    case ' ':
+                    case '\t':
+                    case '\r':
+                    case '\n':
+                        break;
+                    default: {
+                        // 数字 / true / false / null
+                        int start = pos;
+                        while(pos + 1 < length && !isDelimiter(bytes[pos + 1])) {
+                            pos++;
+                        }
+                        int path = this.match(key, keyStack, depth);
+                        // 后面没有分隔符(响应被截断)时不回调不完整的值
+                        if(path > -1 && pos + 1 < length && !(pos - start == 3 && b == 'n')) {
+                            consumer.accept(this.paths[path], new String(bytes, start, pos + 1 - start, StandardCharsets.US_ASCII));
+                        }
+                        key = -1;
+                        break;
+                    }
+                }
+            }
+        }
+
+        /** 当前字段是否匹配某一个路径, 返回路径下标 */
+        private int match(int key, int[] keyStack, int depth) {
+            if(key < 0) {
+                return -1;
+            }
+            for(int i = 0; i < this.targets.length; i++) {
+                if(this.targets[i] != key) {
+                    continue;
+                }
+                int[] need = this.ancestors[i];
+                int found = 0;
+                for(int d = 0; d < depth && found < need.length; d++) {
+                    if(keyStack[d] == need[found]) {
+                        found++;
+                    }
+                }
+                if(found == need.length) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** 查找字段名称id, 不创建字符串 */
+        private int indexOfName(byte[] bytes, int start, int end) {
+            int len = end - start;
+            for(int i = 0; i < this.names.length; i++) {
+                byte[] name = this.names[i];
+                if(name.length != len) {
+                    continue;
+                }
+                int j = 0;
+                while(j < len && name[j] == bytes[start + j]) {
+                    j++;
+                }
+                if(j == len) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean isDelimiter(byte b) {
+            return b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+        }
+
+        /** 解码JSON字符串, 转义之后的内容不会比原始内容长, 因此直接在一个 byte[] 中完成 */
+        private static String decode(byte[] bytes, int start, int end, boolean escaped) {
+            if(!escaped) {
+                return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            }
+            byte[] out = new byte[end - start];
+            int length = 0;
+            for(int pos = start; pos < end; pos++) {
+                byte c = bytes[pos];
+                if(c != '\\' || pos + 1 >= end) {
+                    out[length++] = c;
+                    continue;
+                }
+                c = bytes[++pos];
+                switch(c) {
+                    case 'n': out[length++] = '\n'; break;
+                    case 'r': out[length++] = '\r'; break;
+                    case 't': out[length++] = '\t'; break;
+                    case 'b': out[length++] = '\b'; break;
+                    case 'f': out[length++] = '\f'; break;
+                    case 'u': {
+                        int ch = pos + 4 < end ? hex(bytes, pos + 1) : -1;
+                        if(ch < 0) {
+                            // 不完整或者不是十六进制的 \\u 转义, 原样保留
+                            out[length++] = '\\';
+                            out[length++] = 'u';
+                            break;
+                        }
+                        pos += 4;
+                        if(Character.isHighSurrogate((char) ch)) {
+                            int low = pos + 6 < end && bytes[pos + 1] == '\\' && bytes[pos + 2] == 'u' ? hex(bytes, pos + 3) : -1;
+                            if(low >= 0 && Character.isLowSurrogate((char) low)) {
+                                ch = Character.toCodePoint((char) ch, (char) low);
+                                pos += 6;
+                            } else {
+                                // 后面不是低代理项, 不消费后面的转义
+                                ch = REPLACEMENT_CHAR;
+                            }
+                        } else if(Character.isLowSurrogate((char) ch)) {
+                            ch = REPLACEMENT_CHAR;
+                        }
+                        length = utf8(ch, out, length);
+                        break;
+                    }
+                    default:
+                        // \" \\ \/ 以及百度返回的不规范转义 \'
+                        out[length++] = c;
+                        break;
+                }
+            }
+            return new String(out, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /** 解析4位十六进制, 不是十六进制时返回-1 */
+        private static int hex(byte[] bytes, int start) {
+            int value = 0;
+            for(int i = start; i < start + 4; i++) {
+                int digit = Character.digit(bytes[i], 16);
+                if(digit < 0) {
+                    return -1;
+                }
+                value = (value << 4) | digit;
+            }
+            return value;
+        }
+
+        /** 码点写入 UTF-8 */
+        private static int utf8(int ch, byte[] out, int length) {
+            if(ch < 0x80) {
+                out[length++] = (byte) ch;
+            } else if(ch < 0x800) {
+                out[length++] = (byte) (0xC0 | (ch >> 6));
+                out[length++] = (byte) (0x80 | (ch & 0x3F));
+            } else if(ch < 0x10000) {
+                out[length++] = (byte) (0xE0 | (ch >> 12));
+                out[length++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                out[length++] = (byte) (0x80 | (ch & 0x3F));
+            } else {
+                out[length++] = (byte) (0xF0 | (ch >> 18));
+                out[length++] = (byte) (0x80 | ((ch >> 12) & 0x3F));
+                out[length++] = (byte) (0x80 | ((ch >> 6) & 0x3F));
+                out[length++] = (byte) (0x80 | (ch & 0x3F));
+            }
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return "Extractor" + Arrays.toString(this.paths);
+        }
+    }
+
 }
@@ -0,0 +1,270 @@
+package cn.shaines.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 分阶段流水线
+ *
+ * 每个阶段拥有独立的线程数(并行度), 阶段之间使用有界队列连接,
+ * 下游处理不过来时, 上游 put 会阻塞, 从而实现背压, 避免无限堆积任务导致内存上涨.
+ *
+ * 使用方式:
+ * PipelineUtil<Integer> pipeline = PipelineUtil.<Integer>builder("spider")
+ *         .stage("page", 2, 16, (pn, out) -> out.accept(fetch(pn)))
+ *         .stage("download", 50, 256, (body, out) -> ...)
+ *         .sink("write", 2, 64, data -> ...);
+ * pipeline.put(0);
+ * pipeline.close();
+ * pipeline.await();
+ *
+ * @description 分阶段流水线工具
+ * @date created in 2026-10-18 07:06:08
+ * @author agent
+ */
+public class PipelineUtil<I> {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(PipelineUtil.class);
+
+    /** 结束标记, 上游全部完成之后往下游投递 */
+    private static final Object END = new Object();
+
+    private final String name;                                  // 流水线名称(用于线程命名)
+    private final List<Node> nodeList;                          // 所有阶段
+    private final CountDownLatch latch = new CountDownLatch(1); // 最后一个阶段完成的信号
+    private volatile boolean closed = false;                    // 是否已关闭输入
+
+    private PipelineUtil(String name, List<Node> nodeList) {
+        this.name = name;
+        this.nodeList = nodeList;
+    }
+
+    public static <I> Builder<I, I> builder(String name) {
+        return new Builder<>(name, new ArrayList<>(8));
+    }
+
+    /**
+     * 提交数据到第一个阶段, 队列满时阻塞(背压)
+     */
+    public void put(I item) throws InterruptedException {
+        if(this.closed) {
+            throw new IllegalStateException(this.name + " 流水线已关闭, 不可以继续提交");
+        }
+        this.nodeList.get(0).input.put(item);
+    }
+
+    /**
+     * 关闭输入, 已提交的数据会继续处理完成
+     */
+    public synchronized void close() throws InterruptedException {
+        if(!this.closed) {
+            this.closed = true;
+            this.nodeList.get(0).end();
+        }
+    }
+
+    /**
+     * 等待所有阶段处理完成
+     */
+    public void await() throws InterruptedException {
+        this.latch.await();
+    }
+
+    /**
+     * 等待所有阶段处理完成
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.latch.await(timeout, unit);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Pipeline{");
+        sb.append("name='").append(name).append('\'');
+        for(Node node : this.nodeList) {
+            sb.append(", ").append(node);
+        }
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * 启动所有阶段的工作线程
+     */
+    private PipelineUtil<I> start() {
+        for(Node node : this.nodeList) {
+            // 开启虚拟线程时每一个阶段的工作线程都是虚拟线程, 阻塞在网络读取时不占用系统线程
+            ThreadFactory factory = VirtualThreadUtil.isEnabled() ? VirtualThreadUtil.newThreadFactory(this.name + "-" + node.name + "-") : null;
+            for(int i = 0; i < node.parallelism; i++) {
+                Thread thread = factory != null ? factory.newThread(node::work) : new Thread(node::work, this.name + "-" + node.name + "-" + i);
+                thread.start();
+            }
+        }
+        logger.debug("{} 流水线启动, 阶段数量:{}", this.name, this.nodeList.size());
+        return this;
+    }
+
+    /**
+     * @description 处理阶段, 一个输入可以产生0个或者多个输出
+     * @date created in 2026-10-18 07:06:08
+     * @author agent
+     */
+    @FunctionalInterface
+    public interface Stage<T, R> {
+        void process(T item, Consumer<R> out) throws Exception;
+    }
+
+    /**
+     * @description 终点阶段, 不再产生输出
+     * @date created in 2026-10-18 07:06:08
+     * @author agent
+     */
+    @FunctionalInterface
+    public interface Sink<T> {
+        void process(T item) throws Exception;
+    }
+
+    /**
+     * @description 构建流水线, I 是流水线入口的类型, O 是当前最后一个阶段输出的类型
+     * @date created in 2026-10-18 07:06:08
+     * @author agent
+     */
+    public static class Builder<I, O> {
+
+        private final String name;
+        private final List<Node> nodeList;
+
+        private Builder(String name, List<Node> nodeList) {
+            this.name = name;
+            this.nodeList = nodeList;
+        }
+
+        /**
+         * 添加中间阶段
+         * @param stageName 阶段名称
+         * @param parallelism 并行度(线程数)
+         * @param queueSize 该阶段输入队列大小
+         */
+        @SuppressWarnings("unchecked")
+        public <R> Builder<I, R> stage(String stageName, int parallelism, int queueSize, Stage<O, R> stage) {
+            this.add(new Node(stageName, parallelism, queueSize, (Stage<Object, Object>) stage));
+            return new Builder<>(this.name, this.nodeList);
+        }
+
+        /**
+         * 添加终点阶段, 并且启动流水线
+         */
+        @SuppressWarnings("unchecked")
+        public PipelineUtil<I> sink(String stageName, int parallelism, int queueSize, Sink<O> sink) {
+            Sink<Object> objectSink = (Sink<Object>) sink;
+            this.add(new Node(stageName, parallelism, queueSize, (item, out) -> objectSink.process(item)));
+            PipelineUtil<I> pipeline = new PipelineUtil<>(this.name, this.nodeList);
+            this.nodeList.get(this.nodeList.size() - 1).latch = pipeline.latch;
+            return pipeline.start();
+        }
+
+        private void add(Node node) {
+            if(!this.nodeList.isEmpty()) {
+                this.nodeList.get(this.nodeList.size() - 1).next = node;
+            }
+            this.nodeList.add(node);
+        }
+    }
+
+    /**
+     * @description 阶段节点
+     * @date created in 2026-10-18 07:06:08
+     * @author agent
+     */
+    private static class Node {
+
+        private final String name;                              // 阶段名称
+        private final int parallelism;                          // 并行度
+        private final BlockingQueue<Object> input;              // 输入队列(有界)
+        private final Stage<Object, Object> stage;              // 处理逻辑
+        private final AtomicInteger alive;                      // 存活的工作线程数量
+        private final AtomicLong processed = new AtomicLong();  // 已处理数量
+        private final AtomicLong failed = new AtomicLong();     // 处理失败数量
+        private Node next;                                      // 下一个阶段
+        private CountDownLatch latch;                           // 最后一个阶段完成的信号
+
+        private Node(String name, int parallelism, int queueSize, Stage<Object, Object> stage) {
+            this.name = name;
+            this.parallelism = Math.max(1, parallelism);
+            this.input = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+            this.stage = stage;
+            this.alive = new AtomicInteger(this.parallelism);
+        }
+
+        /** 工作线程循环 */
+        private void work() {
+            try {
+                for(Object item; (item = this.input.take()) != END; ) {
+                    try {
+                        this.stage.process(item, this::emit);
+                        this.processed.incrementAndGet();
+                    } catch(InterruptedException e) {
+                        throw e;
+                    } catch(Exception e) {
+                        this.failed.incrementAndGet();
+                        logger.warn("{} 阶段处理出现异常 {}", this.name, e);
+                    }
+                }
+            } catch(InterruptedException e) {
+                logger.warn("{} 阶段被中断", this.name);
+                Thread.currentThread().interrupt();
+            } finally {
+                if(this.alive.decrementAndGet() == 0) {
+                    this.finish();
+                }
+            }
+        }
+
+        /** 输出到下一个阶段, 下一个阶段队列满时阻塞 */
+        private void emit(Object item) {
+            if(this.next != null && item != null) {
+                try {
+                    this.next.input.put(item);
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        /** 通知本阶段的所有工作线程结束 */
+        private void end() throws InterruptedException {
+            for(int i = 0; i < this.parallelism; i++) {
+                this.input.put(END);
+            }
+        }
+
+        /** 本阶段所有工作线程完成, 通知下一个阶段 */
+        private void finish() {
+            logger.debug("{} 阶段完成, 处理数量:{}, 失败数量:{}", this.name, this.processed.get(), this.failed.get());
+            if(this.next != null) {
+                try {
+                    this.next.end();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else if(this.latch != null) {
+                this.latch.countDown();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.name + "[threads=" + this.parallelism + ", queue=" + this.input.size() + ", processed=" + this.processed.get() + ", failed=" + this.failed.get() + "]";
+        }
+    }
+
+}
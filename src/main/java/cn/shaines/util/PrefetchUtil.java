@@ -0,0 +1,130 @@
+package cn.shaines.util;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分页预取
+ *
+ * 同时保持 concurrency 个分页在请求中, 但是按照 offset 的顺序返回结果,
+ * 调用 stop() 之后不再发起新的分页请求.
+ *
+ * 使用方式:
+ * PrefetchUtil<byte[]> prefetch = PrefetchUtil.of(0, 1000, 10, 3, offset -> fetch(offset));
+ * while(prefetch.hasNext()) {
+ *     byte[] body = prefetch.next();
+ * }
+ * prefetch.close();
+ *
+ * @description 分页预取工具
+ * @date created in 2026-10-18 07:06:52
+ * @author agent
+ */
+public class PrefetchUtil<T> implements AutoCloseable {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(PrefetchUtil.class);
+    private static final AtomicInteger POOL_INDEX = new AtomicInteger();
+
+    private final int end;                                          // 结束offset(不包含)
+    private final int step;                                         // 每一页的步长
+    private final int concurrency;                                  // 同时请求的分页数量
+    private final Fetcher<T> fetcher;                               // 获取分页
+    private final ExecutorService executorService;                  // 预取线程池
+    private final Deque<Future<T>> inFlight;                        // 请求中的分页(按offset顺序)
+    private int nextOffset;                                         // 下一个需要发起的offset
+    private volatile boolean stopped = false;                       // 是否停止发起新的分页
+
+    private PrefetchUtil(int start, int end, int step, int concurrency, Fetcher<T> fetcher) {
+        this.nextOffset = start;
+        this.end = end;
+        this.step = step;
+        this.concurrency = Math.max(1, concurrency);
+        this.fetcher = fetcher;
+        this.inFlight = new ArrayDeque<>(this.concurrency);
+        // 开启虚拟线程时每一个分页一个虚拟线程, 同时请求的数量由 concurrency 限制
+        this.executorService = VirtualThreadUtil.newExecutor("prefetch-" + POOL_INDEX.incrementAndGet() + "-", this.concurrency);
+        this.fill();
+    }
+
+    /**
+     * @param start 开始offset
+     * @param end 结束offset(不包含)
+     * @param step 每一页的步长
+     * @param concurrency 同时请求的分页数量
+     * @param fetcher 获取分页
+     */
+    public static <T> PrefetchUtil<T> of(int start, int end, int step, int concurrency, Fetcher<T> fetcher) {
+        return new PrefetchUtil<>(start, end, step, concurrency, fetcher);
+    }
+
+    /**
+     * 是否还有分页
+     */
+    public boolean hasNext() {
+        return !this.inFlight.isEmpty();
+    }
+
+    /**
+     * 获取下一页(按offset顺序), 未完成时阻塞
+     */
+    public T next() throws InterruptedException {
+        Future<T> future = this.inFlight.pollFirst();
+        if(future == null) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return future.get();
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } finally {
+            this.fill();
+        }
+    }
+
+    /**
+     * 停止发起新的分页, 已经发起但是未取走的分页会被取消
+     */
+    public void stop() {
+        if(!this.stopped) {
+            this.stopped = true;
+            this.inFlight.forEach(future -> future.cancel(true));
+            this.inFlight.clear();
+            logger.debug("停止预取分页, 停止位置:{}", this.nextOffset);
+        }
+    }
+
+    /**
+     * 关闭预取线程池
+     */
+    @Override
+    public void close() {
+        this.stop();
+        this.executorService.shutdownNow();
+    }
+
+    /** 补充请求中的分页到 concurrency 个 */
+    private void fill() {
+        while(!this.stopped && this.inFlight.size() < this.concurrency && this.nextOffset < this.end) {
+            final int offset = this.nextOffset;
+            this.inFlight.addLast(this.executorService.submit(() -> this.fetcher.fetch(offset)));
+            this.nextOffset += this.step;
+        }
+    }
+
+    /**
+     * @description 获取某一页
+     * @date created in 2026-10-18 07:06:52
+     * @author agent
+     */
+    @FunctionalInterface
+    public interface Fetcher<T> {
+        T fetch(int offset) throws Exception;
+    }
+
+}
@@ -10,7 +10,6 @@ import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
-import java.math.BigInteger;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.security.MessageDigest;
@@ -325,8 +324,15 @@ public class PublicUtil {
      * encodeString => s
      */
     public static String encodeHex(String encodeString, String charsetName) throws UnsupportedEncodingException {
-        StringBuilder sb = new StringBuilder();
-        byte[] bytes = encodeString.getBytes(charsetName);
+        return encodeHex(encodeString.getBytes(charsetName));
+    }
+
+    /**
+     * 16进制编码
+     * bytes => s
+     */
+    public static String encodeHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
         for (int i = 0; i < bytes.length; i++) {
             String hex = Integer.toHexString(bytes[i] & 0xFF);
             if (hex.length() < 2) {
@@ -660,12 +666,7 @@ public class PublicUtil {
         } catch (NoSuchAlgorithmException e) {
             e.printStackTrace();
         }
-        String md5code = new BigInteger(1, secretBytes).toString(16);
-        StringBuilder builder = new StringBuilder(md5code);
-        for (int i = 0, len = md5code.length(); i < 32 - len; i++) {
-            builder.insert(0, 0);
-        }
-        return builder.toString();
+        return encodeHex(secretBytes);
     }
 
     /**
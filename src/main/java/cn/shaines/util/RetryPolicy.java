@@ -0,0 +1,345 @@
+package cn.shaines.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.MalformedURLException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 请求重试策略
+ *
+ * 失败(连接异常, 超时, 响应不完整)或者响应状态码可以重试(408/429/500/502/503/504)时, 等待一段时间之后重新执行请求, 最多执行 maxAttempts 次.
+ * 等待时间按照次数指数增长(baseDelay * 2^(n-1), 不超过 maxDelay), 取其中一半加上另一半的随机值(避免同时失败的请求同时重试), 响应有 Retry-After 时至少等待该时间(超过 maxDelay 时不重试).
+ * 非幂等的请求(POST)只有在连接失败(请求没有发送)时重试, 除非设置 retryNonIdempotent.
+ * 重试预算: 每一个主机的每一个请求存入 budgetRatio 个令牌, 每一次重试消耗一个令牌, 最多保存 budgetReserve 个,
+ * 主机持续失败时重试的数量不超过请求数量的 budgetRatio 倍(加上保存的令牌), 不会因为重试放大对该主机的请求.
+ *
+ * 使用方式:
+ * RetryPolicy retryPolicy = RetryPolicy.builder().maxAttempts(3).baseDelay(200).maxDelay(5000).budgetRatio(0.2).build();
+ * session.setRetryPolicy(retryPolicy);
+ * logger.info("重试 {}", retryPolicy);
+ *
+ * @description 请求重试策略
+ * @date created in 2026-10-18 08:14:23
+ * @author agent
+ */
+public class RetryPolicy {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(RetryPolicy.class);
+
+    /** 默认可以重试的响应状态码 */
+    private static final Set<Integer> DEFAULT_RETRY_STATUSES = new HashSet<>(Arrays.asList(408, 429, 500, 502, 503, 504));
+    /** 默认可以重试的异常(包括子类), 只比较异常链中的 IOException */
+    private static final Set<Class<? extends IOException>> DEFAULT_RETRY_EXCEPTIONS = new HashSet<>(Arrays.asList(
+            SocketTimeoutException.class, SocketException.class, EOFException.class));
+    /** 非阻塞引擎的超时(java.net.http.HttpTimeoutException, JDK 11+) */
+    private static final String HTTP_TIMEOUT_EXCEPTION = "java.net.http.HttpTimeoutException";
+
+    private final int maxAttempts;                                  // 最多执行次数(包括第一次)
+    private final long baseDelay;                                   // 第一次重试的等待时间(毫秒)
+    private final long maxDelay;                                    // 最长等待时间(毫秒)
+    private final long budgetRatio;                                 // 每一个请求存入的令牌(千分之一个令牌)
+    private final long budgetReserve;                               // 最多保存的令牌(千分之一个令牌)
+    private final boolean retryNonIdempotent;                       // 非幂等的请求是否重试
+    private final Set<Integer> retryStatuses;                       // 可以重试的响应状态码
+    private final Set<Class<? extends IOException>> retryExceptions;   // 可以重试的异常
+    private final Map<String, AtomicLong> budgetMap = new ConcurrentHashMap<>(64);  // 主机 => 令牌(千分之一个令牌)
+    private final ScheduledExecutorService executor;                // 异步重试的定时器
+    private final LongAdder requests = new LongAdder();             // 请求数量(不包括重试)
+    private final LongAdder retries = new LongAdder();              // 重试数量
+    private final LongAdder recovered = new LongAdder();            // 重试之后成功的请求数量
+    private final LongAdder exhausted = new LongAdder();            // 重试预算不足放弃的数量
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = Math.max(1, builder.maxAttempts);
+        this.baseDelay = Math.max(0, builder.baseDelay);
+        this.maxDelay = Math.max(this.baseDelay, builder.maxDelay);
+        this.budgetRatio = Math.round(Math.max(0, builder.budgetRatio) * 1000);
+        this.budgetReserve = Math.max(0, builder.budgetReserve) * 1000L;
+        this.retryNonIdempotent = builder.retryNonIdempotent;
+        this.retryStatuses = builder.retryStatuses;
+        this.retryExceptions = builder.retryExceptions;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "retry-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.executor = executor;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** 阻塞执行请求, 失败时在当前线程等待之后重试 */
+    HttpURLConnectionUtil.Response execute(HttpURLConnectionUtil.Request request) {
+        String site = request.getSite();
+        AtomicLong budget = this.deposit(site);
+        for(int attempt = 1; ; attempt++) {
+            HttpURLConnectionUtil.Response response = null;
+            RuntimeException error = null;
+            try {
+                response = request.executeBlocking();
+            } catch(RuntimeException e) {
+                error = e;
+            }
+            long delay = this.retryDelay(request, attempt, response, error, budget);
+            if(delay < 0) {
+                if(error != null) {
+                    throw error;
+                }
+                return response;
+            }
+            try {
+                Thread.sleep(delay);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if(error != null) {
+                    throw error;
+                }
+                return response;
+            }
+            request.resetForRetry(site);
+        }
+    }
+
+    /** 异步执行请求, 失败时由定时器在等待之后重试(不占用线程) */
+    CompletableFuture<HttpURLConnectionUtil.Response> executeAsync(HttpURLConnectionUtil.Request request) {
+        CompletableFuture<HttpURLConnectionUtil.Response> future = new CompletableFuture<>();
+        this.attemptAsync(request, request.getSite(), 1, this.deposit(request.getSite()), future);
+        return future;
+    }
+
+    private void attemptAsync(HttpURLConnectionUtil.Request request, String site, int attempt, AtomicLong budget, CompletableFuture<HttpURLConnectionUtil.Response> future) {
+        CompletableFuture<HttpURLConnectionUtil.Response> attemptFuture;
+        try {
+            attemptFuture = request.getEngine().executeAsync(request);
+        } catch(RuntimeException e) {
+            attemptFuture = new CompletableFuture<>();
+            attemptFuture.completeExceptionally(e);
+        }
+        attemptFuture.whenComplete((response, e) -> {
+            RuntimeException error = e == null ? null : unwrap(e);
+            long delay = this.retryDelay(request, attempt, response, error, budget);
+            if(delay < 0) {
+                if(error != null) {
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete(response);
+                }
+                return;
+            }
+            this.executor.schedule(() -> {
+                request.resetForRetry(site);
+                this.attemptAsync(request, site, attempt + 1, budget, future);
+            }, delay, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * 计算重试之前的等待时间, 不需要重试时返回-1
+     * @param attempt 已经执行的次数
+     */
+    private long retryDelay(HttpURLConnectionUtil.Request request, int attempt, HttpURLConnectionUtil.Response response, RuntimeException error, AtomicLong budget) {
+        if(request.isAborted()) {
+            // 已经中止(对冲请求的另一个请求先完成)
+            return -1;
+        }
+        String reason;
+        long retryAfter = 0;
+        if(error != null) {
+            IOException cause = this.retryableCause(error);
+            if(cause == null || !(this.isIdempotent(request) || cause instanceof ConnectException)) {
+                // 不可以重试的异常; 非幂等的请求只有在连接失败(请求没有发送)时重试
+                return -1;
+            }
+            reason = cause.toString();
+        } else {
+            if(!this.retryStatuses.contains(response.getCode()) || !this.isIdempotent(request)) {
+                if(attempt > 1) {
+                    this.recovered.increment();
+                }
+                return -1;
+            }
+            reason = "status " + response.getCode();
+            retryAfter = HostRateLimiter.parseRetryAfter(response.getHeaderField(HttpURLConnectionUtil.Constant.RETRY_AFTER));
+        }
+        if(attempt >= this.maxAttempts) {
+            logger.debug("{} 已经执行 {} 次, 不再重试, {}", request.getSite(), attempt, reason);
+            return -1;
+        }
+        if(retryAfter > this.maxDelay) {
+            logger.debug("{} Retry-After {}ms 超过最长等待时间, 不再重试", request.getSite(), retryAfter);
+            return -1;
+        }
+        if(!withdraw(budget)) {
+            this.exhausted.increment();
+            logger.debug("{} 重试预算不足, 不再重试, {}", request.getSite(), reason);
+            return -1;
+        }
+        this.retries.increment();
+        // 指数增长, 一半固定一半随机
+        long backoff = Math.min(this.maxDelay, this.baseDelay << Math.min(attempt - 1, 30));
+        long delay = Math.max(retryAfter, backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+        logger.info("{} 第{}次重试, 等待 {}ms, {}", request.getSite(), attempt, delay, reason);
+        return delay;
+    }
+
+    /** 异常链中可以重试的 IOException, 没有时返回null */
+    private IOException retryableCause(Throwable error) {
+        for(Throwable cause = error; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if(!(cause instanceof IOException)) {
+                continue;
+            }
+            for(Class<? extends IOException> type : this.retryExceptions) {
+                if(type.isInstance(cause)) {
+                    return (IOException) cause;
+                }
+            }
+            for(Class<?> type = cause.getClass(); type != null; type = type.getSuperclass()) {
+                if(HTTP_TIMEOUT_EXCEPTION.equals(type.getName())) {
+                    return (IOException) cause;
+                }
+            }
+            if(cause.getClass() == IOException.class && this.retryExceptions == DEFAULT_RETRY_EXCEPTIONS) {
+                // 没有具体类型的 IOException 通常是连接被关闭(比如 Premature EOF, Connection reset)
+                return (IOException) cause;
+            }
+        }
+        return null;
+    }
+
+    /** 请求是否幂等(可以重复发送) */
+    private boolean isIdempotent(HttpURLConnectionUtil.Request request) {
+        return this.retryNonIdempotent || request.getMethod() != HttpURLConnectionUtil.Method.POST;
+    }
+
+    /** 请求存入令牌, 返回该主机的令牌 */
+    private AtomicLong deposit(String site) {
+        this.requests.increment();
+        AtomicLong budget = this.budgetMap.computeIfAbsent(hostOf(site), k -> new AtomicLong(this.budgetReserve));
+        budget.accumulateAndGet(this.budgetRatio, (balance, ratio) -> Math.min(this.budgetReserve, balance + ratio));
+        return budget;
+    }
+
+    /** 重试消耗一个令牌, 不足时返回 false */
+    private static boolean withdraw(AtomicLong budget) {
+        for(long balance = budget.get(); balance >= 1000; balance = budget.get()) {
+            if(budget.compareAndSet(balance, balance - 1000)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String hostOf(String site) {
+        try {
+            return HostRateLimiter.hostOf(new URL(site));
+        } catch(MalformedURLException e) {
+            return String.valueOf(site);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+    }
+
+    /** 获取 统计 [请求数量, 重试数量, 重试之后成功的数量, 重试预算不足放弃的数量] */
+    public long[] getStats() {
+        return new long[] {this.requests.sum(), this.retries.sum(), this.recovered.sum(), this.exhausted.sum()};
+    }
+
+    @Override
+    public String toString() {
+        long requests = this.requests.sum();
+        return String.format("RetryPolicy{requests=%d, retries=%d, recovered=%d, exhausted=%d, retryRate=%.1f%%}",
+                requests, this.retries.sum(), this.recovered.sum(), this.exhausted.sum(), requests == 0 ? 0D : this.retries.sum() * 100D / requests);
+    }
+
+    public static class Builder {
+        private int maxAttempts = 3;
+        private long baseDelay = 200;
+        private long maxDelay = 5000;
+        private double budgetRatio = 0.2;
+        private int budgetReserve = 10;
+        private boolean retryNonIdempotent = false;
+        private Set<Integer> retryStatuses = DEFAULT_RETRY_STATUSES;
+        private Set<Class<? extends IOException>> retryExceptions = DEFAULT_RETRY_EXCEPTIONS;
+
+        /** 最多执行次数(包括第一次), 1表示不重试 */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /** 第一次重试的等待时间(毫秒), 之后每次翻倍 */
+        public Builder baseDelay(long baseDelay) {
+            this.baseDelay = baseDelay;
+            return this;
+        }
+
+        /** 最长等待时间(毫秒), Retry-After 超过该值时不重试 */
+        public Builder maxDelay(long maxDelay) {
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        /** 重试预算: 每一个请求存入的令牌(重试数量占请求数量的比例) */
+        public Builder budgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+            return this;
+        }
+
+        /** 重试预算: 每一个主机最多保存的令牌(请求很少时也可以重试的数量) */
+        public Builder budgetReserve(int budgetReserve) {
+            this.budgetReserve = budgetReserve;
+            return this;
+        }
+
+        /** 非幂等的请求(POST)在请求已经发送之后失败时是否重试 */
+        public Builder retryNonIdempotent(boolean retryNonIdempotent) {
+            this.retryNonIdempotent = retryNonIdempotent;
+            return this;
+        }
+
+        /** 可以重试的响应状态码(替换默认的 408/429/500/502/503/504) */
+        public Builder retryStatuses(Integer... statuses) {
+            this.retryStatuses = new HashSet<>(Arrays.asList(statuses));
+            return this;
+        }
+
+        /** 可以重试的异常(包括子类, 替换默认的超时/连接异常/响应不完整) */
+        @SafeVarargs
+        public final Builder retryExceptions(Class<? extends IOException>... exceptions) {
+            // 逐个复制(不把可变参数数组传出去)
+            this.retryExceptions = new HashSet<>(exceptions.length * 2);
+            for(Class<? extends IOException> exception : exceptions) {
+                this.retryExceptions.add(exception);
+            }
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+package cn.shaines.util;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 去重集合, 所有实现都是线程安全的
+ *
+ * 使用方式:
+ * SeenSet seenSet = SeenSet.of("bloom", 100000, 0.0001);
+ * if(seenSet.add(url)) {
+ *     // 第一次出现
+ * }
+ *
+ * @description 去重集合
+ * @date created in 2026-10-18 07:14:14
+ * @author agent
+ */
+public interface SeenSet {
+
+    String MODE_EXACT = "exact";
+    String MODE_BLOOM = "bloom";
+
+    /**
+     * 添加元素
+     * @return 之前不存在返回 true (布隆过滤器模式下有极小概率误判为已存在)
+     */
+    boolean add(String value);
+
+    /**
+     * 是否已经存在
+     */
+    boolean contains(String value);
+
+    /**
+     * 已添加的元素数量
+     */
+    long size();
+
+    /**
+     * 根据模式创建
+     * @param mode exact: 精确去重(并发哈希集合), bloom: 布隆过滤器(内存占用小, 有误判率)
+     * @param expectedSize 预计元素数量
+     * @param fpp 布隆过滤器误判率
+     */
+    static SeenSet of(String mode, long expectedSize, double fpp) {
+        if(MODE_BLOOM.equalsIgnoreCase(mode)) {
+            return new Bloom(expectedSize, fpp);
+        }
+        return new Exact((int) Math.min(Integer.MAX_VALUE, expectedSize));
+    }
+
+    /**
+     * @description 精确去重, 基于 ConcurrentHashMap, O(1)
+     * @date created in 2026-10-18 07:14:14
+     * @author agent
+     */
+    class Exact implements SeenSet {
+
+        private final Set<String> set;
+
+        public Exact(int expectedSize) {
+            this.set = ConcurrentHashMap.newKeySet(Math.max(16, expectedSize));
+        }
+
+        @Override
+        public boolean add(String value) {
+            return this.set.add(value);
+        }
+
+        @Override
+        public boolean contains(String value) {
+            return this.set.contains(value);
+        }
+
+        @Override
+        public long size() {
+            return this.set.size();
+        }
+
+        @Override
+        public String toString() {
+            return "SeenSet.Exact{size=" + this.set.size() + "}";
+        }
+    }
+
+    /**
+     * @description 布隆过滤器去重, 分段加锁减少多线程竞争 (guava 的 BloomFilter 本身不是线程安全的)
+     * @date created in 2026-10-18 07:14:14
+     * @author agent
+     */
+    class Bloom implements SeenSet {
+
+        private static final int STRIPES = 16;                 // 分段数量(2的幂)
+
+        private final List<BloomFilter<CharSequence>> filters;
+        private final AtomicLong count = new AtomicLong();
+        private final long expectedSize;
+        private final double fpp;
+
+        public Bloom(long expectedSize, double fpp) {
+            this.expectedSize = Math.max(STRIPES, expectedSize);
+            this.fpp = fpp > 0 && fpp < 1 ? fpp : 0.0001;
+            this.filters = new ArrayList<>(STRIPES);
+            for(int i = 0; i < STRIPES; i++) {
+                this.filters.add(BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), (int) Math.min(Integer.MAX_VALUE, this.expectedSize / STRIPES), this.fpp));
+            }
+        }
+
+        @Override
+        public boolean add(String value) {
+            BloomFilter<CharSequence> filter = this.stripe(value);
+            boolean added;
+            synchronized(filter) {
+                // put 返回 true 说明有比特位发生变化, 那么一定是新元素
+                added = filter.put(value);
+            }
+            if(added) {
+                this.count.incrementAndGet();
+            }
+            return added;
+        }
+
+        @Override
+        public boolean contains(String value) {
+            BloomFilter<CharSequence> filter = this.stripe(value);
+            synchronized(filter) {
+                return filter.mightContain(value);
+            }
+        }
+
+        @Override
+        public long size() {
+            return this.count.get();
+        }
+
+        private BloomFilter<CharSequence> stripe(String value) {
+            int hash = value.hashCode();
+            return this.filters.get((hash ^ (hash >>> 16)) & (STRIPES - 1));
+        }
+
+        @Override
+        public String toString() {
+            return "SeenSet.Bloom{size=" + this.count.get() + ", expectedSize=" + this.expectedSize + ", fpp=" + this.fpp + "}";
+        }
+    }
+
+}
@@ -42,8 +42,14 @@ public class ThreadPoolUtil {
      * 关闭线程池
      */
     public void shutdown(){
-        this.cachedThreadPool.shutdown();                   // 关闭
-        this.monitorExecutorPool.shutdown();
+        if (this.needMonitorWorkerFlag) {
+            return;                                         // 还没有开启或者已经关闭
+        }
+        synchronized (ThreadPoolUtil.class) {
+            this.cachedThreadPool.shutdown();               // 关闭
+            this.monitorExecutorPool.shutdown();
+            this.needMonitorWorkerFlag = true;              // 下次提交时重新开启
+        }
         logger.debug("关闭线程池");
     }
 
@@ -0,0 +1,121 @@
+package cn.shaines.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 虚拟线程(JDK 21+)
+ *
+ * 项目按照 Java 8 编译, 这里通过反射在运行时判断是否支持虚拟线程, 不支持时使用普通线程.
+ * 开启之后每一个下载和分页请求使用一个虚拟线程, 阻塞在网络读取时不占用系统线程,
+ * 同时下载的数量由调用方的信号量限制, 而不是线程池的大小.
+ *
+ * 使用方式:
+ * VirtualThreadUtil.setEnabled(true);
+ * ThreadFactory factory = VirtualThreadUtil.newThreadFactory("download-");
+ * ExecutorService executor = VirtualThreadUtil.newExecutor("prefetch-", 3);
+ *
+ * @description 虚拟线程工具
+ * @date created in 2026-10-18 07:32:14
+ * @author agent
+ */
+public class VirtualThreadUtil {
+
+    private static final LoggerFactory.Logger logger = LoggerFactory.getLogger(VirtualThreadUtil.class);
+
+    private static final Method OF_VIRTUAL;                         // Thread.ofVirtual()
+    private static final Method BUILDER_NAME;                       // Thread.Builder.name(String, long)
+    private static final Method BUILDER_FACTORY;                    // Thread.Builder.factory()
+    private static final Method THREAD_PER_TASK_EXECUTOR;           // Executors.newThreadPerTaskExecutor(ThreadFactory)
+    private static volatile boolean enabled = false;                // 是否使用虚拟线程
+
+    static {
+        Method ofVirtual = null, name = null, factory = null, executor = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            name = builderClass.getMethod("name", String.class, long.class);
+            factory = builderClass.getMethod("factory");
+            executor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch(ReflectiveOperationException e) {
+            // JDK 21 以下不支持虚拟线程
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_FACTORY = factory;
+        THREAD_PER_TASK_EXECUTOR = executor;
+    }
+
+    private VirtualThreadUtil() {}
+
+    /** 当前运行的 JDK 是否支持虚拟线程 */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /** 是否使用虚拟线程 */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 设置是否使用虚拟线程, 当前 JDK 不支持时忽略
+     * @return 实际是否使用虚拟线程
+     */
+    public static boolean setEnabled(boolean enabled) {
+        if(enabled && !isSupported()) {
+            logger.warn("当前JDK版本 {} 不支持虚拟线程(需要JDK 21+), 使用普通线程", System.getProperty("java.version"));
+        }
+        VirtualThreadUtil.enabled = enabled && isSupported();
+        return VirtualThreadUtil.enabled;
+    }
+
+    /**
+     * 创建线程工厂: 开启时创建虚拟线程, 否则创建守护线程
+     * @param prefix 线程名称前缀, 后面加上序号
+     */
+    public static ThreadFactory newThreadFactory(String prefix) {
+        if(enabled) {
+            try {
+                Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+                return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            } catch(ReflectiveOperationException e) {
+                logger.warn("创建虚拟线程工厂失败, 使用普通线程", e);
+            }
+        }
+        return newPlatformThreadFactory(prefix);
+    }
+
+    /**
+     * 创建线程池: 开启时每一个任务一个虚拟线程(同时执行的数量由调用方限制), 否则固定 threads 个守护线程
+     * @param prefix 线程名称前缀
+     * @param threads 普通线程的数量
+     */
+    public static ExecutorService newExecutor(String prefix, int threads) {
+        ThreadFactory factory = newThreadFactory(prefix);
+        if(enabled) {
+            try {
+                return (ExecutorService) THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+            } catch(ReflectiveOperationException e) {
+                logger.warn("创建虚拟线程池失败, 使用普通线程", e);
+                factory = newPlatformThreadFactory(prefix);
+            }
+        }
+        return Executors.newFixedThreadPool(Math.max(1, threads), factory);
+    }
+
+    /** 创建守护线程的线程工厂 */
+    private static ThreadFactory newPlatformThreadFactory(String prefix) {
+        AtomicInteger index = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
@@ -0,0 +1,121 @@
+package cn.shaines.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 断点续传日志: 重放, 续传偏移量, 末尾不完整的记录
+ *
+ * @description CheckpointJournal 测试
+ * @date created in 2026-10-18 08:44:13
+ * @author agent
+ */
+public class CheckpointJournalTest {
+
+    private static final int HEADER = 4;                            // 魔数
+    private static final int RECORD = 9;                            // 一条记录
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reopenRestoresHandledUrlsAndSavedCount() throws IOException {
+        Path path = folder.getRoot().toPath().resolve(".checkpoint");
+        try(CheckpointJournal journal = CheckpointJournal.open(path, 1000)) {
+            assertEquals(0, journal.getSavedCount());
+            journal.saved("http://a.com/1.jpg");
+            journal.saved("http://a.com/2.jpg");
+            journal.skipped("http://a.com/3.jpg");
+            // 写入之前也可以查询
+            assertTrue(journal.isHandled("http://a.com/1.jpg"));
+        }
+        try(CheckpointJournal journal = CheckpointJournal.open(path, 1000)) {
+            assertTrue(journal.isHandled("http://a.com/1.jpg"));
+            assertTrue(journal.isHandled("http://a.com/2.jpg"));
+            assertTrue(journal.isHandled("http://a.com/3.jpg"));
+            assertFalse(journal.isHandled("http://a.com/4.jpg"));
+            // 跳过的图片不计入已保存数量
+            assertEquals(2, journal.getSavedCount());
+        }
+    }
+
+    @Test
+    public void resumeOffsetIsFirstPageAfterContiguousPrefix() throws IOException {
+        Path path = folder.getRoot().toPath().resolve(".checkpoint");
+        try(CheckpointJournal journal = CheckpointJournal.open(path, 1000)) {
+            assertEquals(0, journal.resumeOffset("baidu-pc", 30));
+            journal.pageDone("baidu-pc", 0);
+            journal.pageDone("baidu-pc", 30);
+            // 60 失败, 90 完成: 续传从 60 开始
+            journal.pageDone("baidu-pc", 90);
+            journal.pageDone("baidu-mobile", 0);
+            assertEquals(60, journal.resumeOffset("baidu-pc", 30));
+        }
+        try(CheckpointJournal journal = CheckpointJournal.open(path, 1000)) {
+            assertEquals(60, journal.resumeOffset("baidu-pc", 30));
+            // 每一个来源单独计算
+            assertEquals(20, journal.resumeOffset("baidu-mobile", 20));
+            assertEquals(0, journal.resumeOffset("other", 30));
+        }
+    }
+
+    @Test
+    public void tornLastRecordIsTruncatedOnReplay() throws IOException {
+        Path path = folder.getRoot().toPath().resolve(".checkpoint");
+        try(CheckpointJournal journal = CheckpointJournal.open(path, 1000)) {
+            journal.saved("http://a.com/1.jpg");
+            journal.pageDone("baidu-pc", 0);
+        }
+        assertEquals(HEADER + 2 * RECORD, Files.size(path));
+        // 模拟写入一条记录时崩溃: 只写入了一部分
+        Files.write(path, new byte[] {'S', 1, 2, 3, 4}, StandardOpenOption.APPEND);
+        try(CheckpointJournal journal = CheckpointJournal.open(path, 1000)) {
+            assertEquals(HEADER + 2 * RECORD, Files.size(path));
+            assertTrue(journal.isHandled("http://a.com/1.jpg"));
+            assertEquals(1, journal.getSavedCount());
+            assertEquals(30, journal.resumeOffset("baidu-pc", 30));
+            // 截断之后继续追加, 记录仍然对齐
+            journal.saved("http://a.com/2.jpg");
+        }
+        assertEquals(HEADER + 3 * RECORD, Files.size(path));
+        try(CheckpointJournal journal = CheckpointJournal.open(path, 1000)) {
+            assertTrue(journal.isHandled("http://a.com/2.jpg"));
+            assertEquals(2, journal.getSavedCount());
+        }
+    }
+
+    @Test
+    public void replaysMoreRecordsThanOneReadBuffer() throws IOException {
+        Path path = folder.getRoot().toPath().resolve(".checkpoint");
+        // 超过重放时一次读取的数量(64K 条), 记录跨越读取缓冲区的边界
+        int count = 70000;
+        try(CheckpointJournal journal = CheckpointJournal.open(path, 1000)) {
+            for(int i = 0; i < count; i++) {
+                journal.saved("http://a.com/" + i + ".jpg");
+            }
+        }
+        try(CheckpointJournal journal = CheckpointJournal.open(path, 1000)) {
+            assertEquals(count, journal.getSavedCount());
+            assertTrue(journal.isHandled("http://a.com/0.jpg"));
+            assertTrue(journal.isHandled("http://a.com/" + (count - 1) + ".jpg"));
+            assertFalse(journal.isHandled("http://a.com/" + count + ".jpg"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsFileWithoutMagic() throws IOException {
+        Path path = folder.getRoot().toPath().resolve(".checkpoint");
+        Files.write(path, new byte[] {'n', 'o', 'p', 'e', 0, 0, 0, 0, 0});
+        CheckpointJournal.open(path, 1000).close();
+    }
+}
@@ -0,0 +1,198 @@
+package cn.shaines.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 熔断状态: 失败率达到阈值时打开, 打开时直接失败, openMillis 之后半开, 探测请求成功时关闭, 失败时重新打开, 释放探测请求的名额
+ *
+ * @description CircuitBreaker 测试
+ * @date created in 2026-10-18 12:03:37
+ * @author agent
+ */
+public class CircuitBreakerTest {
+
+    private static final String HOST = "example.com:80";
+    /** 打开之后多久半开(毫秒) */
+    private static final long OPEN_MILLIS = 100;
+
+    @Test
+    public void opensOnlyAfterMinCalls() {
+        CircuitBreaker breaker = builder().minCalls(4).failureRate(0.5).build();
+        for(int i = 0; i < 3; i++) {
+            call(breaker, false);
+        }
+        // 失败率 100%, 但是请求数量不足
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        call(breaker, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+        assertEquals(Collections.singletonMap(HOST, CircuitBreaker.State.OPEN), breaker.getStates());
+        assertEquals("[1, 0, 0, 0]", Arrays.toString(breaker.getStats()));
+    }
+
+    @Test
+    public void opensWhenFailureRateReached() {
+        CircuitBreaker breaker = builder().windowSize(10).minCalls(4).failureRate(0.5).build();
+        calls(breaker, true, true, true, false);
+        // 1/4
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        calls(breaker, false);
+        // 2/5
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        calls(breaker, false);
+        // 3/6
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+    }
+
+    @Test
+    public void windowForgetsOldResults() {
+        CircuitBreaker breaker = builder().windowSize(4).minCalls(4).failureRate(0.75).build();
+        calls(breaker, false, false, true, true, true, true);
+        // 窗口中的结果: 成功, 成功, 成功, 成功 => 成功, 成功, 失败, 失败
+        calls(breaker, false, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        // 成功, 失败, 失败, 失败
+        calls(breaker, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+    }
+
+    @Test
+    public void openRejectsWithCircuitOpenException() {
+        CircuitBreaker breaker = opened(builder().openMillis(10000).build());
+        try {
+            breaker.acquire(HOST);
+            fail("熔断器打开时应该直接失败");
+        } catch(CircuitBreaker.CircuitOpenException e) {
+            assertEquals(HOST, e.getHost());
+            assertTrue(String.valueOf(e.getWaitMillis()), e.getWaitMillis() > 0 && e.getWaitMillis() <= 10000);
+        }
+        // 打开之前发送的请求的结果不记录
+        breaker.record(HOST, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+        assertEquals(1, breaker.getStats()[3]);
+        // 其他主机不受影响
+        breaker.acquire("example.org:80");
+    }
+
+    @Test
+    public void halfOpenAfterOpenMillis() throws InterruptedException {
+        CircuitBreaker breaker = opened(builder().build());
+        Thread.sleep(OPEN_MILLIS + 50);
+        breaker.acquire(HOST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        assertEquals(1, breaker.getStats()[1]);
+    }
+
+    @Test
+    public void probesCloseBreaker() throws InterruptedException {
+        CircuitBreaker breaker = halfOpened(builder().halfOpenCalls(2).build());
+        // 半开之后已经放行一个探测请求, 再放行一个
+        breaker.acquire(HOST);
+        assertRejected(breaker);
+        breaker.record(HOST, true);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        breaker.record(HOST, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        assertEquals(1, breaker.getStats()[2]);
+        // 关闭之后重新统计, 一个失败不会打开
+        call(breaker, false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    public void probeFailureReopens() throws InterruptedException {
+        CircuitBreaker breaker = halfOpened(builder().halfOpenCalls(3).build());
+        breaker.record(HOST, true);
+        breaker.acquire(HOST);
+        breaker.record(HOST, false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+        assertEquals(2, breaker.getStats()[0]);
+        assertRejected(breaker);
+    }
+
+    @Test
+    public void releaseReturnsProbeSlot() throws InterruptedException {
+        CircuitBreaker breaker = halfOpened(builder().halfOpenCalls(1).build());
+        assertRejected(breaker);
+        // 探测请求被中止, 没有结果
+        breaker.release(HOST);
+        breaker.acquire(HOST);
+        assertRejected(breaker);
+        breaker.record(HOST, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    public void staleProbesAreReleasedAfterOpenMillis() throws InterruptedException {
+        CircuitBreaker breaker = halfOpened(builder().halfOpenCalls(1).build());
+        assertRejected(breaker);
+        // 探测请求 openMillis 之内没有结果, 再放行一批
+        Thread.sleep(OPEN_MILLIS + 50);
+        breaker.acquire(HOST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+    }
+
+    @Test
+    public void failureClassification() {
+        assertTrue(CircuitBreaker.isFailure(500));
+        assertTrue(CircuitBreaker.isFailure(503));
+        assertFalse(CircuitBreaker.isFailure(404));
+        assertFalse(CircuitBreaker.isFailure(200));
+        assertTrue(CircuitBreaker.isFailure(new RuntimeException(new SocketTimeoutException())));
+        assertTrue(CircuitBreaker.isFailure(new UncheckedIOException(new IOException("Premature EOF"))));
+        assertFalse(CircuitBreaker.isFailure(new CircuitBreaker.CircuitOpenException(HOST, 0)));
+        assertFalse(CircuitBreaker.isFailure(new IllegalStateException()));
+    }
+
+    private static CircuitBreaker.Builder builder() {
+        return CircuitBreaker.builder().windowSize(4).minCalls(4).failureRate(0.5).openMillis(OPEN_MILLIS).halfOpenCalls(1);
+    }
+
+    /** 一个请求: 获取许可, 记录结果 */
+    private static void call(CircuitBreaker breaker, boolean success) {
+        breaker.acquire(HOST);
+        breaker.record(HOST, success);
+    }
+
+    private static void calls(CircuitBreaker breaker, boolean... results) {
+        for(boolean success : results) {
+            call(breaker, success);
+        }
+    }
+
+    /** 连续失败直到打开 */
+    private static CircuitBreaker opened(CircuitBreaker breaker) {
+        while(breaker.getState(HOST) == CircuitBreaker.State.CLOSED) {
+            call(breaker, false);
+        }
+        return breaker;
+    }
+
+    /** 打开之后等待半开, 已经放行一个探测请求 */
+    private static CircuitBreaker halfOpened(CircuitBreaker breaker) throws InterruptedException {
+        opened(breaker);
+        Thread.sleep(OPEN_MILLIS + 50);
+        breaker.acquire(HOST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        return breaker;
+    }
+
+    private static void assertRejected(CircuitBreaker breaker) {
+        try {
+            breaker.acquire(HOST);
+            fail("熔断器打开或者探测请求已满时应该直接失败");
+        } catch(CircuitBreaker.CircuitOpenException e) {
+            assertEquals(HOST, e.getHost());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package cn.shaines.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 响应体解码: gzip / deflate(zlib 和 原始) 的往返, gzip 尾部校验, 空响应体, 多重编码
+ *
+ * @description ContentDecoder 测试
+ * @date created in 2026-10-18 09:02:41
+ * @author agent
+ */
+public class ContentDecoderTest {
+
+    /** 超过解码缓冲区(8KB), 一部分可以压缩一部分不能压缩 */
+    private static final byte[] BODY = body(50000);
+
+    @Test
+    public void gzipRoundTrip() throws IOException {
+        assertArrayEquals(BODY, decode("gzip", gzip(BODY), Integer.MAX_VALUE));
+        assertArrayEquals(BODY, decode(" GZIP ", gzip(BODY), Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void gzipWithOptionalHeaderFields() throws IOException {
+        byte[] plain = gzip(BODY);
+        // FEXTRA(2 + 3), FNAME, FCOMMENT, FHCRC(2)
+        byte[] extra = {3, 0, 'a', 'b', 'c'};
+        byte[] name = "1.jpg\0".getBytes(StandardCharsets.ISO_8859_1);
+        byte[] comment = "comment\0".getBytes(StandardCharsets.ISO_8859_1);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(plain, 0, 10);
+        outputStream.write(extra);
+        outputStream.write(name);
+        outputStream.write(comment);
+        outputStream.write(new byte[] {0, 0});
+        outputStream.write(plain, 10, plain.length - 10);
+        byte[] gzip = outputStream.toByteArray();
+        gzip[3] = 4 | 8 | 16 | 2;
+        assertArrayEquals(BODY, decode("gzip", gzip, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void deflateSniffsZlibAndRawStreams() throws IOException {
+        assertArrayEquals(BODY, decode("deflate", deflate(BODY, false), Integer.MAX_VALUE));
+        // 部分服务器返回没有 zlib 头的原始 deflate
+        assertArrayEquals(BODY, decode("deflate", deflate(BODY, true), Integer.MAX_VALUE));
+        byte[] small = "a".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(small, decode("deflate", deflate(small, false), Integer.MAX_VALUE));
+        assertArrayEquals(small, decode("deflate", deflate(small, true), Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void gzipTrailerSplitAcrossInflaterBuffer() throws IOException {
+        byte[] gzip = gzip(BODY);
+        // 每次读取的数量不同, 尾部(8 字节)在 Inflater 缓冲区和后面的输入流之间的分割位置不同
+        for(int chunk = 1; chunk <= 16; chunk++) {
+            assertArrayEquals("chunk " + chunk, BODY, decode("gzip", gzip, chunk));
+        }
+        // 尾部从缓冲区的任意位置开始
+        byte[] small = "hello gzip".getBytes(StandardCharsets.UTF_8);
+        byte[] smallGzip = gzip(small);
+        for(int chunk = 1; chunk <= smallGzip.length; chunk++) {
+            assertArrayEquals("chunk " + chunk, small, decode("gzip", smallGzip, chunk));
+        }
+    }
+
+    @Test
+    public void gzipCorruptCrcFails() throws IOException {
+        byte[] gzip = gzip(BODY);
+        gzip[gzip.length - 8] ^= 1;
+        assertCorrupt(gzip);
+    }
+
+    @Test
+    public void gzipCorruptLengthFails() throws IOException {
+        byte[] gzip = gzip(BODY);
+        gzip[gzip.length - 1] ^= 1;
+        assertCorrupt(gzip);
+    }
+
+    @Test
+    public void gzipTruncatedTrailerFails() throws IOException {
+        byte[] gzip = gzip(BODY);
+        try {
+            decode("gzip", Arrays.copyOf(gzip, gzip.length - 3), Integer.MAX_VALUE);
+            fail("truncated trailer accepted");
+        } catch(EOFException e) {
+            // 尾部不完整
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void notGzipFails() throws IOException {
+        decode("gzip", BODY, Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void emptyBody() throws IOException {
+        // 没有响应体(比如 304)时不解码
+        assertArrayEquals(new byte[0], decode("gzip", new byte[0], Integer.MAX_VALUE));
+        assertArrayEquals(new byte[0], decode("deflate", new byte[0], Integer.MAX_VALUE));
+        // 压缩之后的空内容
+        assertArrayEquals(new byte[0], decode("gzip", gzip(new byte[0]), Integer.MAX_VALUE));
+        assertArrayEquals(new byte[0], decode("deflate", deflate(new byte[0], false), Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void multipleEncodingsDecodeInReverseOrder() throws IOException {
+        assertArrayEquals(BODY, decode("gzip, gzip", gzip(gzip(BODY)), Integer.MAX_VALUE));
+        assertArrayEquals(BODY, decode("deflate, gzip", gzip(deflate(BODY, false)), 7));
+    }
+
+    @Test
+    public void identityAndUnsupportedEncodingReturnRawBody() throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(BODY);
+        assertSame(inputStream, ContentDecoder.decode(null, inputStream));
+        assertSame(inputStream, ContentDecoder.decode("identity", inputStream));
+        assertArrayEquals(BODY, decode("br", BODY, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void acceptEncodingListsRegisteredDecoders() {
+        String acceptEncoding = ContentDecoder.acceptEncoding();
+        assertTrue(acceptEncoding, acceptEncoding.contains("gzip"));
+        assertTrue(acceptEncoding, acceptEncoding.contains("deflate"));
+        assertEquals(-1, acceptEncoding.indexOf("identity"));
+    }
+
+    private static void assertCorrupt(byte[] gzip) throws IOException {
+        try {
+            decode("gzip", gzip, Integer.MAX_VALUE);
+            fail("corrupt trailer accepted");
+        } catch(ZipException e) {
+            assertEquals("Corrupt GZIP trailer", e.getMessage());
+        }
+    }
+
+    /** 解码, 输入流每次最多返回 chunk 字节 */
+    private static byte[] decode(String encoding, byte[] bytes, int chunk) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try(InputStream inputStream = ContentDecoder.decode(encoding, new ChunkedInputStream(bytes, chunk))) {
+            byte[] buffer = new byte[4096];
+            for(int length; (length = inputStream.read(buffer)) > -1; ) {
+                outputStream.write(buffer, 0, length);
+            }
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try(OutputStream gzip = new GZIPOutputStream(outputStream)) {
+            gzip.write(bytes);
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] bytes, boolean nowrap) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+        try(OutputStream deflate = new DeflaterOutputStream(outputStream, deflater)) {
+            deflate.write(bytes);
+        } finally {
+            deflater.end();
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static byte[] body(int size) {
+        byte[] bytes = new byte[size];
+        Random random = new Random(1);
+        for(int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i % 3 == 0 ? random.nextInt() : 'a' + i % 26);
+        }
+        return bytes;
+    }
+
+    /** 模拟 socket 的输入流: 每次最多返回 chunk 字节 */
+    private static class ChunkedInputStream extends ByteArrayInputStream {
+        private final int chunk;
+
+        private ChunkedInputStream(byte[] bytes, int chunk) {
+            super(bytes);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, this.chunk));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package cn.shaines.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * cookie 存储: Expires 解析, Domain / Path 匹配, 删除, 保存和加载
+ *
+ * @description CookieJar 测试
+ * @date created in 2026-10-18 08:47:30
+ * @author agent
+ */
+public class CookieJarTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parseExpiresAcceptsRfc1123AndLegacyForms() {
+        assertEquals(utc(2015, 10, 21, 7, 28, 0), CookieJar.parseExpires("Wed, 21 Oct 2015 07:28:00 GMT"));
+        // 两位年份: 70-99 => 19xx, 00-69 => 20xx
+        assertEquals(utc(2037, 12, 31, 23, 55, 55), CookieJar.parseExpires("Thu, 31-Dec-37 23:55:55 GMT"));
+        assertEquals(utc(1994, 11, 6, 8, 49, 37), CookieJar.parseExpires("Sunday, 06-Nov-94 08:49:37 GMT"));
+        assertEquals(1000L, CookieJar.parseExpires("Thu, 01-Jan-1970 00:00:01 GMT"));
+        // asctime 格式(顺序不同)
+        assertEquals(utc(1994, 11, 6, 8, 49, 37), CookieJar.parseExpires("Sun Nov  6 08:49:37 1994"));
+    }
+
+    @Test
+    public void parseExpiresRejectsInvalidDates() {
+        assertEquals(-1L, CookieJar.parseExpires(""));
+        assertEquals(-1L, CookieJar.parseExpires("tomorrow"));
+        // 没有时间
+        assertEquals(-1L, CookieJar.parseExpires("Wed, 21 Oct 2015 GMT"));
+        // 日期不存在
+        assertEquals(-1L, CookieJar.parseExpires("Mon, 30 Feb 2015 00:00:00 GMT"));
+        // 年份早于 1601
+        assertEquals(-1L, CookieJar.parseExpires("Mon, 01 Jan 1600 00:00:00 GMT"));
+    }
+
+    @Test
+    public void domainCookieMatchesSubdomainsButHostOnlyDoesNot() {
+        CookieJar jar = new CookieJar();
+        jar.saveFromResponse("http://a.example.com/", Arrays.asList("shared=1; Domain=.example.com", "own=2"));
+        assertEquals("shared=1; own=2", jar.cookieHeader("http://a.example.com/"));
+        assertEquals("shared=1", jar.cookieHeader("http://b.example.com/"));
+        assertEquals("shared=1", jar.cookieHeader("http://example.com/"));
+        assertNull(jar.cookieHeader("http://example.org/"));
+        // 不是上级域名的 Domain 拒绝
+        jar.saveFromResponse("http://a.example.com/", Collections.singletonList("evil=1; Domain=other.com"));
+        assertNull(jar.cookieHeader("http://other.com/"));
+        assertEquals(2, jar.getCookies().size());
+    }
+
+    @Test
+    public void pathFilteringAndOrder() {
+        CookieJar jar = new CookieJar();
+        jar.saveFromResponse("http://example.com/", Arrays.asList("root=1; Path=/", "sub=2; Path=/sub"));
+        // 默认路径: 请求路径最后一个 "/" 之前的部分
+        jar.saveFromResponse("http://example.com/dir/page", Collections.singletonList("dir=3"));
+        assertEquals("root=1", jar.cookieHeader("http://example.com/"));
+        // 路径长的在前面
+        assertEquals("sub=2; root=1", jar.cookieHeader("http://example.com/sub"));
+        assertEquals("sub=2; root=1", jar.cookieHeader("http://example.com/sub/page?x=1"));
+        // /subway 不匹配 /sub
+        assertEquals("root=1", jar.cookieHeader("http://example.com/subway"));
+        assertEquals("dir=3; root=1", jar.cookieHeader("http://example.com/dir/other"));
+    }
+
+    @Test
+    public void secureCookieOnlySentOverHttps() {
+        CookieJar jar = new CookieJar();
+        jar.saveFromResponse("https://example.com/", Arrays.asList("s=1; Secure", "p=2"));
+        assertEquals("s=1; p=2", jar.cookieHeader("https://example.com/"));
+        assertEquals("p=2", jar.cookieHeader("http://example.com/"));
+    }
+
+    @Test
+    public void maxAgeZeroOrPastExpiresDeletes() {
+        CookieJar jar = new CookieJar();
+        jar.saveFromResponse("http://example.com/", Arrays.asList("a=1", "b=2", "c=3"));
+        assertEquals("a=1; b=2; c=3", jar.cookieHeader("http://example.com/"));
+        jar.saveFromResponse("http://example.com/", Arrays.asList("a=; Max-Age=0", "b=; Max-Age=-1", "c=; Expires=Thu, 01-Jan-1970 00:00:01 GMT"));
+        assertNull(jar.cookieHeader("http://example.com/"));
+        assertTrue(jar.getCookies().isEmpty());
+        // Max-Age 优先于 Expires
+        jar.saveFromResponse("http://example.com/", Collections.singletonList("d=4; Max-Age=100; Expires=Thu, 01-Jan-1970 00:00:01 GMT"));
+        assertEquals("d=4", jar.cookieHeader("http://example.com/"));
+    }
+
+    @Test
+    public void overwriteKeepsOrderAndRefreshesCachedHeader() {
+        CookieJar jar = new CookieJar();
+        jar.saveFromResponse("http://example.com/", Arrays.asList("a=1", "b=2"));
+        assertEquals("a=1; b=2", jar.cookieHeader("http://example.com/"));
+        jar.saveFromResponse("http://example.com/", Collections.singletonList("a=9"));
+        assertEquals("a=9; b=2", jar.cookieHeader("http://example.com/"));
+    }
+
+    @Test
+    public void saveAndLoadRoundTrip() throws IOException {
+        CookieJar jar = new CookieJar();
+        jar.saveFromResponse("https://a.example.com/", Arrays.asList(
+                "sid=abc; Max-Age=3600; HttpOnly",
+                "shared=1; Domain=example.com; Path=/img; Max-Age=3600; Secure",
+                "session=1"));
+        Path path = folder.getRoot().toPath().resolve("cookies.txt");
+        jar.save(path);
+        // 没有过期时间的 cookie 不保存
+        List<String> lines = Files.readAllLines(path);
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("# Netscape HTTP Cookie File"));
+        assertTrue(lines.get(1).startsWith("#HttpOnly_a.example.com\tFALSE\t/\tFALSE\t"));
+        assertTrue(lines.get(2).startsWith(".example.com\tTRUE\t/img\tTRUE\t"));
+
+        CookieJar loaded = new CookieJar();
+        assertEquals(2, loaded.load(path));
+        assertEquals("shared=1; sid=abc", loaded.cookieHeader("https://a.example.com/img/1.jpg"));
+        assertEquals("shared=1", loaded.cookieHeader("https://b.example.com/img/1.jpg"));
+        assertNull(loaded.cookieHeader("http://b.example.com/img/1.jpg"));
+        CookieJar.Cookie sid = loaded.getCookies().stream().filter(cookie -> "sid".equals(cookie.getName())).findFirst().orElse(null);
+        assertTrue(sid.isHttpOnly());
+        assertTrue(sid.isHostOnly());
+        assertFalse(sid.isSecure());
+        assertEquals(jar.getCookies().stream().filter(cookie -> "sid".equals(cookie.getName())).findFirst().get().getExpiresAt() / 1000, sid.getExpiresAt() / 1000);
+    }
+
+    @Test
+    public void loadMissingFileReturnsZero() throws IOException {
+        assertEquals(0, new CookieJar().load(folder.getRoot().toPath().resolve("none.txt")));
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute, int second) {
+        return LocalDateTime.of(year, month, day, hour, minute, second).toEpochSecond(ZoneOffset.UTC) * 1000;
+    }
+}
@@ -0,0 +1,125 @@
+package cn.shaines.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 公平调度: 份额之间轮流, 份额内的key轮流, 每一个份额排队的上限, 每一个分组同时执行的上限
+ *
+ * @description FairScheduler 测试
+ * @date created in 2026-10-18 10:05:18
+ * @author agent
+ */
+public class FairSchedulerTest {
+
+    /** key 的格式: 份额/分组 */
+    private static FairScheduler<String> newScheduler(int threads, int maxQueuedPerShare, int maxRunningPerGroup) {
+        return new FairScheduler<>("test", threads, maxQueuedPerShare, key -> key.split("/")[0], key -> key.split("/")[1], maxRunningPerGroup);
+    }
+
+    @Test
+    public void sharesWithDifferentKeyCountsGetEqualTurns() throws InterruptedException {
+        FairScheduler<String> scheduler = newScheduler(1, 100, Integer.MAX_VALUE);
+        CountDownLatch blocked = new CountDownLatch(1);
+        // 占住唯一的工作线程, 等所有任务提交完成之后再开始轮转
+        scheduler.submit("blocker/x", () -> await(blocked));
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        // a 的图片在 1 个主机上, b 的图片分布在 10 个主机上
+        for(int i = 0; i < 20; i++) {
+            scheduler.submit("a/host0", () -> order.add("a"));
+            scheduler.submit("b/host" + (i % 10), () -> order.add("b"));
+        }
+        blocked.countDown();
+        assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS));
+        scheduler.shutdown();
+        assertEquals(40, order.size());
+        for(int i = 0; i < order.size(); i += 2) {
+            // 每一轮 a 和 b 各执行一个
+            assertEquals(order.toString(), 2, order.subList(i, i + 2).stream().distinct().count());
+        }
+    }
+
+    @Test
+    public void keysRotateWithinShare() throws InterruptedException {
+        FairScheduler<String> scheduler = newScheduler(1, 100, Integer.MAX_VALUE);
+        CountDownLatch blocked = new CountDownLatch(1);
+        scheduler.submit("blocker/x", () -> await(blocked));
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        for(int i = 0; i < 2; i++) {
+            scheduler.submit("a/host0", () -> order.add("host0"));
+            scheduler.submit("a/host0", () -> order.add("host0"));
+            scheduler.submit("a/host1", () -> order.add("host1"));
+        }
+        blocked.countDown();
+        assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS));
+        scheduler.shutdown();
+        assertEquals("[host0, host1, host0, host1, host0, host0]", order.toString());
+    }
+
+    @Test
+    public void queueLimitIsPerShareAcrossKeys() throws InterruptedException {
+        FairScheduler<String> scheduler = newScheduler(1, 2, Integer.MAX_VALUE);
+        CountDownLatch blocked = new CountDownLatch(1);
+        scheduler.submit("blocker/x", () -> await(blocked));
+        // 等待 blocker 开始执行(不再排队)
+        while(scheduler.getStats().get("blocker/x")[4] == 0) {
+            Thread.sleep(5);
+        }
+        scheduler.submit("a/host0", () -> {});
+        scheduler.submit("a/host1", () -> {});
+        // 其他份额不受影响
+        scheduler.submit("b/host0", () -> {});
+        AtomicBoolean submitted = new AtomicBoolean(false);
+        Thread thread = new Thread(() -> {
+            try {
+                scheduler.submit("a/host2", () -> {});
+                submitted.set(true);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        thread.join(200);
+        // a 已经排队 2 个(不同的主机), 第 3 个阻塞
+        assertFalse(submitted.get());
+        blocked.countDown();
+        thread.join(10000);
+        assertTrue(submitted.get());
+        assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS));
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void groupAtLimitIsSkipped() throws InterruptedException {
+        FairScheduler<String> scheduler = newScheduler(2, 100, 1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch other = new CountDownLatch(1);
+        // slow 分组同时只能执行 1 个, 第二个工作线程执行 a 的其他主机
+        scheduler.submit("a/slow", () -> await(blocked));
+        scheduler.submit("a/slow", () -> {});
+        scheduler.submit("a/fast", other::countDown);
+        assertTrue(other.await(10, TimeUnit.SECONDS));
+        assertEquals(1L, scheduler.getGroupStats().get("slow")[0]);
+        blocked.countDown();
+        assertTrue(scheduler.awaitIdle(10, TimeUnit.SECONDS));
+        scheduler.shutdown();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
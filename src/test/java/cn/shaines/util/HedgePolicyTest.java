@@ -0,0 +1,243 @@
+package cn.shaines.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 对冲请求: 对冲的请求先完成时中止第一个请求, 第一个请求很快时不对冲, 都失败时使用最后一个异常, 对冲预算, 不能 fork 的 sink, POST
+ *
+ * @description HedgePolicy 测试
+ * @date created in 2026-10-18 11:42:16
+ * @author agent
+ */
+public class HedgePolicyTest {
+
+    /** 慢请求收到响应头之前等待的时间(毫秒) */
+    private static final long SLOW = 1500;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String base;
+    /** 路径 => 收到的请求数量 */
+    private final Map<String, AtomicInteger> hits = new HashMap<>();
+
+    @Before
+    public void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.start();
+        this.base = "http://127.0.0.1:" + this.server.getAddress().getPort();
+        // 很快的响应, 用于积累首字节耗时样本
+        this.serve("/fast", 0, 0);
+    }
+
+    @After
+    public void stopServer() {
+        this.server.stop(0);
+    }
+
+    @Test
+    public void backupWinsAndPrimaryIsAborted() {
+        this.serve("/slow", 1, SLOW);
+        HedgePolicy policy = policy().build();
+        HttpURLConnectionUtil.Session session = this.warmUp(policy);
+        HttpURLConnectionUtil.Request request = session.build(this.base + "/slow");
+        long start = System.currentTimeMillis();
+        HttpURLConnectionUtil.Response response = request.execute();
+        assertTrue(System.currentTimeMillis() - start < SLOW);
+        // 第二次收到的请求(对冲的请求)的响应
+        assertEquals("2", response.getBodyString());
+        assertTrue(request.isAborted());
+        assertEquals("[11, 1, 1, 0]", Arrays.toString(policy.getStats()));
+    }
+
+    @Test
+    public void backupWinsWithForkableSink() throws Exception {
+        this.serve("/slow", 1, SLOW);
+        HedgePolicy policy = policy().build();
+        HttpURLConnectionUtil.Session session = this.warmUp(policy);
+        Path file = this.folder.getRoot().toPath().resolve("img.jpg");
+        long start = System.currentTimeMillis();
+        session.build(this.base + "/slow").executeAsync(HttpURLConnectionUtil.BodySink.ofPath(file)).get();
+        assertTrue(System.currentTimeMillis() - start < SLOW);
+        assertEquals("2", new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        assertEquals(1, policy.getStats()[2]);
+    }
+
+    @Test
+    public void fastPrimaryIsNotHedged() {
+        HedgePolicy policy = policy().build();
+        HttpURLConnectionUtil.Session session = this.warmUp(policy);
+        for(int i = 0; i < 5; i++) {
+            session.build(this.base + "/fast").execute();
+        }
+        assertEquals(15, this.hits("/fast"));
+        assertEquals("[15, 0, 0, 0]", Arrays.toString(policy.getStats()));
+    }
+
+    @Test
+    public void noHedgeBeforeMinSamples() {
+        this.serve("/slow", 1, 300);
+        HedgePolicy policy = policy().minSamples(20).build();
+        HttpURLConnectionUtil.Session session = this.warmUp(policy);
+        assertEquals("1", session.build(this.base + "/slow").execute().getBodyString());
+        assertEquals(1, this.hits("/slow"));
+        assertEquals(0, policy.getStats()[1]);
+    }
+
+    @Test
+    public void bothFailPropagatesLastException() throws IOException {
+        // 第一个请求收到不完整的响应体(较晚失败), 对冲的请求换到没有监听的端口(连接失败, 较早失败)
+        this.server.createContext("/broken", exchange -> {
+            sleep(300);
+            exchange.sendResponseHeaders(200, 10);
+            exchange.getResponseBody().write(new byte[2]);
+            exchange.close();
+        });
+        String closed = "http://127.0.0.1:" + closedPort() + "/broken";
+        HedgePolicy policy = policy().hedgeWith(request -> request.copy(closed)).build();
+        HttpURLConnectionUtil.Session session = this.warmUp(policy);
+        try {
+            session.build(this.base + "/broken").execute().getBodyString();
+            fail("两个请求都失败时应该抛出异常");
+        } catch(RuntimeException e) {
+            assertTrue(String.valueOf(e), hasCause(e, EOFException.class));
+            assertFalse(String.valueOf(e), hasCause(e, ConnectException.class));
+        }
+        assertEquals(1, policy.getStats()[1]);
+        assertEquals(0, policy.getStats()[2]);
+    }
+
+    @Test
+    public void exhaustedBudgetStopsHedging() {
+        this.serve("/slow", Integer.MAX_VALUE, 300);
+        // 只有一个令牌, 请求不存入令牌
+        HedgePolicy policy = policy().budgetRatio(0).budgetReserve(1).build();
+        HttpURLConnectionUtil.Session session = this.warmUp(policy);
+        for(int i = 0; i < 3; i++) {
+            session.build(this.base + "/slow").execute();
+        }
+        assertEquals(1, policy.getStats()[1]);
+        assertEquals(2, policy.getStats()[3]);
+    }
+
+    @Test
+    public void sinkWithoutForkIsNotHedged() {
+        this.serve("/slow", 1, 300);
+        HedgePolicy policy = policy().build();
+        HttpURLConnectionUtil.Session session = this.warmUp(policy);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        session.build(this.base + "/slow").execute(HttpURLConnectionUtil.BodySink.ofOutputStream(out));
+        assertEquals("1", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(1, this.hits("/slow"));
+        assertEquals(0, policy.getStats()[1]);
+    }
+
+    @Test
+    public void postIsNotHedgedUnlessAllowed() {
+        this.serve("/slow", 1, 300);
+        HedgePolicy policy = policy().build();
+        assertEquals("1", this.warmUp(policy).buildPost(this.base + "/slow").execute().getBodyString());
+        assertEquals(0, policy.getStats()[1]);
+        // 显式允许之后对冲(对冲的请求先完成)
+        this.serve("/slow2", 1, SLOW);
+        policy = policy().hedgeNonIdempotent(true).build();
+        assertEquals("2", this.warmUp(policy).buildPost(this.base + "/slow2").execute().getBodyString());
+        assertEquals(1, policy.getStats()[1]);
+    }
+
+    /** 10 个样本之后对冲, 等待时间 100ms */
+    private static HedgePolicy.Builder policy() {
+        return HedgePolicy.builder().minSamples(10).minDelay(100).maxDelay(100);
+    }
+
+    /** 积累首字节耗时样本 */
+    private HttpURLConnectionUtil.Session warmUp(HedgePolicy policy) {
+        HttpURLConnectionUtil.Session session = HttpURLConnectionUtil.buildSession().setHedgePolicy(policy);
+        for(int i = 0; i < 10; i++) {
+            session.build(this.base + "/fast").execute();
+        }
+        return session;
+    }
+
+    /**
+     * 响应体是收到的第几个请求, 前 slowCount 个请求在响应头之前等待 delay 毫秒
+     */
+    private void serve(String path, int slowCount, long delay) {
+        AtomicInteger counter = new AtomicInteger();
+        this.hits.put(path, counter);
+        this.server.createContext(path, exchange -> {
+            int n = counter.incrementAndGet();
+            if(n <= slowCount) {
+                sleep(delay);
+            }
+            respond(exchange, String.valueOf(n));
+        });
+    }
+
+    private int hits(String path) {
+        return this.hits.get(path).get();
+    }
+
+    private static void respond(HttpExchange exchange, String body) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        } catch(IOException e) {
+            // 被中止的请求已经断开连接
+        }
+        exchange.close();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean hasCause(Throwable error, Class<? extends Throwable> type) {
+        for(Throwable cause = error; cause != null; cause = cause.getCause() == cause ? null : cause.getCause()) {
+            if(type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 一个没有监听的端口 */
+    private static int closedPort() throws IOException {
+        try(ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
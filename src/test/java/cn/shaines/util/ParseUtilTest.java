@@ -0,0 +1,184 @@
+package cn.shaines.util;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.JSONPath;
+import com.alibaba.fastjson.parser.Feature;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 流式JSON字段提取: 和 JSONPath 的结果对比(acjson / wisesearch 响应), 转义, 代理项, 截断的响应, 分组
+ *
+ * @description ParseUtil 测试
+ * @date created in 2026-10-18 10:41:26
+ * @author agent
+ */
+public class ParseUtilTest {
+
+    @Test
+    public void acjsonFieldsMatchJsonPath() throws IOException {
+        byte[] page = fixture("acjson.json");
+        // hoverURL 有空字符串, ObjURL 在 replaceUrl 数组中, width 是数字, 最后一个元素是 {}
+        for(String path : Arrays.asList("data..hoverURL", "data..thumbURL", "data..ObjURL", "data..fromPageTitle", "data..width", "displayNum")) {
+            List<String> expected = jsonPath(page, path);
+            assertFalse(path, expected.isEmpty());
+            assertEquals(path, expected, ParseUtil.compile(path).extract(page));
+        }
+    }
+
+    @Test
+    public void wisesearchFieldsMatchJsonPath() throws IOException {
+        byte[] page = fixture("wisesearch.json");
+        for(String path : Arrays.asList("linkData..thumbnailUrl", "linkData..title", "linkData..tagName", "linkData..isGif")) {
+            List<String> expected = jsonPath(page, path);
+            assertFalse(path, expected.isEmpty());
+            assertEquals(path, expected, ParseUtil.compile(path).extract(page));
+        }
+    }
+
+    @Test
+    public void groupsMatchJsonPathPerElement() throws IOException {
+        byte[] page = fixture("acjson.json");
+        String[] paths = {"data..thumbURL", "data..hoverURL", "data..ObjURL", "data..width"};
+        List<Map<String, String>> expected = new ArrayList<>();
+        JSONArray data = JSON.parseObject(new String(page, StandardCharsets.UTF_8), Feature.OrderedField).getJSONArray("data");
+        for(Object element : data) {
+            Map<String, String> map = new HashMap<>(8);
+            for(String path : paths) {
+                List<String> values = values(JSONPath.eval(element, "$.." + path.substring("data..".length())));
+                if(!values.isEmpty()) {
+                    // 同一个元素中出现多次时保留第一个
+                    map.put(path, values.get(0));
+                }
+            }
+            if(!map.isEmpty()) {
+                expected.add(map);
+            }
+        }
+        List<Map<String, String>> actual = new ArrayList<>();
+        ParseUtil.compileGroup("data", paths).extractGroups(page, actual::add);
+        assertEquals(4, actual.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void nestedObjectsAndArrays() {
+        String simple = "{\"a\":{\"b\":[{\"c\":\"1\"},{\"x\":{\"c\":\"2\"}},[[{\"c\":3}]]]},\"c\":\"4\"}";
+        assertEquals(jsonPath(bytes(simple), "a..c"), ParseUtil.compile("a..c").extract(bytes(simple)));
+        assertEquals(Arrays.asList("1", "2", "3"), ParseUtil.compile("a..c").extract(bytes(simple)));
+        // 同一个字段嵌套出现时返回所有的值(fastjson 的 JSONPath 在对象中找到字段之后不再继续向下查找)
+        String json = "{\"a\":{\"b\":[{\"c\":\"1\"},{\"x\":{\"c\":\"2\"}},[[{\"c\":3}]]]},\"c\":\"4\",\"d\":{\"c\":\"5\",\"a\":[{\"c\":\"6\"}]}}";
+        assertEquals(Arrays.asList("1", "2", "3", "6"), ParseUtil.compile("a..c").extract(bytes(json)));
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5", "6"), ParseUtil.compile("$..c").extract(bytes(json)));
+        assertEquals(Arrays.asList("6"), ParseUtil.compile("d..a..c").extract(bytes(json)));
+    }
+
+    @Test
+    public void escapesMatchJsonPath() {
+        // \" \\ \/ \n \t A 以及百度返回的不规范转义 \'
+        String json = "{\"k\":\"a\\\"b\\\\c\\/d\\'e\\nf\\tg\\u0041\\u4e2d\"}";
+        assertEquals("a\"b\\c/d'e\nf\tgA中", ParseUtil.compile("k").extract(bytes(json)).get(0));
+        assertEquals(jsonPath(bytes(json), "k"), ParseUtil.compile("k").extract(bytes(json)));
+        // 字段名称和值中的引号不会结束字符串
+        assertEquals(Arrays.asList("x\"}"), ParseUtil.compile("k").extract(bytes("{\"k\\\"\":\"1\",\"k\":\"x\\\"}\"}")));
+    }
+
+    @Test
+    public void surrogatePairs() {
+        String json = "{\"k\":\"\\ud83c\\udf19\\uD83D\\uDE00!\"}";
+        assertEquals("🌙😀!", ParseUtil.compile("k").extract(bytes(json)).get(0));
+        assertEquals(jsonPath(bytes(json), "k"), ParseUtil.compile("k").extract(bytes(json)));
+        // 没有转义的 UTF-8 四字节字符
+        assertEquals("🌙", ParseUtil.compile("k").extract(bytes("{\"k\":\"🌙\"}")).get(0));
+    }
+
+    @Test
+    public void invalidEscapes() {
+        // 高代理项后面不是低代理项: 替换为 U+FFFD, 后面的转义正常解码
+        assertEquals("�A", decode("\\ud83c\\u0041"));
+        assertEquals("�中", decode("\\ud83c\\u4e2d"));
+        assertEquals("�x", decode("\\ud83cx"));
+        assertEquals("��", decode("\\ud83c\\ud83c"));
+        // 单独的低代理项
+        assertEquals("�", decode("\\udf19"));
+        // 不是十六进制或者不完整的 \\u 原样保留
+        assertEquals("\\u00zz1", decode("\\u00zz1"));
+        assertEquals("ab\\u12", decode("ab\\u12"));
+        assertEquals("�\\u12", decode("\\ud83c\\u12"));
+    }
+
+    @Test
+    public void truncatedInputYieldsOnlyCompleteValues() throws IOException {
+        byte[] page = fixture("acjson.json");
+        for(String path : Arrays.asList("data..hoverURL", "data..width")) {
+            ParseUtil.Extractor extractor = ParseUtil.compile(path);
+            List<String> full = extractor.extract(page);
+            for(int length = 0; length < page.length; length++) {
+                List<String> values = extractor.extract(Arrays.copyOf(page, length));
+                // 截断的响应只返回完整的值, 即完整结果的前缀
+                assertTrue(path + " " + length + " " + values, values.size() <= full.size() && values.equals(full.subList(0, values.size())));
+            }
+        }
+        List<Map<String, String>> groups = new ArrayList<>();
+        ParseUtil.compileGroup("data", "data..thumbURL").extractGroups(Arrays.copyOf(page, page.length / 2), groups::add);
+        assertTrue(groups.size() < 4);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void extractGroupsRequiresGroup() {
+        ParseUtil.compile("data..thumbURL").extractGroups(bytes("{}"), group -> {});
+    }
+
+    private static String decode(String escaped) {
+        return ParseUtil.compile("k").extract(bytes("{\"k\":\"" + escaped + "\"}")).get(0);
+    }
+
+    /** JSONPath 的结果, 和 Extractor 一样忽略 null 和空字符串 */
+    private static List<String> jsonPath(byte[] bytes, String path) {
+        return values(JSONPath.eval(JSON.parseObject(new String(bytes, StandardCharsets.UTF_8), Feature.OrderedField), "$.." + path));
+    }
+
+    private static List<String> values(Object value) {
+        List<String> list = new ArrayList<>();
+        if(value instanceof List) {
+            for(Object item : (List<?>) value) {
+                if(item != null && !"".equals(item)) {
+                    list.add(String.valueOf(item));
+                }
+            }
+        } else if(value != null && !"".equals(value) && !(value instanceof JSONObject)) {
+            list.add(String.valueOf(value));
+        }
+        return list;
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] fixture(String name) throws IOException {
+        try(InputStream inputStream = ParseUtilTest.class.getResourceAsStream(name)) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for(int length; (length = inputStream.read(buffer)) > -1; ) {
+                outputStream.write(buffer, 0, length);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+}
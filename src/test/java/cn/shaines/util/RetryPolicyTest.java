@@ -0,0 +1,205 @@
+package cn.shaines.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 重试策略: 可重试状态码, Retry-After, 非幂等请求, 重试预算, 重试时请求参数和 cookie 不重复
+ *
+ * @description RetryPolicy 测试
+ * @date created in 2026-10-18 11:20:42
+ * @author agent
+ */
+public class RetryPolicyTest {
+
+    private HttpServer server;
+    private String base;
+    /** 路径 => 收到的请求数量 */
+    private final Map<String, AtomicInteger> hits = new HashMap<>();
+    /** 路径 => 每一次收到的 查询参数 和 Cookie 请求头 */
+    private final Map<String, List<String>> seen = new HashMap<>();
+
+    @Before
+    public void startServer() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.start();
+        this.base = "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        this.server.stop(0);
+    }
+
+    @Test
+    public void retryableStatusThenSuccess() {
+        this.serve("/flaky", 2, null);
+        RetryPolicy policy = RetryPolicy.builder().baseDelay(10).build();
+        HttpURLConnectionUtil.Response response = session(policy).build(this.base + "/flaky").execute();
+        assertEquals(200, (int) response.getCode());
+        assertEquals("ok", response.getBodyString());
+        assertEquals(3, this.hits("/flaky"));
+        // [请求数量, 重试数量, 重试之后成功的数量, 重试预算不足放弃的数量]
+        assertEquals("[1, 2, 1, 0]", Arrays.toString(policy.getStats()));
+    }
+
+    @Test
+    public void retryableStatusThenSuccessAsync() throws Exception {
+        this.serve("/flaky", 2, null);
+        RetryPolicy policy = RetryPolicy.builder().baseDelay(10).build();
+        HttpURLConnectionUtil.Response response = session(policy).build(this.base + "/flaky").executeAsync().get();
+        assertEquals(200, (int) response.getCode());
+        assertEquals(3, this.hits("/flaky"));
+    }
+
+    @Test
+    public void maxAttemptsLimitsRetries() {
+        this.serve("/down", Integer.MAX_VALUE, null);
+        RetryPolicy policy = RetryPolicy.builder().baseDelay(10).maxAttempts(2).build();
+        assertEquals(503, (int) session(policy).build(this.base + "/down").execute().getCode());
+        assertEquals(2, this.hits("/down"));
+    }
+
+    @Test
+    public void retryAfterAboveMaxDelayIsNotRetried() {
+        this.serve("/later", 1, "10");
+        RetryPolicy policy = RetryPolicy.builder().baseDelay(10).maxDelay(2000).build();
+        assertEquals(503, (int) session(policy).build(this.base + "/later").execute().getCode());
+        assertEquals(1, this.hits("/later"));
+        assertEquals(0, policy.getStats()[1]);
+    }
+
+    @Test
+    public void retryAfterWithinMaxDelayIsHonoured() {
+        this.serve("/soon", 1, "1");
+        RetryPolicy policy = RetryPolicy.builder().baseDelay(10).maxDelay(2000).build();
+        long start = System.currentTimeMillis();
+        assertEquals(200, (int) session(policy).build(this.base + "/soon").execute().getCode());
+        assertTrue(System.currentTimeMillis() - start >= 1000);
+        assertEquals(2, this.hits("/soon"));
+    }
+
+    @Test
+    public void postIsNotRetriedOnStatus() {
+        this.serve("/post", 1, null);
+        RetryPolicy policy = RetryPolicy.builder().baseDelay(10).build();
+        assertEquals(503, (int) session(policy).buildPost(this.base + "/post").execute().getCode());
+        assertEquals(1, this.hits("/post"));
+        // 显式允许之后重试
+        policy = RetryPolicy.builder().baseDelay(10).retryNonIdempotent(true).build();
+        assertEquals(200, (int) session(policy).buildPost(this.base + "/post").execute().getCode());
+        assertEquals(2, this.hits("/post"));
+    }
+
+    @Test
+    public void postIsRetriedOnConnectException() throws IOException {
+        // 连接失败时请求没有发送, POST 也可以重试
+        String site = "http://127.0.0.1:" + closedPort() + "/post";
+        RetryPolicy policy = RetryPolicy.builder().baseDelay(10).maxAttempts(3).build();
+        try {
+            session(policy).buildPost(site).execute();
+            fail("连接失败应该抛出异常");
+        } catch(RuntimeException e) {
+            // 最后一次的异常
+        }
+        assertEquals(2, policy.getStats()[1]);
+    }
+
+    @Test
+    public void exhaustedBudgetStopsRetries() {
+        this.serve("/down", Integer.MAX_VALUE, null);
+        // 只有一个令牌, 请求不存入令牌
+        RetryPolicy policy = RetryPolicy.builder().baseDelay(10).maxAttempts(2).budgetRatio(0).budgetReserve(1).build();
+        HttpURLConnectionUtil.Session session = session(policy);
+        assertEquals(503, (int) session.build(this.base + "/down").execute().getCode());
+        assertEquals(2, this.hits("/down"));
+        for(int i = 0; i < 3; i++) {
+            assertEquals(503, (int) session.build(this.base + "/down").execute().getCode());
+        }
+        assertEquals(5, this.hits("/down"));
+        assertEquals(1, policy.getStats()[1]);
+        assertEquals(3, policy.getStats()[3]);
+    }
+
+    @Test
+    public void retryDoesNotDuplicateParamsOrCookie() {
+        this.serve("/flaky", 2, null);
+        CookieJar jar = new CookieJar();
+        jar.saveFromResponse(this.base + "/", Collections.singletonList("b=2"));
+        HttpURLConnectionUtil.Session session = session(RetryPolicy.builder().baseDelay(10).build()).setCookieJar(jar);
+        Map<String, Object> param = new HashMap<>();
+        param.put("q", "a");
+        HttpURLConnectionUtil.Response response = session.build(this.base + "/flaky").setParam(param).setCookie("a=1").execute();
+        assertEquals(200, (int) response.getCode());
+        List<String> expected = new ArrayList<>();
+        for(int i = 0; i < 3; i++) {
+            expected.add("q=a [b=2; a=1]");
+        }
+        assertEquals(expected, this.seen.get("/flaky"));
+    }
+
+    /**
+     * 前 failures 次返回 503, 之后返回 200
+     * @param retryAfter 503 响应的 Retry-After, null 表示没有
+     */
+    private void serve(String path, int failures, String retryAfter) {
+        AtomicInteger counter = new AtomicInteger();
+        List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        this.hits.put(path, counter);
+        this.seen.put(path, requests);
+        this.server.createContext(path, exchange -> {
+            requests.add(exchange.getRequestURI().getQuery() + " " + exchange.getRequestHeaders().get("Cookie"));
+            if(counter.incrementAndGet() <= failures) {
+                if(retryAfter != null) {
+                    exchange.getResponseHeaders().add("Retry-After", retryAfter);
+                }
+                respond(exchange, 503, "busy");
+            } else {
+                respond(exchange, 200, "ok");
+            }
+        });
+    }
+
+    private int hits(String path) {
+        return this.hits.get(path).get();
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(code, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private static HttpURLConnectionUtil.Session session(RetryPolicy policy) {
+        return HttpURLConnectionUtil.buildSession().setRetryPolicy(policy);
+    }
+
+    /** 一个没有监听的端口 */
+    private static int closedPort() throws IOException {
+        try(ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package cn.shaines.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 去重集合: 多线程同时添加, 布隆过滤器的计数和误判率
+ *
+ * @description SeenSet 测试
+ * @date created in 2026-10-18 10:58:02
+ * @author agent
+ */
+public class SeenSetTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    public void exactAddReturnsTrueOnceAcrossThreads() throws InterruptedException {
+        int count = 20000;
+        AtomicIntegerArray firsts = addConcurrently(new SeenSet.Exact(16), count);
+        for(int i = 0; i < count; i++) {
+            assertEquals("url " + i, 1, firsts.get(i));
+        }
+    }
+
+    @Test
+    public void exactSizeAndContains() {
+        SeenSet seenSet = SeenSet.of(SeenSet.MODE_EXACT, 100, 0.01);
+        assertTrue(seenSet instanceof SeenSet.Exact);
+        assertTrue(seenSet.add("a"));
+        assertFalse(seenSet.add("a"));
+        assertTrue(seenSet.add("b"));
+        assertTrue(seenSet.contains("a"));
+        assertFalse(seenSet.contains("c"));
+        assertEquals(2, seenSet.size());
+    }
+
+    @Test
+    public void bloomCountsFirstInsertions() {
+        int count = 20000;
+        double fpp = 0.01;
+        SeenSet seenSet = SeenSet.of(SeenSet.MODE_BLOOM, count, fpp);
+        assertTrue(seenSet instanceof SeenSet.Bloom);
+        int added = 0;
+        for(int i = 0; i < count; i++) {
+            if(seenSet.add(url(i))) {
+                added++;
+            }
+        }
+        // 第一次添加返回 true, 只有误判为已存在时返回 false
+        assertTrue("added " + added, added >= count * (1 - fpp));
+        assertEquals(added, seenSet.size());
+        for(int i = 0; i < count; i++) {
+            assertTrue(seenSet.contains(url(i)));
+            assertFalse(seenSet.add(url(i)));
+        }
+        assertEquals(added, seenSet.size());
+    }
+
+    @Test
+    public void bloomFalsePositiveRateNearFppAtExpectedSize() {
+        int count = 50000;
+        double fpp = 0.01;
+        SeenSet seenSet = new SeenSet.Bloom(count, fpp);
+        for(int i = 0; i < count; i++) {
+            seenSet.add(url(i));
+        }
+        int probes = 100000;
+        int falsePositives = 0;
+        for(int i = count; i < count + probes; i++) {
+            if(seenSet.contains(url(i))) {
+                falsePositives++;
+            }
+        }
+        double rate = falsePositives / (double) probes;
+        assertTrue("false positive rate " + rate, rate > fpp / 4 && rate < fpp * 2);
+    }
+
+    @Test
+    public void bloomSizeMatchesTrueReturnsAcrossThreads() throws InterruptedException {
+        int count = 20000;
+        SeenSet seenSet = new SeenSet.Bloom(count, 0.0001);
+        AtomicIntegerArray firsts = addConcurrently(seenSet, count);
+        int added = 0;
+        for(int i = 0; i < count; i++) {
+            // 误判时可能是 0, 但不会超过 1 次
+            assertTrue(firsts.get(i) <= 1);
+            added += firsts.get(i);
+        }
+        assertEquals(added, seenSet.size());
+        assertTrue("added " + added, added >= count * 0.999);
+    }
+
+    /** 多个线程同时按照不同的顺序添加相同的元素, 返回每一个元素返回 true 的次数 */
+    private static AtomicIntegerArray addConcurrently(SeenSet seenSet, int count) throws InterruptedException {
+        AtomicIntegerArray firsts = new AtomicIntegerArray(count);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>(THREADS);
+        for(int t = 0; t < THREADS; t++) {
+            List<Integer> order = new ArrayList<>(count);
+            for(int i = 0; i < count; i++) {
+                order.add(i);
+            }
+            Collections.shuffle(order, new Random(t));
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch(InterruptedException e) {
+                    return;
+                }
+                for(int i : order) {
+                    if(seenSet.add(url(i))) {
+                        firsts.incrementAndGet(i);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        return firsts;
+    }
+
+    private static String url(int i) {
+        return "https://img" + (i % 3) + ".baidu.com/it/u=" + i + "," + (i * 7919) + "&fm=26&fmt=auto.jpg";
+    }
+}